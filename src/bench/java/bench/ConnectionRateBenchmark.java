@@ -0,0 +1,104 @@
+package bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.Main;
+
+/**
+ * Connection storm: 16 client threads each open a connection, send one
+ * request with "Connection: close", read the response to the end and
+ * reset the socket, as fast as they can, against a server with 1, 4 or 16
+ * SO_REUSEPORT listeners in each mode. The score is connections per
+ * second; with one listener every accept goes through a single thread.
+ *
+ * mvn -Pbench test-compile exec:exec -Dbench=ConnectionRate
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class ConnectionRateBenchmark {
+
+    private static final int PORT = 18_213;
+    private static final byte[] REQUEST = "GET /echo/ping HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    @Param({ "blocking", "nio" })
+    public String mode;
+
+    @Param({ "1", "4", "16" })
+    public int listeners;
+
+    private Thread server;
+
+    @Setup
+    public void setup() throws Exception {
+        String baseDirectory = Files.createTempDirectory("connection-rate-bench").toString();
+        server = new Thread(() -> Main.main(new String[] { baseDirectory, String.valueOf(PORT),
+                "--mode=" + mode, "--listeners=" + listeners }));
+        server.setDaemon(true);
+        server.start();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            try {
+                connect();
+                return;
+            } catch (IOException e) {
+                if (System.nanoTime() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        Main.stopServer();
+        server.join(5_000);
+    }
+
+    @Benchmark
+    public int connect() throws IOException {
+        try (Socket socket = new Socket("localhost", PORT)) {
+            // Reset instead of lingering in TIME_WAIT, which would run the
+            // client out of ephemeral ports within seconds.
+            socket.setSoLinger(true, 0);
+            OutputStream out = socket.getOutputStream();
+            out.write(REQUEST);
+            out.flush();
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[512];
+            int total = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+            }
+            return total;
+        }
+    }
+}
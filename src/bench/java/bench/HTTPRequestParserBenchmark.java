@@ -0,0 +1,74 @@
+package bench;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import http.HTTPRequest;
+import http.HTTPRequestParser;
+
+/**
+ * Compares the buffered byte-scanning HTTPRequestParser with the original
+ * one-byte-per-read parser on a pipelined batch of browser-like requests.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HTTPRequestParserBenchmark {
+
+    private static final String REQUEST =
+            "GET /files/index.html HTTP/1.1\r\n" +
+            "Host: localhost:1212\r\n" +
+            "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:120.0) Gecko/20100101 Firefox/120.0\r\n" +
+            "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n" +
+            "Accept-Language: en-US,en;q=0.5\r\n" +
+            "Accept-Encoding: gzip, deflate, br\r\n" +
+            "Connection: keep-alive\r\n" +
+            "Cache-Control: max-age=0\r\n" +
+            "\r\n";
+
+    @Param({ "1", "16" })
+    public int requestsPerConnection;
+
+    private byte[] input;
+
+    @Setup
+    public void setup() {
+        input = REQUEST.repeat(requestsPerConnection).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    public void buffered(Blackhole bh) throws Exception {
+        HTTPRequestParser parser = new HTTPRequestParser(new ByteArrayInputStream(input));
+        HTTPRequest request;
+        while ((request = parser.nextRequest()) != null) {
+            bh.consume(request);
+        }
+    }
+
+    @Benchmark
+    public void legacy(Blackhole bh) throws Exception {
+        LegacyHTTPRequestParser parser = new LegacyHTTPRequestParser(new ByteArrayInputStream(input));
+        HTTPRequest request;
+        while ((request = parser.nextRequest()) != null) {
+            bh.consume(request);
+        }
+    }
+
+}
@@ -0,0 +1,173 @@
+package bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.Main;
+import util.VirtualThreads;
+
+/**
+ * Holds 10,000 keep-alive connections open against the blocking server and
+ * measures one round in which every client sends a request and waits for
+ * its response. The platform run gets one pooled thread per client, since
+ * the default pool of 20 would queue or reject all but 20 connections; the
+ * virtual run starts a virtual thread per connection.
+ * The client side multiplexes every connection on a single selector.
+ *
+ * The virtual run needs a Java 21 JVM; on older JVMs it fails at setup.
+ * Both runs need a file descriptor limit above twice the client count.
+ *
+ * mvn -Pbench test-compile exec:exec -Dbench=KeepAliveClients
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xss256k")
+@State(Scope.Benchmark)
+public class KeepAliveClientsBenchmark {
+
+    private static final int PORT = 18_212;
+    private static final byte[] REQUEST = "GET /echo/ping HTTP/1.1\r\nHost: localhost\r\n\r\n"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    @Param({ "platform", "virtual" })
+    public String threads;
+
+    @Param({ "10000" })
+    public int clients;
+
+    private Thread server;
+    private SocketChannel[] channels;
+    private int[] remaining;
+    private Selector selector;
+    private ByteBuffer readBuffer;
+    private int responseLength;
+
+    @Setup
+    public void setup() throws Exception {
+        if (threads.equals("virtual") && !VirtualThreads.isSupported()) {
+            throw new IllegalStateException("The virtual thread run needs Java 21 or later");
+        }
+        String baseDirectory = Files.createTempDirectory("keep-alive-bench").toString();
+        server = new Thread(() -> Main.main(new String[] { baseDirectory, String.valueOf(PORT),
+                "--threads=" + threads, "--worker-threads=" + clients, "--max-requests-per-connection=0" }));
+        server.setDaemon(true);
+        server.start();
+        responseLength = awaitServer();
+
+        selector = Selector.open();
+        channels = new SocketChannel[clients];
+        remaining = new int[clients];
+        readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+        for (int i = 0; i < clients; i++) {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", PORT));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ, i);
+            channels[i] = channel;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        for (SocketChannel channel : channels) {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+        selector.close();
+        Main.stopServer();
+        server.join(5_000);
+    }
+
+    /**
+     * Sends one request on every connection and waits for all responses.
+     */
+    @Benchmark
+    public int round() throws IOException {
+        ByteBuffer request = ByteBuffer.wrap(REQUEST);
+        for (int i = 0; i < clients; i++) {
+            request.rewind();
+            while (request.hasRemaining()) {
+                channels[i].write(request);
+            }
+            remaining[i] = responseLength;
+        }
+        int pending = clients;
+        while (pending > 0) {
+            selector.select();
+            for (SelectionKey key : selector.selectedKeys()) {
+                int client = (Integer) key.attachment();
+                readBuffer.clear();
+                int read = channels[client].read(readBuffer);
+                if (read < 0) {
+                    throw new IOException("Server closed connection " + client);
+                }
+                remaining[client] -= read;
+                if (remaining[client] == 0) {
+                    pending--;
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+        return pending;
+    }
+
+    /**
+     * Waits for the server to accept connections and returns the length of
+     * the response each client will read per round.
+     */
+    private static int awaitServer() throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            try (Socket socket = new Socket("localhost", PORT)) {
+                OutputStream out = socket.getOutputStream();
+                out.write(REQUEST);
+                out.flush();
+                return responseLength(socket.getInputStream());
+            } catch (IOException e) {
+                if (System.nanoTime() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private static int responseLength(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+        while (head.length() < 4 || !head.substring(head.length() - 4).equals("\r\n\r\n")) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Incomplete response head: " + head);
+            }
+            head.append((char) b);
+        }
+        int start = head.indexOf("Content-Length: ") + "Content-Length: ".length();
+        int contentLength = Integer.parseInt(head.substring(start, head.indexOf("\r\n", start)));
+        return head.length() + contentLength;
+    }
+}
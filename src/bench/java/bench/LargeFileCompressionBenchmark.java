@@ -0,0 +1,100 @@
+package bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import http.ContentCoding;
+import util.CompressionUtils;
+import util.DeflatingChannel;
+import util.ParallelGzip;
+
+/**
+ * Gzips a large, log-like text body on the fly, once through the serial
+ * DeflatingChannel and once through ParallelGzip on every CPU. Each
+ * configuration prints the compressed size at setup, so the time saved can
+ * be weighed against the bytes the block boundaries cost:
+ *
+ * mvn -Pbench test-compile exec:exec -Dbench=LargeFileCompression
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LargeFileCompressionBenchmark {
+
+    @Param({ "16", "64" })
+    public int megabytes;
+
+    @Param({ "false", "true" })
+    public boolean parallel;
+
+    private byte[] data;
+    private ForkJoinPool pool;
+    private ParallelGzip gzip;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setup() throws IOException {
+        data = logText(megabytes * 1024 * 1024);
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        gzip = new ParallelGzip(pool, CompressionUtils.DEFAULT_LEVEL);
+        buffer = ByteBuffer.allocate(64 * 1024);
+        System.out.println();
+        System.out.println((parallel ? "parallel" : "serial") + " gzip of " + data.length + " bytes: " + compress()
+                + " bytes");
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public long compress() throws IOException {
+        ReadableByteChannel source = Channels.newChannel(new ByteArrayInputStream(data));
+        long total = 0;
+        try (ReadableByteChannel channel = parallel ? gzip.compress(source)
+                : new DeflatingChannel(source, ContentCoding.GZIP, CompressionUtils.DEFAULT_LEVEL)) {
+            int read;
+            while ((read = channel.read(buffer)) != -1) {
+                total += read;
+                buffer.clear();
+            }
+        }
+        return total;
+    }
+
+    private static byte[] logText(int size) {
+        String[] words = { "GET", "POST", "/files/", "/echo/", "200", "404", "keep-alive", "gzip", "client",
+                "server", "bytes", "ms" };
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(size + 64);
+        while (text.length() < size) {
+            text.append(words[random.nextInt(words.length)]).append(random.nextInt(100_000))
+                    .append(random.nextInt(12) == 0 ? '\n' : ' ');
+        }
+        return text.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+}
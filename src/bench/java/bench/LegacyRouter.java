@@ -0,0 +1,36 @@
+package bench;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import handlers.HTTPHandler;
+import handlers.NotFoundHandler;
+import http.HTTPRequest;
+
+/**
+ * The original stream-over-HashMap Router lookup, kept as the benchmark
+ * baseline for the compiled RouteTrie. OPTIONS handling is left out.
+ */
+public class LegacyRouter {
+
+    Map<String, Map<String, HTTPHandler>> routes = new HashMap<>();
+
+    public HTTPHandler route(HTTPRequest request) {
+        Map<String, HTTPHandler> methodRoutes = routes.get(request.getMethod());
+        if (methodRoutes == null) {
+            return new NotFoundHandler();
+        }
+        return methodRoutes.entrySet().stream()
+                .filter(entry -> request.getPath().startsWith(entry.getKey()))
+                .map(entry -> entry.getValue())
+                .findFirst()
+                .orElse(new NotFoundHandler());
+    }
+
+    public void addRoute(String method, String path, HTTPHandler handler) {
+        Map<String, HTTPHandler> methodRoutes = routes.getOrDefault(method, new HashMap<>());
+        methodRoutes.put(path, handler);
+        routes.put(method, methodRoutes);
+    }
+
+}
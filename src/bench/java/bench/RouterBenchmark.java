@@ -0,0 +1,88 @@
+package bench;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import handlers.HTTPHandler;
+import http.HTTPRequest;
+import http.Router;
+
+/**
+ * Routes a fixed mix of hits and misses through the compiled Router and
+ * the original HashMap-stream lookup, for growing route tables. Run with
+ * -prof gc to confirm that static-route lookups do not allocate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RouterBenchmark {
+
+    private static final int LOOKUPS = 64;
+
+    @Param({ "10", "100", "1000", "10000" })
+    public int routes;
+
+    private Router router;
+    private LegacyRouter legacy;
+    private HTTPRequest[] requests;
+
+    @Setup
+    public void setup() {
+        router = new Router();
+        legacy = new LegacyRouter();
+        for (int i = 0; i < routes; i++) {
+            HTTPHandler handler = request -> null;
+            String path = "/api/v1/resource" + i + "/";
+            router.addRoute("GET", path, handler);
+            legacy.addRoute("GET", path, handler);
+        }
+
+        Random random = new Random(1);
+        requests = new HTTPRequest[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            String path = i % 8 == 0
+                    ? "/missing/" + i
+                    : "/api/v1/resource" + random.nextInt(routes) + "/item/" + i;
+            requests[i] = new HTTPRequest("GET", path, "HTTP/1.1", new byte[0], new HashMap<>());
+        }
+        router.route(requests[0]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int trie() {
+        int found = 0;
+        for (HTTPRequest request : requests) {
+            found += router.route(request).hashCode() & 1;
+        }
+        return found;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int legacy() {
+        int found = 0;
+        for (HTTPRequest request : requests) {
+            found += legacy.route(request).hashCode() & 1;
+        }
+        return found;
+    }
+
+}
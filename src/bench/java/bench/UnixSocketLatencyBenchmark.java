@@ -0,0 +1,144 @@
+package bench;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.Main;
+
+/**
+ * Round-trip latency of one small request on a keep-alive connection, over
+ * loopback TCP and over a Unix domain socket, in each mode. The server
+ * listens on one transport only, and the client sends the next request
+ * only after reading the whole previous response.
+ *
+ * mvn -Pbench test-compile exec:exec -Dbench=UnixSocketLatency
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UnixSocketLatencyBenchmark {
+
+    private static final int PORT = 18_214;
+    private static final byte[] REQUEST = "GET /echo/ping HTTP/1.1\r\nHost: localhost\r\n\r\n"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    @Param({ "tcp", "unix" })
+    public String transport;
+
+    @Param({ "blocking", "nio" })
+    public String mode;
+
+    private Thread server;
+    private SocketChannel channel;
+    private final ByteBuffer request = ByteBuffer.wrap(REQUEST);
+    private final ByteBuffer response = ByteBuffer.allocateDirect(4096);
+    private int responseLength;
+
+    @Setup
+    public void setup() throws Exception {
+        Path baseDirectory = Files.createTempDirectory("unix-socket-bench");
+        Path socketFile = baseDirectory.resolve("http.sock");
+        List<String> args = new ArrayList<>(List.of(baseDirectory.toString(), String.valueOf(PORT),
+                "--mode=" + mode, "--max-requests-per-connection=0"));
+        if (transport.equals("unix")) {
+            args.add("--listeners=0");
+            args.add("--unix-socket=" + socketFile);
+        }
+        server = new Thread(() -> Main.main(args.toArray(new String[0])));
+        server.setDaemon(true);
+        server.start();
+
+        SocketAddress address = transport.equals("unix")
+                ? UnixDomainSocketAddress.of(socketFile)
+                : new InetSocketAddress("localhost", PORT);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (channel == null) {
+            try {
+                channel = SocketChannel.open(address);
+            } catch (IOException e) {
+                if (System.nanoTime() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+        responseLength = firstResponseLength();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        channel.close();
+        Main.stopServer();
+        server.join(5_000);
+    }
+
+    @Benchmark
+    public int roundTrip() throws IOException {
+        request.rewind();
+        while (request.hasRemaining()) {
+            channel.write(request);
+        }
+        int remaining = responseLength;
+        while (remaining > 0) {
+            response.clear();
+            int read = channel.read(response);
+            if (read < 0) {
+                throw new IOException("Server closed the connection");
+            }
+            remaining -= read;
+        }
+        return remaining;
+    }
+
+    /**
+     * Sends one request and returns the length of its response, which every
+     * later round trip reads in full.
+     */
+    private int firstResponseLength() throws IOException {
+        channel.write(ByteBuffer.wrap(REQUEST));
+        StringBuilder head = new StringBuilder();
+        ByteBuffer one = ByteBuffer.allocate(1);
+        while (head.length() < 4 || !head.substring(head.length() - 4).equals("\r\n\r\n")) {
+            one.clear();
+            if (channel.read(one) < 0) {
+                throw new IOException("Incomplete response head: " + head);
+            }
+            head.append((char) one.get(0));
+        }
+        int start = head.indexOf("Content-Length: ") + "Content-Length: ".length();
+        int contentLength = Integer.parseInt(head.substring(start, head.indexOf("\r\n", start)));
+        ByteBuffer body = ByteBuffer.allocate(contentLength);
+        while (body.hasRemaining()) {
+            if (channel.read(body) < 0) {
+                throw new IOException("Incomplete response body");
+            }
+        }
+        return head.length() + contentLength;
+    }
+}
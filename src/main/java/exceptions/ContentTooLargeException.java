@@ -0,0 +1,13 @@
+package exceptions;
+
+/**
+ * Exception thrown when a request is larger than the server will buffer.
+ * The request is answered with 413 Content Too Large and the connection
+ * closed.
+ */
+public class ContentTooLargeException extends HTTPParseException {
+
+    public ContentTooLargeException(String message) {
+        super(message);
+    }
+}
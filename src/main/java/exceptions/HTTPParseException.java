@@ -6,11 +6,26 @@ package exceptions;
  */
 public class HTTPParseException extends Exception {
 
+    private final String version;
+
     public HTTPParseException(String message) {
-        super(message);
+        this(message, null, null);
     }
     
     public HTTPParseException(String message, Throwable cause) {
+        this(message, cause, null);
+    }
+
+    public HTTPParseException(String message, Throwable cause, String version) {
         super(message, cause);
+        this.version = version;
+    }
+
+    /**
+     * Returns the version on the request line of the request that failed,
+     * or null if the request line had not been read.
+     */
+    public String getVersion() {
+        return version;
     }
 }
@@ -0,0 +1,17 @@
+package exceptions;
+
+/**
+ * Exception thrown when a client starts a request but does not finish
+ * sending its head within the header timeout. The connection is answered
+ * with 408 Request Timeout and closed.
+ */
+public class RequestTimeoutException extends HTTPParseException {
+
+    public RequestTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public RequestTimeoutException(String message, Throwable cause, String version) {
+        super(message, cause, version);
+    }
+}
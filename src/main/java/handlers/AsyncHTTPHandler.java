@@ -0,0 +1,80 @@
+package handlers;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+import http.HTTPRequest;
+import http.HTTPResponse;
+import http.HTTPResponses;
+
+/**
+ * Handler that answers with a CompletionStage, for handlers that wait on
+ * disk or another service and should not hold a connection thread or an
+ * event loop while they do. The connection suspends the request until the
+ * stage completes and then writes the response; on a pipelined connection
+ * responses are still written in request order, however the stages
+ * complete.
+ *
+ * The stage is cancelled when the connection's handler timeout passes
+ * first, or when the connection closes, and the request is then answered
+ * with 503. A stage that fails is answered with 500.
+ *
+ * An asynchronous handler is also an HTTPHandler, so it can be routed like
+ * any other; called through handle(), it blocks until its stage completes.
+ */
+public interface AsyncHTTPHandler extends HTTPHandler {
+
+    public CompletionStage<HTTPResponse> handleAsync(HTTPRequest request);
+
+    @Override
+    public default HTTPResponse handle(HTTPRequest request) {
+        return responseOf(handleAsync(request).toCompletableFuture(), request);
+    }
+
+    /**
+     * Adapts a synchronous handler: handleAsync runs it on the calling
+     * thread and returns a stage already completed with its response, or
+     * failed with what it threw.
+     */
+    public static AsyncHTTPHandler adapt(HTTPHandler handler) {
+        if (handler instanceof AsyncHTTPHandler) {
+            return (AsyncHTTPHandler) handler;
+        }
+        return request -> {
+            try {
+                return CompletableFuture.completedFuture(handler.handle(request));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        };
+    }
+
+    /**
+     * Returns the response a stage resolves to, waiting for it if needed:
+     * its value, 503 if it was cancelled, or 500 if it failed or completed
+     * without a response.
+     */
+    public static HTTPResponse responseOf(CompletableFuture<HTTPResponse> future, HTTPRequest request) {
+        HTTPResponse response;
+        try {
+            response = future.get();
+        } catch (CancellationException e) {
+            return HTTPResponses.handlerTimeout(request.getVersion());
+        } catch (ExecutionException | CompletionException e) {
+            System.err.println("Handler failed: " + e.getCause());
+            return HTTPResponses.internalServerError(request.getVersion(), "Internal Server Error");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return HTTPResponses.handlerTimeout(request.getVersion());
+        }
+        if (response == null) {
+            return HTTPResponses.internalServerError(request.getVersion(), "Internal Server Error");
+        }
+        return response;
+    }
+
+}
@@ -1,33 +1,63 @@
 package handlers;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
 
+import http.BufferBody;
+import http.ContentCoding;
 import http.ContentType;
+import http.HTTPHeaders;
 import http.HTTPRequest;
 import http.HTTPResponse;
 import http.HTTPResponses;
+import http.ResponseBody;
+import util.CompressionPolicy;
 import util.CompressionUtils;
 
 /**
  * EchoHandler is a simple HTTP handler that echoes back the path of the request.
- * It supports gzip compression if the client accepts it.
+ * It compresses the echo with gzip or deflate when the client accepts it and
+ * the CompressionPolicy finds the body large enough to be worth it.
  * The response includes the path as the body and appropriate headers.
+ *
+ * The body is built in the response's reusable buffer and Content-Length is
+ * left to the encoder, so an uncompressed echo on a recycled connection
+ * allocates nothing.
  */
 public class EchoHandler implements HTTPHandler {
 
+    private static final String PREFIX = "/echo/";
+
+    private final CompressionPolicy compression;
+
+    public EchoHandler() {
+        this(CompressionPolicy.defaults());
+    }
+
+    public EchoHandler(CompressionPolicy compression) {
+        this.compression = compression;
+    }
+
     @Override
     public HTTPResponse handle(HTTPRequest request) {
-        byte[] body = request.getPath().substring("/echo/".length()).getBytes(StandardCharsets.UTF_8);
+        String path = request.getPath();
+        HTTPResponse response = request.newResponse(200, "OK");
+        HTTPHeaders headers = response.getHeaders();
+        String type = ContentType.TEXT_PLAIN.getType();
+        headers.set(HTTPHeaders.CONTENT_TYPE, type);
 
-        HashMap<String, String> headers = new HashMap<>();
-        headers.put("Content-Type", ContentType.TEXT_PLAIN.getType());
+        BufferBody body = response.bodyBuffer();
+        body.append(path, Math.min(PREFIX.length(), path.length()), path.length());
 
-        if (CompressionUtils.acceptsGzip(request)) {
+        if (!compression.isCompressible(type, body.length())) {
+            return response;
+        }
+        headers.set("Vary", HTTPHeaders.ACCEPT_ENCODING);
+        ContentCoding coding = compression.negotiate(request);
+        if (coding != ContentCoding.IDENTITY) {
             try {
-                body = CompressionUtils.gzipCompress(body);
-                headers.put("Content-Encoding", "gzip");
+                response.setBody(ResponseBody.of(
+                        CompressionUtils.compress(body.toByteArray(), coding, compression.getLevel())));
+                headers.set(HTTPHeaders.CONTENT_ENCODING, coding.getToken());
             } catch (IOException e) {
                 return HTTPResponses.internalServerError(
                         request.getVersion(),
@@ -35,13 +65,6 @@ public class EchoHandler implements HTTPHandler {
             }
         }
 
-        headers.put("Content-Length", String.valueOf(body.length));
-
-        return new HTTPResponse(
-                request.getVersion(),
-                200,
-                "OK",
-                headers,
-                body);
+        return response;
     }
 }
@@ -2,30 +2,89 @@ package handlers;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
+import http.ByteRange;
+import http.ContentCoding;
+import http.HTTPHeaders;
 import http.HTTPRequest;
 import http.HTTPResponse;
 import http.HTTPResponses;
-import util.CompressionUtils;
+import http.HTTPValidators;
+import http.ResponseBody;
+import util.CompressionPolicy;
+import util.FileContentCache;
 import util.FileUtils;
+import util.GzipVariantCache;
 
 /**
  * FileHandler is an HTTP handler that serves files from a specified base
  * directory.
  * It supports both GET, POST, PUT, and DELETE methods and compresses responses
- * using gzip if
- * the client accepts it.
+ * using gzip or deflate if
+ * the client accepts it and the CompressionPolicy allows it for the file's
+ * type and size; such responses carry "Vary: Accept-Encoding".
+ * Uploads are streamed from the connection into a temporary file and renamed
+ * into place, so concurrent readers never see a partially written file.
+ * An optional FileContentCache keeps hot files in memory; it is validated
+ * against each file's modification time and size, and cleared for a path
+ * whenever this handler writes or deletes it.
+ * GET and HEAD responses carry an ETag and Last-Modified derived from the
+ * file's metadata, and conditional requests are answered with 304 before
+ * any content is read. Range requests are answered from file regions,
+ * with multipart/byteranges when several ranges are asked for.
+ * Gzip responses prefer a precompressed "name.gz" sidecar that is at least
+ * as new as the file, then an optional GzipVariantCache, and only compress
+ * on the fly when neither applies. On-the-fly compression is a streaming
+ * CompressedBody, so even a very large file is compressed through a
+ * fixed-size buffer as it is sent, or in parallel blocks when the policy
+ * has a ParallelGzip.
  */
 public class FileHandler implements HTTPHandler {
 
     private final String baseDirectory;
+    private final FileContentCache cache;
+    private final GzipVariantCache gzipCache;
+    private final CompressionPolicy compression;
 
     public FileHandler(String baseDirectory) {
+        this(baseDirectory, null, null);
+    }
+
+    public FileHandler(String baseDirectory, FileContentCache cache) {
+        this(baseDirectory, cache, null);
+    }
+
+    /**
+     * @param cache     optional content cache for GET, or null to always read
+     *                  from disk
+     * @param gzipCache optional cache of compressed variants, or null to
+     *                  compress each gzip response on the fly
+     */
+    public FileHandler(String baseDirectory, FileContentCache cache, GzipVariantCache gzipCache) {
+        this(baseDirectory, cache, gzipCache, CompressionPolicy.defaults());
+    }
+
+    /**
+     * @param compression decides which files are compressed, and at what
+     *                    level when compressing on the fly
+     */
+    public FileHandler(String baseDirectory, FileContentCache cache, GzipVariantCache gzipCache,
+            CompressionPolicy compression) {
         this.baseDirectory = baseDirectory;
+        this.cache = cache;
+        this.gzipCache = gzipCache;
+        this.compression = compression;
     }
 
     @Override
@@ -38,10 +97,17 @@ public class FileHandler implements HTTPHandler {
         }
         File file = new File(baseDirectory, relativePath);
         Path path = Paths.get(file.getAbsolutePath());
+        // Uploads are written next to their target before being moved
+        // into place; their temporary files are not part of the tree.
+        if (FileUtils.isUploadInProgress(file.getName()) && !request.getMethod().equals("OPTIONS")) {
+            return HTTPResponses.notFoundError(request.getVersion(), "File not found: " + file.getPath());
+        }
 
         switch (request.getMethod()) {
             case "GET":
-                return handleGET(request, file, path);
+                return handleGET(request, file, path, false);
+            case "HEAD":
+                return handleGET(request, file, path, true);
             case "POST":
                 return handlePOST(request, file, path);
             case "PUT":
@@ -59,29 +125,97 @@ public class FileHandler implements HTTPHandler {
         }
     }
 
-    private HTTPResponse handleGET(HTTPRequest request, File file, Path path) {
-        HashMap<String, String> headers = new HashMap<>();
-        headers.put("Content-Type", "application/octet-stream");
+    /**
+     * Serves GET and HEAD. Validators come from file metadata, so a 304 and
+     * every HEAD response are produced without reading file content; HEAD
+     * only reports a compressed length when a ready variant already exists.
+     */
+    private HTTPResponse handleGET(HTTPRequest request, File file, Path path, boolean headOnly) {
+        HTTPHeaders headers = new HTTPHeaders();
+        headers.set("Content-Type", "application/octet-stream");
 
         try {
-            if (file.exists() && file.isFile()) {
-                byte[] data = Files.readAllBytes(path);
-                headers.put("Content-Length", String.valueOf(data.length));
-                if (CompressionUtils.acceptsGzip(request)) {
-                    data = CompressionUtils.gzipCompress(data);
-                    headers.put("Content-Length", String.valueOf(data.length));
-                    headers.put("Content-Encoding", "gzip");
+            BasicFileAttributes attributes = readAttributes(path);
+            if (attributes == null || !attributes.isRegularFile()) {
+                return HTTPResponses.notFoundError(request.getVersion(),
+                        "File not found: " + file.getPath());
+            }
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            // Ranges are served from the identity representation, so a
+            // request that carries Range is never compressed.
+            String range = headOnly ? null : request.getHeader("Range");
+            boolean compressible = compression.isCompressibleFile(path.getFileName().toString(), attributes.size());
+            ContentCoding coding = range == null && compressible
+                    ? compression.negotiate(request)
+                    : ContentCoding.IDENTITY;
+            boolean gzip = coding == ContentCoding.GZIP;
+            Path sidecar = gzip ? freshSidecar(path, attributes) : null;
+
+            String etag;
+            if (sidecar != null) {
+                BasicFileAttributes sidecarAttributes = readAttributes(sidecar);
+                etag = HTTPValidators.etag(sidecarAttributes.size(),
+                        sidecarAttributes.lastModifiedTime().toMillis(), "gz-static");
+            } else {
+                etag = HTTPValidators.etag(attributes.size(), lastModified,
+                        coding == ContentCoding.IDENTITY ? null : coding.getToken());
+            }
+            if (compressible) {
+                headers.set("Vary", "Accept-Encoding");
+            }
+            headers.set("ETag", etag);
+            headers.set("Last-Modified", HTTPValidators.formatDate(lastModified));
+            headers.set("Accept-Ranges", "bytes");
+            if (HTTPValidators.isNotModified(request, etag, lastModified)) {
+                return HTTPResponses.notModified(request.getVersion(), headers);
+            }
+
+            if (range != null && HTTPValidators.ifRangeMatches(request, etag, lastModified)) {
+                List<ByteRange> ranges = ByteRange.parse(range, attributes.size());
+                if (ranges != null) {
+                    return rangeResponse(request, path, attributes.size(), ranges, headers);
                 }
+            }
+
+            if (coding != ContentCoding.IDENTITY) {
+                headers.set("Content-Encoding", coding.getToken());
+                ResponseBody compressed = null;
+                if (sidecar != null) {
+                    compressed = ResponseBody.ofFile(sidecar, 0, Files.size(sidecar));
+                } else if (gzip && gzipCache != null) {
+                    compressed = headOnly
+                            ? gzipCache.peek(path, attributes)
+                            : gzipCache.get(path, attributes, readCached(path, attributes));
+                }
+                if (compressed != null) {
+                    headers.set("Content-Length", String.valueOf(compressed.length()));
+                    return new HTTPResponse(request.getVersion(), 200, "OK", headers, compressed);
+                }
+                // The compressed size is unknown until the file has been
+                // deflated, so it is compressed while it is sent, with
+                // chunked encoding. Nothing is read for HEAD.
+                byte[] cached = headOnly ? null : readCached(path, attributes);
+                ResponseBody source = cached != null
+                        ? ResponseBody.of(cached)
+                        : ResponseBody.ofFile(path, 0, attributes.size());
                 return new HTTPResponse(
                         request.getVersion(),
                         200,
                         "OK",
                         headers,
-                        data);
-            } else {
-                return HTTPResponses.notFoundError(request.getVersion(),
-                        "File not found: " + file.getPath());
+                        compression.compress(source, coding, attributes.size()));
             }
+            byte[] cached = headOnly ? null : readCached(path, attributes);
+            ResponseBody body = cached != null
+                    ? ResponseBody.of(cached)
+                    : ResponseBody.ofFile(path, 0, attributes.size());
+            headers.set("Content-Length", String.valueOf(body.length()));
+            return new HTTPResponse(
+                    request.getVersion(),
+                    200,
+                    "OK",
+                    headers,
+                    body);
         } catch (IOException e) {
             return HTTPResponses.internalServerError(
                     request.getVersion(),
@@ -89,28 +223,136 @@ public class FileHandler implements HTTPHandler {
         }
     }
 
+    /**
+     * Builds a 206 for one range, a multipart/byteranges 206 for several, or
+     * a 416 when none is satisfiable. Every range is a file region, so the
+     * parts are sent with zero-copy transfer.
+     */
+    private static HTTPResponse rangeResponse(HTTPRequest request, Path path, long size, List<ByteRange> ranges,
+            HTTPHeaders headers) {
+        if (ranges.isEmpty()) {
+            return HTTPResponses.rangeNotSatisfiable(request.getVersion(), size);
+        }
+        if (ranges.size() == 1) {
+            ByteRange only = ranges.get(0);
+            headers.set("Content-Range", only.contentRange(size));
+            headers.set("Content-Length", String.valueOf(only.length()));
+            return new HTTPResponse(request.getVersion(), 206, "Partial Content", headers,
+                    ResponseBody.ofFile(path, only.getFirst(), only.length()));
+        }
+
+        String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong())
+                + Long.toHexString(ThreadLocalRandom.current().nextLong());
+        String partType = headers.get("Content-Type");
+        List<ResponseBody> parts = new ArrayList<>(ranges.size() * 2 + 1);
+        for (ByteRange part : ranges) {
+            String partHead = "\r\n--" + boundary + "\r\n"
+                    + "Content-Type: " + partType + "\r\n"
+                    + "Content-Range: " + part.contentRange(size) + "\r\n\r\n";
+            parts.add(ResponseBody.of(partHead.getBytes(StandardCharsets.US_ASCII)));
+            parts.add(ResponseBody.ofFile(path, part.getFirst(), part.length()));
+        }
+        parts.add(ResponseBody.of(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII)));
+
+        ResponseBody body = ResponseBody.ofParts(parts);
+        headers.set("Content-Type", "multipart/byteranges; boundary=" + boundary);
+        headers.set("Content-Length", String.valueOf(body.length()));
+        return new HTTPResponse(request.getVersion(), 206, "Partial Content", headers, body);
+    }
+
+    /**
+     * Returns the precompressed "name.gz" sidecar if it exists and is at
+     * least as new as the file, or null.
+     */
+    private static Path freshSidecar(Path path, BasicFileAttributes attributes) throws IOException {
+        Path sidecar = path.resolveSibling(path.getFileName() + ".gz");
+        BasicFileAttributes sidecarAttributes = readAttributes(sidecar);
+        if (sidecarAttributes != null && sidecarAttributes.isRegularFile()
+                && sidecarAttributes.lastModifiedTime().compareTo(attributes.lastModifiedTime()) >= 0) {
+            return sidecar;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the file's attributes with a single stat call, or null if it
+     * does not exist.
+     */
+    private static BasicFileAttributes readAttributes(Path path) throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the file contents from the cache, loading them on a miss, or
+     * null when caching is disabled or the file is too large to cache.
+     */
+    private byte[] readCached(Path path, BasicFileAttributes attributes) throws IOException {
+        if (cache == null || !cache.accepts(attributes.size())) {
+            return null;
+        }
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        byte[] data = cache.get(path, lastModified, attributes.size());
+        if (data == null) {
+            data = Files.readAllBytes(path);
+            // A size mismatch means the file changed after the stat; serve
+            // what was read but do not cache it under stale attributes.
+            if (data.length == attributes.size()) {
+                cache.put(path, lastModified, data);
+            }
+        }
+        return data;
+    }
+
+    private void invalidate(Path path) {
+        if (cache != null) {
+            cache.invalidate(path);
+        }
+        if (gzipCache != null) {
+            gzipCache.invalidate(path);
+        }
+    }
+
     private HTTPResponse handlePOST(HTTPRequest request, File file, Path path) {
-        if (!file.exists()) {
-            FileUtils.createFile(file.getPath(), request.getBody());
+        if (file.exists()) {
+            return HTTPResponses.conflictError(
+                    request.getVersion(),
+                    "File already exists: " + file.getPath());
+        }
+        try {
+            FileUtils.writeAtomically(request.getBodyStream(), path, false);
+            invalidate(path);
             return HTTPResponses.created(request.getVersion(), "File created: " + file.getPath());
-        } else {
+        } catch (FileAlreadyExistsException e) {
             return HTTPResponses.conflictError(
                     request.getVersion(),
                     "File already exists: " + file.getPath());
+        } catch (SocketTimeoutException e) {
+            return HTTPResponses.requestTimeout(request.getVersion());
+        } catch (IOException e) {
+            return HTTPResponses.internalServerError(
+                    request.getVersion(),
+                    "Failed to write file: " + e.getMessage());
         }
     }
 
     private HTTPResponse handlePUT(HTTPRequest request, File file, Path path) {
-        HashMap<String, String> headers = new HashMap<>();
+        HTTPHeaders headers = new HTTPHeaders();
 
         try {
-            Files.write(path, request.getBody());
+            FileUtils.writeAtomically(request.getBodyStream(), path, true);
+            invalidate(path);
             return new HTTPResponse(
                     request.getVersion(),
                     200,
                     "OK",
                     headers,
                     ("File updated: " + file.getPath()).getBytes());
+        } catch (SocketTimeoutException e) {
+            return HTTPResponses.requestTimeout(request.getVersion());
         } catch (IOException e) {
             return HTTPResponses.internalServerError(
                     request.getVersion(),
@@ -119,11 +361,12 @@ public class FileHandler implements HTTPHandler {
     }
 
     private HTTPResponse handleDELETE(HTTPRequest request, File file, Path path) {
-        HashMap<String, String> headers = new HashMap<>();
+        HTTPHeaders headers = new HTTPHeaders();
 
         if (file.exists() && file.isFile()) {
             try {
                 Files.delete(path);
+                invalidate(path);
                 return new HTTPResponse(
                         request.getVersion(),
                         200,
@@ -142,8 +385,8 @@ public class FileHandler implements HTTPHandler {
     }
 
     private HTTPResponse handleOPTIONS(HTTPRequest request) {
-        HashMap<String, String> headers = new HashMap<>();
-        headers.put("Allow", "GET, POST, PUT, DELETE, HEAD, OPTIONS");
+        HTTPHeaders headers = new HTTPHeaders();
+        headers.set("Allow", "GET, POST, PUT, DELETE, HEAD, OPTIONS");
         
         return new HTTPResponse(
                 request.getVersion(),
@@ -0,0 +1,36 @@
+package handlers;
+
+import http.HTTPHeaders;
+import http.HTTPRequest;
+import http.HTTPResponse;
+
+/**
+ * Handler for OPTIONS requests.
+ * The Router creates one per route, with the Allow header value computed
+ * from the methods registered for that route and the prefixes above it.
+ */
+public class OptionsHandler implements HTTPHandler {
+
+    private final String allow;
+
+    public OptionsHandler(String allow) {
+        this.allow = allow;
+    }
+
+    public String getAllow() {
+        return allow;
+    }
+
+    @Override
+    public HTTPResponse handle(HTTPRequest request) {
+        HTTPHeaders headers = new HTTPHeaders();
+        headers.set("Allow", allow);
+
+        return new HTTPResponse(
+                request.getVersion(),
+                204,
+                "No Content",
+                headers,
+                new byte[0]);
+    }
+}
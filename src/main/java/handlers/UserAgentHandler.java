@@ -1,34 +1,33 @@
 package handlers;
 
 import java.nio.charset.StandardCharsets;
-import java.util.Map;
 
+import http.BufferBody;
 import http.HTTPRequest;
 import http.HTTPResponse;
 
 /**
  * Handler that processes incoming HTTP requests and extracts the User-Agent header.
  * Returns a response containing the User-Agent information.
+ *
+ * The header value is copied straight from the request's header bytes into
+ * the response body, without becoming a String.
  */
 public class UserAgentHandler implements HTTPHandler {
 
+    private static final byte[] PREFIX = "Your User-Agent is: ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] UNKNOWN = "Unknown".getBytes(StandardCharsets.US_ASCII);
+
     @Override
     public HTTPResponse handle(HTTPRequest request) {
+        HTTPResponse response = request.newResponse(200, "OK");
+        response.getHeaders().set("Content-Type", "text/plain");
 
-        String userAgent = request.getHeader("User-Agent");
-        if (userAgent == null) {
-            userAgent = "Unknown";
+        BufferBody body = response.bodyBuffer().append(PREFIX);
+        if (!request.getHeaders().appendValueTo("User-Agent", body)) {
+            body.append(UNKNOWN);
         }
-
-        byte[] bodyBytes = ("Your User-Agent is: " + userAgent).getBytes(StandardCharsets.UTF_8);
-
-        return new HTTPResponse(
-                request.getVersion(),
-                200,
-                "OK",
-                Map.of("Content-Type", "text/plain", "Content-Length", String.valueOf(bodyBytes.length)),
-                bodyBytes);
-
+        return response;
     }
 
 }
@@ -0,0 +1,146 @@
+package http;
+
+import java.util.List;
+
+/**
+ * Content negotiation over Accept-Encoding (RFC 9110, section 12.5.3).
+ *
+ * Each listed coding carries a quality value, 1 by default; q=0 means "not
+ * acceptable". A coding that is not listed takes the quality of "*", or is
+ * not acceptable without one, except identity, which then defaults to 1.
+ * The coding with the highest quality wins, and among equal qualities the
+ * server's order of preference decides. "x-gzip" is treated as gzip. The
+ * header is scanned in place, without splitting it.
+ */
+public final class AcceptEncoding {
+
+    private static final int NOT_LISTED = -1;
+
+    private AcceptEncoding() {
+    }
+
+    /**
+     * Picks the coding for a response.
+     *
+     * @param header    the Accept-Encoding value, or null if absent
+     * @param preferred the codings the server can apply, most preferred
+     *                  first; identity is always a candidate and loses ties
+     * @return the chosen coding, IDENTITY when no compression is wanted
+     */
+    public static ContentCoding negotiate(String header, List<ContentCoding> preferred) {
+        if (header == null) {
+            return ContentCoding.IDENTITY;
+        }
+        int wildcard = quality(header, "*");
+        int identity = quality(header, ContentCoding.IDENTITY.getToken());
+        if (identity == NOT_LISTED) {
+            identity = wildcard == NOT_LISTED ? 1000 : wildcard;
+        }
+
+        ContentCoding best = ContentCoding.IDENTITY;
+        int bestQuality = identity;
+        for (ContentCoding coding : preferred) {
+            if (coding == ContentCoding.IDENTITY) {
+                continue;
+            }
+            int q = codingQuality(header, coding, wildcard);
+            if (q > 0 && (q > bestQuality || (q == bestQuality && best == ContentCoding.IDENTITY))) {
+                best = coding;
+                bestQuality = q;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns whether the header makes the coding acceptable at all, that
+     * is with a quality above 0.
+     */
+    public static boolean accepts(String header, ContentCoding coding) {
+        return header != null && codingQuality(header, coding, quality(header, "*")) > 0;
+    }
+
+    private static int codingQuality(String header, ContentCoding coding, int wildcard) {
+        int q = quality(header, coding.getToken());
+        if (q == NOT_LISTED && coding == ContentCoding.GZIP) {
+            q = quality(header, "x-gzip");
+        }
+        if (q == NOT_LISTED) {
+            q = wildcard == NOT_LISTED ? 0 : wildcard;
+        }
+        return q;
+    }
+
+    /**
+     * Returns the quality of the first element naming the token, in
+     * thousandths, or NOT_LISTED. A malformed q parameter counts as 0.
+     */
+    static int quality(String header, String token) {
+        int length = header.length();
+        int start = 0;
+        while (start < length) {
+            int end = header.indexOf(',', start);
+            if (end < 0) {
+                end = length;
+            }
+            int nameStart = skipSpaces(header, start, end);
+            int nameEnd = nameStart;
+            while (nameEnd < end && header.charAt(nameEnd) != ';' && header.charAt(nameEnd) != ' '
+                    && header.charAt(nameEnd) != '\t') {
+                nameEnd++;
+            }
+            if (nameEnd - nameStart == token.length()
+                    && header.regionMatches(true, nameStart, token, 0, token.length())) {
+                return parseQuality(header, nameEnd, end);
+            }
+            start = end + 1;
+        }
+        return NOT_LISTED;
+    }
+
+    private static int parseQuality(String header, int from, int end) {
+        int param = header.indexOf(';', from);
+        while (param >= 0 && param < end) {
+            int nameStart = skipSpaces(header, param + 1, end);
+            if (nameStart + 1 < end && (header.charAt(nameStart) == 'q' || header.charAt(nameStart) == 'Q')) {
+                int equals = skipSpaces(header, nameStart + 1, end);
+                if (equals < end && header.charAt(equals) == '=') {
+                    return parseQValue(header, skipSpaces(header, equals + 1, end), end);
+                }
+            }
+            param = header.indexOf(';', param + 1);
+        }
+        return 1000;
+    }
+
+    /**
+     * Parses "0", "1", "0.5", "0.125" or "1.000" into thousandths.
+     */
+    private static int parseQValue(String header, int start, int end) {
+        int i = start;
+        if (i >= end) {
+            return 0;
+        }
+        char first = header.charAt(i++);
+        if (first != '0' && first != '1') {
+            return 0;
+        }
+        int value = (first - '0') * 1000;
+        if (i < end && header.charAt(i) == '.') {
+            i++;
+            int scale = 100;
+            while (i < end && scale > 0 && Character.isDigit(header.charAt(i))) {
+                value += (header.charAt(i++) - '0') * scale;
+                scale /= 10;
+            }
+        }
+        return Math.min(value, 1000);
+    }
+
+    private static int skipSpaces(String header, int from, int end) {
+        while (from < end && (header.charAt(from) == ' ' || header.charAt(from) == '\t')) {
+            from++;
+        }
+        return from;
+    }
+}
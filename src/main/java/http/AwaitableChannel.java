@@ -0,0 +1,21 @@
+package http;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Body channel whose bytes are produced on other threads, such as blocks
+ * compressed on a thread pool. A read waits while nothing is ready, which
+ * is fine on a connection thread but would stall an event loop, so the
+ * non-blocking server asks first and reads only once the channel is ready.
+ */
+public interface AwaitableChannel extends ReadableByteChannel {
+
+    /**
+     * Returns null if a read would return without waiting, or a stage that
+     * completes once it would.
+     */
+    public CompletionStage<?> whenReadable() throws IOException;
+
+}
@@ -0,0 +1,107 @@
+package http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Buffered connection stream that reports whether it holds unflushed
+ * bytes. HTTPResponseWriter collects the responses to pipelined requests
+ * here and only writes directly to the socket channel when nothing is
+ * waiting in the buffer, so responses never overtake each other.
+ *
+ * Unlike BufferedOutputStream it takes no lock: a connection's stream is
+ * only used by the thread serving it, and a virtual thread blocked in a
+ * synchronized write would pin its carrier thread.
+ */
+public class BatchingOutputStream extends OutputStream {
+
+    public static final int DEFAULT_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final WritableByteChannel channel;
+    private final byte[] buf = new byte[DEFAULT_SIZE];
+    private final ByteBuffer wrapper = ByteBuffer.wrap(buf);
+    private int count;
+
+    public BatchingOutputStream(OutputStream out) {
+        this.out = out;
+        this.channel = null;
+    }
+
+    /**
+     * Buffers writes to a blocking channel, writing to it directly rather
+     * than through the locking stream of Channels.newOutputStream.
+     */
+    public BatchingOutputStream(WritableByteChannel channel) {
+        this.out = null;
+        this.channel = channel;
+    }
+
+    public boolean hasBuffered() {
+        return count > 0;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buf.length) {
+            flushBuffer();
+        }
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len >= buf.length) {
+            flushBuffer();
+            writeOut(b, off, len);
+            return;
+        }
+        if (len > buf.length - count) {
+            flushBuffer();
+        }
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            if (out != null) {
+                out.close();
+            } else {
+                channel.close();
+            }
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            writeOut(buf, 0, count);
+            count = 0;
+        }
+    }
+
+    private void writeOut(byte[] b, int off, int len) throws IOException {
+        if (out != null) {
+            out.write(b, off, len);
+            return;
+        }
+        ByteBuffer buffer = b == buf ? wrapper.limit(off + len).position(off) : ByteBuffer.wrap(b, off, len);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+}
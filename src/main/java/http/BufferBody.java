@@ -0,0 +1,107 @@
+package http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable in-memory response body that handlers fill with append calls.
+ * The backing array and its ByteBuffer view survive clear(), so a recycled
+ * response builds its body in the same memory every time.
+ */
+public class BufferBody extends ResponseBody {
+
+    private byte[] data;
+    private int size;
+    private ByteBuffer view;
+
+    public BufferBody() {
+        this(256);
+    }
+
+    public BufferBody(int capacity) {
+        this.data = new byte[Math.max(16, capacity)];
+    }
+
+    public BufferBody clear() {
+        size = 0;
+        return this;
+    }
+
+    public BufferBody append(byte[] bytes) {
+        return append(bytes, 0, bytes.length);
+    }
+
+    public BufferBody append(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, data, size, length);
+        size += length;
+        return this;
+    }
+
+    public BufferBody append(CharSequence text) {
+        return append(text, 0, text.length());
+    }
+
+    /**
+     * Appends the characters in [start, end) encoded as UTF-8. ASCII is
+     * copied directly; anything else goes through the charset encoder.
+     */
+    public BufferBody append(CharSequence text, int start, int end) {
+        ensureCapacity(end - start);
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                return append(text.subSequence(i, end).toString().getBytes(StandardCharsets.UTF_8));
+            }
+            data[size++] = (byte) c;
+        }
+        return this;
+    }
+
+    @Override
+    public long length() {
+        return size;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(data, 0, size);
+    }
+
+    @Override
+    public ReadableByteChannel openChannel() {
+        return Channels.newChannel(new ByteArrayInputStream(data, 0, size));
+    }
+
+    @Override
+    public byte[] toByteArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    @Override
+    public boolean isInMemory() {
+        return true;
+    }
+
+    @Override
+    public ByteBuffer asByteBuffer() {
+        if (view == null || view.array() != data) {
+            view = ByteBuffer.wrap(data);
+        }
+        view.clear().limit(size);
+        return view;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+        }
+    }
+
+}
@@ -0,0 +1,55 @@
+package http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Response body backed by an in-memory byte array.
+ */
+public class ByteArrayBody extends ResponseBody {
+
+    private final byte[] data;
+
+    public ByteArrayBody(byte[] data) {
+        this.data = data;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    @Override
+    public long length() {
+        return data.length;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(data);
+    }
+
+    @Override
+    public ReadableByteChannel openChannel() {
+        return Channels.newChannel(new ByteArrayInputStream(data));
+    }
+
+    @Override
+    public byte[] toByteArray() {
+        return data;
+    }
+
+    @Override
+    public boolean isInMemory() {
+        return true;
+    }
+
+    @Override
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(data);
+    }
+
+}
@@ -0,0 +1,121 @@
+package http;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A satisfiable byte range of a representation, with inclusive bounds, and
+ * the parser for the Range request header (RFC 9110 section 14.1.2).
+ */
+public class ByteRange {
+
+    /**
+     * Requests with more ranges than this are coalesced, and ignored if they
+     * still exceed it, so a single request cannot fan out into thousands of
+     * tiny parts.
+     */
+    static final int MAX_RANGES = 32;
+
+    private final long first;
+    private final long last;
+
+    public ByteRange(long first, long last) {
+        this.first = first;
+        this.last = last;
+    }
+
+    public long getFirst() {
+        return first;
+    }
+
+    public long getLast() {
+        return last;
+    }
+
+    public long length() {
+        return last - first + 1;
+    }
+
+    /**
+     * Returns the Content-Range value for this range of a representation of
+     * the given size.
+     */
+    public String contentRange(long size) {
+        return "bytes " + first + "-" + last + "/" + size;
+    }
+
+    /**
+     * Parses a Range header against a representation of the given size.
+     *
+     * @return the satisfiable ranges in request order; an empty list when
+     *         none is satisfiable (answer 416); or null when the header is
+     *         malformed, uses another unit, or asks for too many ranges (serve
+     *         the whole representation)
+     */
+    public static List<ByteRange> parse(String header, long size) {
+        String value = header.trim();
+        if (!value.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null;
+        }
+        List<ByteRange> ranges = new ArrayList<>();
+        for (String spec : value.substring(6).split(",")) {
+            spec = spec.trim();
+            if (spec.isEmpty()) {
+                continue;
+            }
+            int dash = spec.indexOf('-');
+            if (dash == -1) {
+                return null;
+            }
+            try {
+                if (dash == 0) {
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix < 0) {
+                        return null;
+                    }
+                    if (suffix > 0 && size > 0) {
+                        ranges.add(new ByteRange(Math.max(0, size - suffix), size - 1));
+                    }
+                } else {
+                    long first = Long.parseLong(spec.substring(0, dash));
+                    String lastText = spec.substring(dash + 1);
+                    long last = lastText.isEmpty() ? Long.MAX_VALUE : Long.parseLong(lastText);
+                    if (first < 0 || last < first) {
+                        return null;
+                    }
+                    if (first < size) {
+                        ranges.add(new ByteRange(first, Math.min(last, size - 1)));
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        if (ranges.size() > MAX_RANGES) {
+            ranges = coalesce(ranges);
+            if (ranges.size() > MAX_RANGES) {
+                return null;
+            }
+        }
+        return ranges;
+    }
+
+    private static List<ByteRange> coalesce(List<ByteRange> ranges) {
+        List<ByteRange> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingLong(ByteRange::getFirst));
+        List<ByteRange> merged = new ArrayList<>();
+        ByteRange current = sorted.get(0);
+        for (ByteRange next : sorted.subList(1, sorted.size())) {
+            if (next.first <= current.last + 1) {
+                current = new ByteRange(current.first, Math.max(current.last, next.last));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+
+}
@@ -0,0 +1,48 @@
+package http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Response body pulled from a ReadableByteChannel (or an InputStream adapted
+ * to one). The channel is closed once the body has been sent.
+ */
+public class ChannelBody extends ResponseBody {
+
+    private final ReadableByteChannel channel;
+    private final long length;
+
+    public ChannelBody(ReadableByteChannel channel, long length) {
+        this.channel = channel;
+        this.length = length;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        try (ReadableByteChannel in = channel) {
+            ByteBuffer buffer = ByteBuffer.allocate(TRANSFER_BUFFER_SIZE);
+            while (in.read(buffer) != -1) {
+                out.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        }
+    }
+
+    @Override
+    public ReadableByteChannel openChannel() {
+        return channel;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
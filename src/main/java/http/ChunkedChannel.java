@@ -0,0 +1,89 @@
+package http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Pull-side counterpart of ChunkedOutputStream: wraps a body channel and
+ * yields the same bytes framed as HTTP/1.1 chunks, ending with the
+ * zero-length last chunk. Used by the non-blocking server.
+ */
+public class ChunkedChannel implements ReadableByteChannel {
+
+    // Space reserved in front of each chunk for its hex length and CRLF.
+    private static final int HEADER_RESERVE = 10;
+
+    private final ReadableByteChannel source;
+    private final ByteBuffer frame;
+    private boolean sourceDone = false;
+
+    public ChunkedChannel(ReadableByteChannel source) {
+        this(source, ResponseBody.TRANSFER_BUFFER_SIZE);
+    }
+
+    public ChunkedChannel(ReadableByteChannel source, int maxChunkSize) {
+        this.source = source;
+        this.frame = ByteBuffer.allocate(HEADER_RESERVE + maxChunkSize + 2);
+        this.frame.limit(0);
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!frame.hasRemaining()) {
+            if (sourceDone) {
+                return -1;
+            }
+            nextFrame();
+            if (!frame.hasRemaining()) {
+                return 0;
+            }
+        }
+        int count = Math.min(dst.remaining(), frame.remaining());
+        int oldLimit = frame.limit();
+        frame.limit(frame.position() + count);
+        dst.put(frame);
+        frame.limit(oldLimit);
+        return count;
+    }
+
+    /**
+     * Reads the next piece of the source straight into the frame buffer,
+     * then writes the chunk header into the space reserved in front of it.
+     */
+    private void nextFrame() throws IOException {
+        frame.clear().position(HEADER_RESERVE);
+        frame.limit(frame.capacity() - 2);
+        int read = source.read(frame);
+        if (read == -1) {
+            sourceDone = true;
+            frame.clear();
+            frame.put(ChunkedOutputStream.LAST_CHUNK).flip();
+            return;
+        }
+        if (read == 0) {
+            frame.clear().limit(0);
+            return;
+        }
+        int dataEnd = frame.position();
+        frame.limit(frame.capacity());
+        frame.put(ChunkedOutputStream.CRLF);
+
+        byte[] header = ChunkedOutputStream.chunkHeader(read);
+        int start = HEADER_RESERVE - header.length;
+        frame.position(start);
+        frame.put(header);
+        frame.limit(dataEnd + 2).position(start);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return source.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+}
@@ -0,0 +1,94 @@
+package http;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Frames everything written to it with HTTP/1.1 chunked transfer coding.
+ * Small writes are collected in a buffer so each chunk carries a useful
+ * amount of data. close() writes the terminating zero-length chunk but leaves
+ * the underlying connection stream open.
+ */
+public class ChunkedOutputStream extends FilterOutputStream {
+
+    static final byte[] CRLF = { '\r', '\n' };
+    static final byte[] LAST_CHUNK = { '0', '\r', '\n', '\r', '\n' };
+
+    private final byte[] buffer;
+    private int count = 0;
+    private boolean finished = false;
+
+    public ChunkedOutputStream(OutputStream out) {
+        this(out, 8192);
+    }
+
+    public ChunkedOutputStream(OutputStream out, int bufferSize) {
+        super(out);
+        this.buffer = new byte[bufferSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buffer.length) {
+            flushChunk();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len >= buffer.length) {
+            flushChunk();
+            writeChunk(b, off, len);
+            return;
+        }
+        if (len > buffer.length - count) {
+            flushChunk();
+        }
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushChunk();
+        out.flush();
+    }
+
+    /**
+     * Sends any buffered data followed by the last-chunk marker.
+     */
+    public void finish() throws IOException {
+        if (!finished) {
+            flushChunk();
+            out.write(LAST_CHUNK);
+            finished = true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.flush();
+    }
+
+    private void flushChunk() throws IOException {
+        if (count > 0) {
+            writeChunk(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private void writeChunk(byte[] b, int off, int len) throws IOException {
+        out.write(chunkHeader(len));
+        out.write(b, off, len);
+        out.write(CRLF);
+    }
+
+    static byte[] chunkHeader(int length) {
+        return (Integer.toHexString(length) + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+}
@@ -0,0 +1,103 @@
+package http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+
+/**
+ * Response body made of several bodies sent back to back, such as the
+ * delimiters and file regions of a multipart/byteranges response. Writers
+ * that know about zero-copy iterate getParts() so file regions inside the
+ * sequence are still sent with transferTo.
+ */
+public class CompositeBody extends ResponseBody {
+
+    private final List<ResponseBody> parts;
+    private final long length;
+
+    public CompositeBody(List<ResponseBody> parts) {
+        this.parts = List.copyOf(parts);
+        long total = 0;
+        for (ResponseBody part : this.parts) {
+            if (part.length() < 0 || total < 0) {
+                total = -1;
+            } else {
+                total += part.length();
+            }
+        }
+        this.length = total;
+    }
+
+    public List<ResponseBody> getParts() {
+        return parts;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        for (ResponseBody part : parts) {
+            part.writeTo(out);
+        }
+    }
+
+    @Override
+    public ReadableByteChannel openChannel() throws IOException {
+        return new ReadableByteChannel() {
+            private int index;
+            private ReadableByteChannel current;
+            private boolean open = true;
+
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                while (index < parts.size()) {
+                    if (current == null) {
+                        current = parts.get(index).openChannel();
+                    }
+                    int read = current.read(dst);
+                    if (read != -1) {
+                        return read;
+                    }
+                    current.close();
+                    current = null;
+                    index++;
+                }
+                return -1;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return open;
+            }
+
+            @Override
+            public void close() throws IOException {
+                open = false;
+                if (current != null) {
+                    current.close();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (ResponseBody part : parts) {
+            try {
+                part.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+}
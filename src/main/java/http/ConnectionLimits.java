@@ -0,0 +1,99 @@
+package http;
+
+/**
+ * How long a client connection may take at each stage of a request, and
+ * how many requests it may send before it is closed. A timeout or limit of
+ * 0 disables it.
+ *
+ * The idle timeout bounds the wait for the first byte of the next request
+ * on a keep-alive connection; a connection that reaches it is closed
+ * quietly. The header timeout bounds the time from that first byte to the
+ * end of the request head, so a client trickling bytes (slowloris) cannot
+ * hold a connection open; reaching it is answered with 408. The body
+ * timeout bounds the time the rest of a request body may take to arrive.
+ * The handler timeout bounds the wait for an asynchronous handler's
+ * response; when it passes, the handler's future is cancelled and the
+ * request is answered with 503.
+ */
+public final class ConnectionLimits {
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30_000;
+    public static final long DEFAULT_HEADER_TIMEOUT_MILLIS = 10_000;
+    public static final long DEFAULT_BODY_TIMEOUT_MILLIS = 30_000;
+    public static final long DEFAULT_HANDLER_TIMEOUT_MILLIS = 30_000;
+    public static final int DEFAULT_MAX_REQUESTS = 1000;
+
+    private static final ConnectionLimits DEFAULTS = new ConnectionLimits(DEFAULT_IDLE_TIMEOUT_MILLIS,
+            DEFAULT_HEADER_TIMEOUT_MILLIS, DEFAULT_BODY_TIMEOUT_MILLIS, DEFAULT_HANDLER_TIMEOUT_MILLIS,
+            DEFAULT_MAX_REQUESTS);
+    private static final ConnectionLimits UNLIMITED = new ConnectionLimits(0, 0, 0, 0, 0);
+
+    private final long idleTimeoutMillis;
+    private final long headerTimeoutMillis;
+    private final long bodyTimeoutMillis;
+    private final long handlerTimeoutMillis;
+    private final int maxRequests;
+
+    public ConnectionLimits(long idleTimeoutMillis, long headerTimeoutMillis, long bodyTimeoutMillis,
+            int maxRequests) {
+        this(idleTimeoutMillis, headerTimeoutMillis, bodyTimeoutMillis, DEFAULT_HANDLER_TIMEOUT_MILLIS, maxRequests);
+    }
+
+    public ConnectionLimits(long idleTimeoutMillis, long headerTimeoutMillis, long bodyTimeoutMillis,
+            long handlerTimeoutMillis, int maxRequests) {
+        if (idleTimeoutMillis < 0 || headerTimeoutMillis < 0 || bodyTimeoutMillis < 0 || handlerTimeoutMillis < 0
+                || maxRequests < 0) {
+            throw new IllegalArgumentException("Timeouts and limits must not be negative");
+        }
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.headerTimeoutMillis = headerTimeoutMillis;
+        this.bodyTimeoutMillis = bodyTimeoutMillis;
+        this.handlerTimeoutMillis = handlerTimeoutMillis;
+        this.maxRequests = maxRequests;
+    }
+
+    public static ConnectionLimits defaults() {
+        return DEFAULTS;
+    }
+
+    public static ConnectionLimits unlimited() {
+        return UNLIMITED;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public long getHeaderTimeoutMillis() {
+        return headerTimeoutMillis;
+    }
+
+    public long getBodyTimeoutMillis() {
+        return bodyTimeoutMillis;
+    }
+
+    public long getHandlerTimeoutMillis() {
+        return handlerTimeoutMillis;
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    /**
+     * Returns whether a connection that has served this many requests must
+     * close after the current one.
+     */
+    public boolean isLastRequest(int served) {
+        return maxRequests > 0 && served >= maxRequests;
+    }
+
+    /**
+     * Returns the timeout to advertise in the Keep-Alive header, in whole
+     * seconds, or -1 if connections do not time out while idle.
+     */
+    public long getKeepAliveTimeoutSeconds() {
+        return idleTimeoutMillis > 0 ? Math.max(1, idleTimeoutMillis / 1000) : -1;
+    }
+
+}
@@ -0,0 +1,21 @@
+package http;
+
+/**
+ * Content codings this server can apply to a response body, by the token
+ * used in Accept-Encoding and Content-Encoding.
+ */
+public enum ContentCoding {
+    GZIP("gzip"),
+    DEFLATE("deflate"),
+    IDENTITY("identity");
+
+    private final String token;
+
+    ContentCoding(String token) {
+        this.token = token;
+    }
+
+    public String getToken() {
+        return token;
+    }
+}
@@ -4,22 +4,69 @@ package http;
  * Represents common HTTP Content-Type values used in responses.
  */
 public enum ContentType {
-    TEXT_CSS("text/css"),
-    IMAGE_GIF("image/gif"),
-    TEXT_HTML("text/html"),
-    IMAGE_X_ICON("image/x-icon"),
-    IMAGE_JPEG("image/jpeg"),
-    IMAGE_PNG("image/png"),
-    TEXT_PLAIN("text/plain"),
-    TEXT_XML("text/xml");
+    TEXT_CSS("text/css", false, "css"),
+    IMAGE_GIF("image/gif", true, "gif"),
+    TEXT_HTML("text/html", false, "html", "htm"),
+    IMAGE_X_ICON("image/x-icon", false, "ico"),
+    IMAGE_JPEG("image/jpeg", true, "jpg", "jpeg"),
+    IMAGE_PNG("image/png", true, "png"),
+    TEXT_PLAIN("text/plain", false, "txt"),
+    TEXT_XML("text/xml", false, "xml");
 
     private final String type;
+    private final boolean compressed;
+    private final String[] extensions;
 
-    ContentType(String type) {
+    ContentType(String type, boolean compressed, String... extensions) {
         this.type = type;
+        this.compressed = compressed;
+        this.extensions = extensions;
     }
 
     public String getType() {
         return type;
     }
+
+    /**
+     * Returns whether the format is already compressed, so content coding
+     * would only cost CPU.
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Returns the type matching the file name's extension, ignoring case,
+     * or null.
+     */
+    public static ContentType forFileName(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        String extension = fileName.substring(dot + 1);
+        for (ContentType candidate : values()) {
+            for (String known : candidate.extensions) {
+                if (known.equalsIgnoreCase(extension)) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the constant for a media type, ignoring parameters and case,
+     * or null.
+     */
+    public static ContentType forMediaType(String mediaType) {
+        int end = mediaType.indexOf(';');
+        String bare = (end < 0 ? mediaType : mediaType.substring(0, end)).trim();
+        for (ContentType candidate : values()) {
+            if (candidate.type.equalsIgnoreCase(bare)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,168 @@
+package http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Input stream of a connection whose reads fail with SocketTimeoutException
+ * once a deadline has passed. SO_TIMEOUT alone only bounds each read, so a
+ * client sending one byte at a time would never trip it; here the socket
+ * timeout is lowered before every read to the time left until the
+ * deadline, which bounds the whole sequence of reads.
+ *
+ * Unix domain socket channels have no Socket to set a timeout on. Their
+ * deadline is kept by a shared watchdog thread instead, which shuts down
+ * the input of a connection whose deadline passes, failing the read
+ * blocked on it.
+ */
+public class DeadlineInputStream extends InputStream {
+
+    private static final class Watchdog {
+        static final ScheduledThreadPoolExecutor EXECUTOR = create();
+
+        private static ScheduledThreadPoolExecutor create() {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, task -> {
+                Thread thread = new Thread(task, "read-deadline-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            return executor;
+        }
+    }
+
+    private final Socket socket;
+    private final InputStream in;
+    private final SocketChannel channel;
+    private boolean timed;
+    private long deadline;
+    private int soTimeout;
+
+    private ScheduledFuture<?> expiry;
+    private volatile boolean expired;
+    private byte[] array;
+    private ByteBuffer wrapper;
+    private final byte[] single = new byte[1];
+
+    public DeadlineInputStream(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = socket.getInputStream();
+        this.channel = null;
+    }
+
+    private DeadlineInputStream(SocketChannel channel) {
+        this.socket = null;
+        this.in = null;
+        this.channel = channel;
+    }
+
+    /**
+     * Returns a stream over a blocking channel: through its socket for TCP
+     * connections, and straight from the channel, without the locking of
+     * Channels.newInputStream, for Unix domain sockets.
+     */
+    public static DeadlineInputStream of(SocketChannel channel) throws IOException {
+        if (channel.getLocalAddress() instanceof InetSocketAddress) {
+            return new DeadlineInputStream(channel.socket());
+        }
+        return new DeadlineInputStream(channel);
+    }
+
+    /**
+     * Sets the deadline to the given time from now, or removes it when the
+     * timeout is 0.
+     */
+    public void setTimeout(long timeoutMillis) {
+        timed = timeoutMillis > 0;
+        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        if (channel != null && !expired) {
+            if (expiry != null) {
+                expiry.cancel(false);
+            }
+            expiry = timed ? Watchdog.EXECUTOR.schedule(this::expire, timeoutMillis, TimeUnit.MILLISECONDS) : null;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (channel != null) {
+            int n = read(single, 0, 1);
+            return n == 1 ? single[0] & 0xFF : -1;
+        }
+        applyDeadline();
+        return in.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (channel == null) {
+            applyDeadline();
+            return in.read(b, off, len);
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (expired) {
+            throw new SocketTimeoutException("Read deadline passed");
+        }
+        if (b != array) {
+            array = b;
+            wrapper = ByteBuffer.wrap(b);
+        }
+        wrapper.limit(off + len).position(off);
+        int n = channel.read(wrapper);
+        if (n < 0 && expired) {
+            throw new SocketTimeoutException("Read deadline passed");
+        }
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return channel != null ? 0 : in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            if (expiry != null) {
+                expiry.cancel(false);
+            }
+            channel.close();
+        } else {
+            in.close();
+        }
+    }
+
+    private void expire() {
+        expired = true;
+        try {
+            channel.shutdownInput();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void applyDeadline() throws IOException {
+        int millis = 0;
+        if (timed) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new SocketTimeoutException("Read deadline passed");
+            }
+            millis = (int) Math.min(Integer.MAX_VALUE, Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+        }
+        if (millis != soTimeout) {
+            socket.setSoTimeout(millis);
+            soTimeout = millis;
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+package http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Response body made of a byte range of a file on disk.
+ * The file is only opened when the body is written. When the connection
+ * exposes a channel the region is sent with zero-copy transferTo; otherwise
+ * it is read through a fixed-size buffer.
+ */
+public class FileRegionBody extends ResponseBody {
+
+    private final Path path;
+    private final long position;
+    private final long length;
+
+    public FileRegionBody(Path path, long position, long length) {
+        this.path = path;
+        this.position = position;
+        this.length = length;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        try (ReadableByteChannel channel = openChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(TRANSFER_BUFFER_SIZE, Math.max(length, 1)));
+            while (channel.read(buffer) != -1) {
+                out.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Sends the region to a blocking channel with FileChannel.transferTo,
+     * which uses sendfile(2) for sockets on Linux, so the file contents never
+     * pass through the Java heap.
+     */
+    public void transferTo(WritableByteChannel target) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            long offset = position;
+            long end = position + length;
+            while (offset < end) {
+                long sent = file.transferTo(offset, end - offset, target);
+                if (sent == 0 && offset >= file.size()) {
+                    throw new IOException("File truncated while sending: " + path);
+                }
+                offset += sent;
+            }
+        }
+    }
+
+    /**
+     * Opens the file for a caller that drives transferTo itself, such as the
+     * non-blocking server.
+     */
+    public FileChannel openFile() throws IOException {
+        return FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    @Override
+    public ReadableByteChannel openChannel() throws IOException {
+        FileChannel file = FileChannel.open(path, StandardOpenOption.READ);
+        return new ReadableByteChannel() {
+            private long offset = position;
+            private final long end = position + length;
+
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                long remaining = end - offset;
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int oldLimit = dst.limit();
+                if (dst.remaining() > remaining) {
+                    dst.limit(dst.position() + (int) remaining);
+                }
+                try {
+                    int read = file.read(dst, offset);
+                    if (read == -1) {
+                        throw new IOException("File truncated while sending: " + path);
+                    }
+                    offset += read;
+                    return read;
+                } finally {
+                    dst.limit(oldLimit);
+                }
+            }
+
+            @Override
+            public boolean isOpen() {
+                return file.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                file.close();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,343 @@
+package http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Header fields of a request or response, stored flat in two parallel
+ * arrays in the order they were added.
+ *
+ * Names are matched case-insensitively, as HTTP requires. Well-known names
+ * are interned to shared constants when added, so the common lookup is an
+ * identity comparison and a parsed request keeps no per-request copy of
+ * them. Repeated fields are kept as separate entries: get() returns the
+ * first, getAll() every one. A linear scan beats hashing for the dozen or
+ * so fields of a typical message and needs no map or entry objects.
+ *
+ * The parser adds fields as views: the raw bytes of values and of unknown
+ * names are copied into one byte array owned by the container, and turned
+ * into Strings only when asked for. Comparisons and copies to a BufferBody
+ * work on the bytes directly, and clear() keeps every array for reuse, so
+ * a recycled container handles a request without allocating.
+ *
+ * Instances are not thread-safe.
+ */
+public final class HTTPHeaders {
+
+    public static final String ACCEPT_ENCODING = "Accept-Encoding";
+    public static final String CONNECTION = "Connection";
+    public static final String CONTENT_ENCODING = "Content-Encoding";
+    public static final String CONTENT_LENGTH = "Content-Length";
+    public static final String CONTENT_TYPE = "Content-Type";
+    public static final String TRANSFER_ENCODING = "Transfer-Encoding";
+
+    /**
+     * Names interned by add() and decoded without allocation by the parser.
+     */
+    static final String[] KNOWN_NAMES = {
+            "Host", "User-Agent", "Accept", ACCEPT_ENCODING, "Accept-Language", CONNECTION,
+            CONTENT_LENGTH, CONTENT_TYPE, TRANSFER_ENCODING, "Cookie", "Cache-Control",
+            "If-None-Match", "If-Modified-Since", "Range", "If-Range", "Expect", "Upgrade",
+            "Origin", "Referer", "Authorization", "Keep-Alive", CONTENT_ENCODING, "Content-Range",
+            "Accept-Ranges", "Allow", "ETag", "Last-Modified", "Vary", "Retry-After", "Date",
+            "Server", "Location", "Set-Cookie" };
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private String[] names;
+    private String[] values;
+    private int size;
+
+    // Byte views, allocated on first addView. A view entry has a null
+    // name (unless well-known) and a null value until materialized.
+    private byte[] text;
+    private int textSize;
+    private int[] nameOffsets;
+    private int[] nameLengths;
+    private int[] valueOffsets;
+    private int[] valueLengths;
+
+    public HTTPHeaders() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public HTTPHeaders(int capacity) {
+        names = new String[Math.max(1, capacity)];
+        values = new String[names.length];
+    }
+
+    /**
+     * Copies the entries of a map, for callers that build headers that way.
+     */
+    public static HTTPHeaders of(Map<String, String> map) {
+        HTTPHeaders headers = new HTTPHeaders(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            headers.add(entry.getKey(), entry.getValue());
+        }
+        return headers;
+    }
+
+    /**
+     * Appends a field, keeping any existing fields of the same name.
+     */
+    public HTTPHeaders add(String name, String value) {
+        ensureCapacity();
+        names[size] = intern(name);
+        values[size] = value;
+        if (nameOffsets != null) {
+            valueLengths[size] = -1;
+        }
+        size++;
+        return this;
+    }
+
+    /**
+     * Appends a field whose value, and name unless knownName is given, are
+     * taken from bytes of the request head. The bytes are copied, so the
+     * source may be reused afterwards.
+     *
+     * @param knownName the interned well-known name, or null to keep the
+     *                  name as a view too
+     */
+    public HTTPHeaders addView(String knownName, byte[] source, int nameStart, int nameEnd, int valueStart,
+            int valueEnd) {
+        ensureCapacity();
+        if (nameOffsets == null) {
+            text = new byte[256];
+            nameOffsets = new int[names.length];
+            nameLengths = new int[names.length];
+            valueOffsets = new int[names.length];
+            valueLengths = new int[names.length];
+            Arrays.fill(valueLengths, 0, size, -1);
+        }
+        names[size] = knownName;
+        values[size] = null;
+        if (knownName == null) {
+            nameOffsets[size] = copyText(source, nameStart, nameEnd);
+            nameLengths[size] = nameEnd - nameStart;
+        }
+        valueOffsets[size] = copyText(source, valueStart, valueEnd);
+        valueLengths[size] = valueEnd - valueStart;
+        size++;
+        return this;
+    }
+
+    /**
+     * Replaces every field of this name with a single one.
+     */
+    public HTTPHeaders set(String name, String value) {
+        int index = indexOf(name);
+        if (index < 0) {
+            return add(name, value);
+        }
+        values[index] = value;
+        removeFrom(name, index + 1);
+        return this;
+    }
+
+    /**
+     * Returns the value of the first field with this name, or null.
+     */
+    public String get(String name) {
+        int index = indexOf(name);
+        return index < 0 ? null : value(index);
+    }
+
+    /**
+     * Returns whether the first field with this name has the given value,
+     * ignoring case, without materializing it.
+     */
+    public boolean valueEqualsIgnoreCase(String name, String expected) {
+        int index = indexOf(name);
+        if (index < 0) {
+            return false;
+        }
+        if (values[index] != null) {
+            return values[index].equalsIgnoreCase(expected);
+        }
+        return regionEqualsIgnoreCase(valueOffsets[index], valueLengths[index], expected);
+    }
+
+    /**
+     * Appends the value of the first field with this name to the body and
+     * returns true, or returns false if there is no such field.
+     */
+    public boolean appendValueTo(String name, BufferBody body) {
+        int index = indexOf(name);
+        if (index < 0) {
+            return false;
+        }
+        if (values[index] != null) {
+            body.append(values[index]);
+        } else {
+            body.append(text, valueOffsets[index], valueLengths[index]);
+        }
+        return true;
+    }
+
+    /**
+     * Removes every field but keeps the arrays for the next message.
+     */
+    public void clear() {
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        textSize = 0;
+    }
+
+    /**
+     * Returns the values of every field with this name, in order.
+     */
+    public List<String> getAll(String name) {
+        List<String> all = null;
+        for (int i = 0; i < size; i++) {
+            if (matches(i, name)) {
+                if (all == null) {
+                    all = new ArrayList<>(2);
+                }
+                all.add(value(i));
+            }
+        }
+        return all != null ? all : Collections.emptyList();
+    }
+
+    public boolean contains(String name) {
+        return indexOf(name) >= 0;
+    }
+
+    public void remove(String name) {
+        removeFrom(name, 0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String name(int index) {
+        if (names[index] == null) {
+            names[index] = latin1(nameOffsets[index], nameLengths[index]);
+        }
+        return names[index];
+    }
+
+    public String value(int index) {
+        if (values[index] == null && nameOffsets != null && valueLengths[index] >= 0) {
+            values[index] = latin1(valueOffsets[index], valueLengths[index]);
+        }
+        return values[index];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            lines.append(name(i)).append(": ").append(value(i)).append("\r\n");
+        }
+        return lines.toString();
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < size; i++) {
+            if (matches(i, name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeFrom(String name, int start) {
+        int kept = start;
+        for (int i = start; i < size; i++) {
+            if (!matches(i, name)) {
+                names[kept] = names[i];
+                values[kept] = values[i];
+                if (nameOffsets != null) {
+                    nameOffsets[kept] = nameOffsets[i];
+                    nameLengths[kept] = nameLengths[i];
+                    valueOffsets[kept] = valueOffsets[i];
+                    valueLengths[kept] = valueLengths[i];
+                }
+                kept++;
+            }
+        }
+        for (int i = kept; i < size; i++) {
+            names[i] = null;
+            values[i] = null;
+        }
+        size = kept;
+    }
+
+    private boolean matches(int index, String name) {
+        String stored = names[index];
+        if (stored != null) {
+            return stored == name || stored.equalsIgnoreCase(name);
+        }
+        return regionEqualsIgnoreCase(nameOffsets[index], nameLengths[index], name);
+    }
+
+    private boolean regionEqualsIgnoreCase(int offset, int length, String other) {
+        if (length != other.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char a = (char) (text[offset + i] & 0xFF);
+            char b = other.charAt(i);
+            if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int copyText(byte[] source, int start, int end) {
+        int length = end - start;
+        if (textSize + length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, textSize + length));
+        }
+        System.arraycopy(source, start, text, textSize, length);
+        int offset = textSize;
+        textSize += length;
+        return offset;
+    }
+
+    private String latin1(int offset, int length) {
+        return new String(text, offset, length, StandardCharsets.ISO_8859_1);
+    }
+
+    private void ensureCapacity() {
+        if (size == names.length) {
+            int capacity = size * 2;
+            names = Arrays.copyOf(names, capacity);
+            values = Arrays.copyOf(values, capacity);
+            if (nameOffsets != null) {
+                nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+                nameLengths = Arrays.copyOf(nameLengths, capacity);
+                valueOffsets = Arrays.copyOf(valueOffsets, capacity);
+                valueLengths = Arrays.copyOf(valueLengths, capacity);
+            }
+        }
+    }
+
+    /**
+     * Returns the shared constant for a well-known name in any case, or the
+     * name itself.
+     */
+    static String intern(String name) {
+        for (String known : KNOWN_NAMES) {
+            if (known == name) {
+                return known;
+            }
+        }
+        for (String known : KNOWN_NAMES) {
+            if (known.equalsIgnoreCase(name)) {
+                return known;
+            }
+        }
+        return name;
+    }
+
+}
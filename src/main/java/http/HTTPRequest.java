@@ -1,11 +1,24 @@
 package http;
 
-import java.util.HashMap;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
 
 /**
  * Represents an HTTP request parsed from an incoming connection.
  * Stores method, path, version, headers, and body of the request.
  * Used by handlers and routing logic to process incoming requests.
+ *
+ * The body of a parsed request is a stream over the connection. Handlers
+ * that process uploads incrementally read getBodyStream(); getBody() is a
+ * convenience that buffers the whole body, up to a size limit.
+ *
+ * A parser in recycling mode reuses one request object per connection;
+ * such a request and the response it hands out from newResponse() must not
+ * be kept once the handler has returned and the response has been written.
  */
 public class HTTPRequest {
 
@@ -13,14 +26,70 @@ public class HTTPRequest {
     private String path;
     private String version;
     private byte[] body;
-    private HashMap<String, String> headers;
+    private InputStream bodyStream;
+    private int maxBufferedBodySize;
+    private HTTPHeaders headers;
+    private String[] pathParameterNames;
+    private String[] pathParameterValues;
+    private boolean recycled;
+    private HTTPResponse response;
 
-    public HTTPRequest(String method, String path, String version, byte[] body, HashMap<String, String> headers) {
+    public HTTPRequest(String method, String path, String version, byte[] body, Map<String, String> headers) {
+        this(method, path, version, body, HTTPHeaders.of(headers));
+    }
+
+    public HTTPRequest(String method, String path, String version, byte[] body, HTTPHeaders headers) {
+        this.method = method;
+        this.path = path;
+        this.body = body != null ? body : new byte[0];
+        this.version = version;
+        this.headers = headers;
+    }
+
+    public HTTPRequest(String method, String path, String version, InputStream bodyStream,
+            HTTPHeaders headers, int maxBufferedBodySize) {
+        this.method = method;
+        this.path = path;
+        this.bodyStream = bodyStream;
+        this.version = version;
+        this.headers = headers;
+        this.maxBufferedBodySize = maxBufferedBodySize;
+    }
+
+    void setRecycled() {
+        this.recycled = true;
+    }
+
+    /**
+     * Loads the next request on the connection into this recycled object.
+     */
+    void reset(String method, String path, String version, InputStream bodyStream, HTTPHeaders headers,
+            int maxBufferedBodySize) {
         this.method = method;
         this.path = path;
-        this.body = body;
         this.version = version;
+        this.body = null;
+        this.bodyStream = bodyStream;
         this.headers = headers;
+        this.maxBufferedBodySize = maxBufferedBodySize;
+        this.pathParameterNames = null;
+        this.pathParameterValues = null;
+    }
+
+    /**
+     * Returns a response in this request's HTTP version with empty headers
+     * and body. For a recycled request it is the same object every time.
+     */
+    public HTTPResponse newResponse(int statusCode, String reasonPhrase) {
+        if (!recycled) {
+            return new HTTPResponse(version, statusCode, reasonPhrase, new HTTPHeaders(), ResponseBody.empty());
+        }
+        if (response == null) {
+            response = new HTTPResponse(version, statusCode, reasonPhrase, new HTTPHeaders(), ResponseBody.empty());
+        } else {
+            response.reset(version, statusCode, reasonPhrase);
+        }
+        return response;
     }
 
     public String getMethod() {
@@ -35,11 +104,79 @@ public class HTTPRequest {
         return version;
     }
 
+    /**
+     * Returns the whole body, reading it into memory on first call.
+     *
+     * @throws UncheckedIOException if the body cannot be read or is larger
+     *                              than the buffering limit
+     */
     public byte[] getBody() {
+        if (body == null) {
+            try {
+                body = bufferBody();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read request body", e);
+            }
+        }
         return body;
     }
 
+    /**
+     * Returns the body as a stream. Reads come straight from the connection,
+     * so the body can be larger than memory; it can only be consumed once.
+     */
+    public InputStream getBodyStream() {
+        if (body != null) {
+            return new ByteArrayInputStream(body);
+        }
+        return bodyStream;
+    }
+
+    /**
+     * Returns the first value of the named header, matching the name in any
+     * letter case, or null.
+     */
     public String getHeader(String name) {
-        return headers.getOrDefault(name, null);
+        return headers.get(name);
+    }
+
+    public HTTPHeaders getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Returns the value captured for a "{name}" segment of the matched
+     * route, or null.
+     */
+    public String getPathParameter(String name) {
+        if (pathParameterNames != null) {
+            for (int i = 0; i < pathParameterNames.length; i++) {
+                if (pathParameterNames[i].equals(name)) {
+                    return pathParameterValues[i];
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Called by the Router when the matched route declares parameters.
+     */
+    public void setPathParameters(String[] names, String[] values) {
+        this.pathParameterNames = names;
+        this.pathParameterValues = values;
+    }
+
+    private byte[] bufferBody() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = bodyStream.read(chunk)) != -1) {
+            if (out.size() + read > maxBufferedBodySize) {
+                throw new IOException("Request body exceeds " + maxBufferedBodySize + " bytes");
+            }
+            out.write(chunk, 0, read);
+        }
+        return out.toByteArray();
     }
 }
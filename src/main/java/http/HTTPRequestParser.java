@@ -1,85 +1,704 @@
 package http;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import exceptions.HTTPParseException;
-import util.IOUtils;
+import exceptions.RequestTimeoutException;
 
 /**
  * Parses an HTTP request from an InputStream.
  * Provides the parsed request as an HTTPRequest object for further processing.
  * Supports parsing of request line, headers, and body.
+ *
+ * Input is read in large chunks into a reusable buffer and scanned for line
+ * terminators byte by byte, so a request costs a handful of reads instead of
+ * one per byte. Lines may end in CRLF or a lone LF, and a terminator split
+ * across two reads is handled by compacting the buffer before refilling it.
+ * The method, version and well-known header names are matched against
+ * constants directly from the byte ranges, avoiding a String allocation.
+ *
+ * Request bodies are not read up front. Each request carries a stream over
+ * the connection, delimited by Content-Length or decoded from chunked
+ * transfer coding, and whatever the handler leaves unread is skipped before
+ * the next request is parsed.
+ *
+ * Header values are kept as byte views and only become Strings when a
+ * handler asks for them. With recycling enabled the parser goes further and
+ * hands out the same HTTPRequest, headers and body stream for every request
+ * on the connection, so a keep-alive request that only reads well-known
+ * headers is parsed without allocating. A recycled request, and the
+ * response obtained from HTTPRequest.newResponse(), are only valid until
+ * the next call to nextRequest().
+ *
+ * Reading from a DeadlineInputStream, the parser can enforce the timeouts
+ * of a ConnectionLimits: it switches the stream's deadline from the idle
+ * timeout to the header timeout when the first byte of a request arrives,
+ * and to the body timeout once the head has been parsed.
  */
 public class HTTPRequestParser {
 
-    private InputStream in;
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+    public static final int DEFAULT_MAX_LINE_LENGTH = 8192;
+    public static final int DEFAULT_MAX_HEADER_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_BUFFERED_BODY_SIZE = 16 * 1024 * 1024;
+    static final int MAX_DISCARDED_BODY_SIZE = 1024 * 1024;
+
+    private static final String[] KNOWN_METHODS = {
+            "GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS", "PATCH", "TRACE", "CONNECT" };
+
+    private static final String[] KNOWN_VERSIONS = { "HTTP/1.1", "HTTP/1.0" };
+
+    private static final byte[][] KNOWN_METHOD_BYTES = toBytes(KNOWN_METHODS);
+    private static final byte[][] KNOWN_VERSION_BYTES = toBytes(KNOWN_VERSIONS);
+    private static final byte[][] KNOWN_HEADER_BYTES = toBytes(HTTPHeaders.KNOWN_NAMES);
+
+    private final InputStream in;
+    private final int maxLineLength;
+    private final int maxHeaderSize;
+    private int maxBufferedBodySize = DEFAULT_MAX_BUFFERED_BODY_SIZE;
+
+    private final byte[] buffer;
+    // Set when the buffer is the caller's array, which is never compacted.
+    private final boolean inPlace;
+    private int position = 0;
+    private int limit = 0;
+    private InputStream currentBody;
+
+    private boolean recycling;
+    private HTTPRequest recycledRequest;
+    private HTTPHeaders recycledHeaders;
+    private ContentLengthBodyStream recycledBody;
+    private byte[] discardBuffer;
+
+    private DeadlineInputStream deadlines;
+    private ConnectionLimits limits;
+    private boolean awaitingRequest;
+
+    // The previous request target, shared when the next one is identical.
+    private String lastPath;
+    private byte[] lastPathBytes = new byte[0];
 
     public HTTPRequestParser(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_LINE_LENGTH, DEFAULT_MAX_HEADER_SIZE);
+    }
+
+    public HTTPRequestParser(InputStream in, int bufferSize, int maxLineLength, int maxHeaderSize) {
+        if (bufferSize < maxLineLength + 2) {
+            throw new IllegalArgumentException("bufferSize must hold a full line and its terminator");
+        }
         this.in = in;
+        this.buffer = new byte[bufferSize];
+        this.inPlace = false;
+        this.maxLineLength = maxLineLength;
+        this.maxHeaderSize = maxHeaderSize;
+    }
+
+    /**
+     * Parses a request held entirely in memory, using the array itself as
+     * the buffer rather than copying it into a new one. The array must not
+     * change while the request, or its body, is in use.
+     */
+    public HTTPRequestParser(byte[] request) {
+        this(request, 0, request.length);
+    }
+
+    /**
+     * Parses the requests in length bytes of an array from offset, in place,
+     * as for HTTPRequestParser(byte[]).
+     */
+    public HTTPRequestParser(byte[] buffer, int offset, int length) {
+        this.in = InputStream.nullInputStream();
+        this.buffer = buffer;
+        this.inPlace = true;
+        this.position = offset;
+        this.limit = offset + length;
+        this.maxLineLength = DEFAULT_MAX_LINE_LENGTH;
+        this.maxHeaderSize = DEFAULT_MAX_HEADER_SIZE;
+    }
+
+    /**
+     * Sets the largest body HTTPRequest.getBody() will buffer in memory.
+     * Streaming reads through getBodyStream() are not limited.
+     */
+    public void setMaxBufferedBodySize(int maxBufferedBodySize) {
+        this.maxBufferedBodySize = maxBufferedBodySize;
+    }
+
+    /**
+     * Enables reuse of the request object, its headers and its body stream
+     * across calls to nextRequest(). Only suitable for connection loops that
+     * are done with a request and its response before reading the next one.
+     */
+    public void setRecycling(boolean recycling) {
+        this.recycling = recycling;
+    }
+
+    /**
+     * Enforces the idle, header and body timeouts of the limits. They only
+     * take effect when the parser reads from a DeadlineInputStream.
+     */
+    public void setTimeouts(ConnectionLimits limits) {
+        this.limits = limits;
+        this.deadlines = in instanceof DeadlineInputStream ? (DeadlineInputStream) in : null;
     }
 
+    /**
+     * Returns the next request, or null when the client closed the
+     * connection or left it idle past the idle timeout.
+     *
+     * @throws RequestTimeoutException if a request was started but its head
+     *                                 did not arrive within the header timeout
+     */
     public HTTPRequest nextRequest() throws HTTPParseException {
+        boolean readingHead = false;
+        String version = null;
         try {
-            String requestLine = IOUtils.readLine(in);
-            if (requestLine == null || requestLine.isEmpty()) {
-                return null;
+            discardUnreadBody();
+
+            readingHead = true;
+            if (deadlines != null) {
+                awaitingRequest = position == limit;
+                deadlines.setTimeout(awaitingRequest ? limits.getIdleTimeoutMillis()
+                        : limits.getHeaderTimeoutMillis());
+            }
+
+            int lineStart;
+            int contentEnd;
+            do {
+                int lineEnd = findLineEnd();
+                if (lineEnd < 0) {
+                    return null;
+                }
+                lineStart = position;
+                contentEnd = stripCR(lineStart, lineEnd);
+                position = lineEnd + 1;
+            } while (contentEnd == lineStart);
+
+            int firstSpace = indexOf(' ', lineStart, contentEnd);
+            int secondSpace = firstSpace < 0 ? -1 : indexOf(' ', firstSpace + 1, contentEnd);
+            if (firstSpace < 0 || secondSpace < 0) {
+                throw new HTTPParseException("Malformed request line: " + latin1(lineStart, contentEnd));
             }
-            String[] requestParts = requestLine.split(" ");
-            if (requestParts.length < 3) {
-                throw new HTTPParseException("Malformed request line: " + requestLine);
+            int versionEnd = indexOf(' ', secondSpace + 1, contentEnd);
+            if (versionEnd < 0) {
+                versionEnd = contentEnd;
             }
-            String method = requestParts[0];
-            String path = requestParts[1];
-            String version = requestParts[2];
-            HashMap<String, String> headers = readHeaders();
 
-            byte[] body = readBody(
-                    headers.get("Content-Length") != null ? Integer.parseInt(headers.get("Content-Length")) : 0);
+            String method = decode(KNOWN_METHODS, KNOWN_METHOD_BYTES, lineStart, firstSpace);
+            String path = decodePath(firstSpace + 1, secondSpace);
+            version = decode(KNOWN_VERSIONS, KNOWN_VERSION_BYTES, secondSpace + 1, versionEnd);
+            HTTPHeaders headers = readHeaders();
 
-            return new HTTPRequest(method, path, version, body, headers);
+            currentBody = openBody(headers);
+            readingHead = false;
+            if (deadlines != null) {
+                deadlines.setTimeout(hasPendingBody() ? limits.getBodyTimeoutMillis() : 0);
+            }
 
+            if (!recycling) {
+                return new HTTPRequest(method, path, version, currentBody, headers, maxBufferedBodySize);
+            }
+            if (recycledRequest == null) {
+                recycledRequest = new HTTPRequest(method, path, version, currentBody, headers, maxBufferedBodySize);
+                recycledRequest.setRecycled();
+            } else {
+                recycledRequest.reset(method, path, version, currentBody, headers, maxBufferedBodySize);
+            }
+            return recycledRequest;
+
+        } catch (SocketTimeoutException e) {
+            if (awaitingRequest) {
+                awaitingRequest = false;
+                return null;
+            }
+            if (readingHead) {
+                throw new RequestTimeoutException("Timed out reading request head", e, version);
+            }
+            throw new HTTPParseException("Timed out reading request body", e);
         } catch (IOException e) {
             throw new HTTPParseException("Failed to parse HTTP request:", e);
+        } catch (HTTPParseException e) {
+            if (version == null || e.getVersion() != null) {
+                throw e;
+            }
+            throw new HTTPParseException(e.getMessage(), e.getCause(), version);
         }
     }
 
-    private HashMap<String, String> readHeaders() throws HTTPParseException {
-        HashMap<String, String> headers = new HashMap<>();
+    private HTTPHeaders readHeaders() throws IOException, HTTPParseException {
+        HTTPHeaders headers;
+        if (!recycling) {
+            headers = new HTTPHeaders();
+        } else {
+            if (recycledHeaders == null) {
+                recycledHeaders = new HTTPHeaders();
+            }
+            headers = recycledHeaders;
+            headers.clear();
+        }
+        int headerBytes = 0;
         try {
-            String line = IOUtils.readLine(in);
-            while (!line.isEmpty()) {
-                int colonIndex = line.indexOf(":");
+            while (true) {
+                int lineEnd = findLineEnd();
+                if (lineEnd < 0) {
+                    break;
+                }
+                headerBytes += lineEnd + 1 - position;
+                if (headerBytes > maxHeaderSize) {
+                    throw new HTTPParseException("Request header block exceeds " + maxHeaderSize + " bytes");
+                }
+                int lineStart = position;
+                int contentEnd = stripCR(lineStart, lineEnd);
+                position = lineEnd + 1;
+                if (contentEnd == lineStart) {
+                    break;
+                }
+
+                int colonIndex = indexOf(':', lineStart, contentEnd);
                 if (colonIndex != -1) {
-                    String headerName = line.substring(0, colonIndex).trim();
-                    String headerValue = line.substring(colonIndex + 1).trim();
-                    headers.put(headerName, headerValue);
+                    int nameStart = skipWhitespace(lineStart, colonIndex);
+                    int nameEnd = trimWhitespace(nameStart, colonIndex);
+                    int valueStart = skipWhitespace(colonIndex + 1, contentEnd);
+                    int valueEnd = trimWhitespace(valueStart, contentEnd);
+                    headers.addView(knownHeaderName(nameStart, nameEnd), buffer, nameStart, nameEnd, valueStart,
+                            valueEnd);
                 }
-                line = IOUtils.readLine(in);
             }
 
+        } catch (SocketTimeoutException e) {
+            throw e;
         } catch (IOException e) {
             throw new HTTPParseException("Failed to read HTTP request headers:", e);
         }
         return headers;
     }
 
-    private byte[] readBody(int length) throws HTTPParseException {
-        byte[] body = new byte[length];
-        int bytesRead = 0;
-        while (bytesRead < length) {
+    /**
+     * Picks the body framing from the headers. Transfer-Encoding: chunked
+     * takes precedence over Content-Length, as required by RFC 9112.
+     */
+    private InputStream openBody(HTTPHeaders headers) throws HTTPParseException {
+        String transferEncoding = headers.get(HTTPHeaders.TRANSFER_ENCODING);
+        if (transferEncoding != null) {
+            if (!transferEncoding.trim().toLowerCase().endsWith("chunked")) {
+                throw new HTTPParseException("Unsupported Transfer-Encoding: " + transferEncoding);
+            }
+            return new ChunkedBodyStream();
+        }
+
+        String contentLength = headers.get(HTTPHeaders.CONTENT_LENGTH);
+        if (contentLength == null) {
+            return contentLengthBody(0);
+        }
+        for (String repeated : headers.getAll(HTTPHeaders.CONTENT_LENGTH)) {
+            if (!repeated.equals(contentLength)) {
+                throw new HTTPParseException("Conflicting Content-Length values");
+            }
+        }
+        try {
+            long length = Long.parseLong(contentLength);
+            if (length < 0) {
+                throw new HTTPParseException("Invalid Content-Length: " + contentLength);
+            }
+            return contentLengthBody(length);
+        } catch (NumberFormatException e) {
+            throw new HTTPParseException("Invalid Content-Length: " + contentLength);
+        }
+    }
+
+    private ContentLengthBodyStream contentLengthBody(long length) {
+        if (!recycling) {
+            return new ContentLengthBodyStream(length);
+        }
+        if (recycledBody == null) {
+            recycledBody = new ContentLengthBodyStream(length);
+        }
+        recycledBody.remaining = length;
+        return recycledBody;
+    }
+
+    private boolean hasPendingBody() {
+        if (currentBody instanceof ContentLengthBodyStream) {
+            return ((ContentLengthBodyStream) currentBody).remaining > 0;
+        }
+        return true;
+    }
+
+    /**
+     * Skips whatever the handler left unread of the previous request body so
+     * the next request starts at the right byte. Large leftovers are not
+     * worth reading; the connection is dropped instead.
+     */
+    private void discardUnreadBody() throws IOException, HTTPParseException {
+        if (currentBody == null) {
+            return;
+        }
+        InputStream body = currentBody;
+        currentBody = null;
+        if (body instanceof ContentLengthBodyStream && ((ContentLengthBodyStream) body).remaining == 0) {
+            return;
+        }
+        if (discardBuffer == null) {
+            discardBuffer = new byte[1024];
+        }
+        long discarded = 0;
+        int read;
+        while ((read = body.read(discardBuffer)) != -1) {
+            discarded += read;
+            if (discarded > MAX_DISCARDED_BODY_SIZE) {
+                throw new HTTPParseException("Unread request body exceeds " + MAX_DISCARDED_BODY_SIZE + " bytes");
+            }
+        }
+    }
+
+    /**
+     * Returns whether the buffer already holds the complete head of another
+     * request, so the next call to nextRequest() will not block on the
+     * connection. Pipelining connection loops use this to hold back their
+     * responses while more requests are waiting. Returns false while the
+     * current body has bytes that have not arrived yet.
+     */
+    public boolean hasBufferedRequest() {
+        int start = position;
+        if (currentBody instanceof ContentLengthBodyStream) {
+            long remaining = ((ContentLengthBodyStream) currentBody).remaining;
+            if (remaining > limit - position) {
+                return false;
+            }
+            start += (int) remaining;
+        } else if (currentBody instanceof ChunkedBodyStream && !((ChunkedBodyStream) currentBody).finished) {
+            return false;
+        }
+        while (start < limit && (buffer[start] == '\r' || buffer[start] == '\n')) {
+            start++;
+        }
+        for (int i = start; i < limit - 1; i++) {
+            if (buffer[i] == '\n' && (buffer[i + 1] == '\n'
+                    || (buffer[i + 1] == '\r' && i + 2 < limit && buffer[i + 2] == '\n'))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies up to len body bytes, serving them from the buffer first. Large
+     * reads with an empty buffer go straight to the underlying stream.
+     */
+    private int readBodyBytes(byte[] b, int off, int len) throws IOException {
+        if (position == limit) {
+            if (len >= buffer.length) {
+                return in.read(b, off, len);
+            }
+            if (!fill()) {
+                return -1;
+            }
+        }
+        int count = Math.min(len, limit - position);
+        System.arraycopy(buffer, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    /**
+     * Body delimited by Content-Length.
+     */
+    private class ContentLengthBodyStream extends InputStream {
+
+        private final byte[] one = new byte[1];
+        private long remaining;
+
+        ContentLengthBodyStream(long length) {
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            int read = readBodyBytes(b, off, (int) Math.min(len, remaining));
+            if (read == -1) {
+                throw new EOFException("Connection closed with " + remaining + " request body bytes missing");
+            }
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(remaining, limit - position);
+        }
+    }
+
+    /**
+     * Body sent with chunked transfer coding. Chunk extensions and trailer
+     * fields are read and ignored.
+     */
+    private class ChunkedBodyStream extends InputStream {
+
+        private final byte[] one = new byte[1];
+        private long chunkRemaining = 0;
+        private boolean finished = false;
+
+        @Override
+        public int read() throws IOException {
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (finished) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
             try {
-                int read = in.read(body, bytesRead, length - bytesRead);
+                if (chunkRemaining == 0) {
+                    chunkRemaining = readChunkSize();
+                    if (chunkRemaining == 0) {
+                        skipTrailers();
+                        finished = true;
+                        return -1;
+                    }
+                }
+                int read = readBodyBytes(b, off, (int) Math.min(len, chunkRemaining));
                 if (read == -1) {
-                    break;
+                    throw new EOFException("Connection closed in the middle of a chunk");
+                }
+                chunkRemaining -= read;
+                if (chunkRemaining == 0) {
+                    expectEmptyLine();
+                }
+                return read;
+            } catch (HTTPParseException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
+        private long readChunkSize() throws IOException, HTTPParseException {
+            int lineEnd = findLineEnd();
+            if (lineEnd < 0) {
+                throw new EOFException("Connection closed before chunk size");
+            }
+            int lineStart = position;
+            int sizeEnd = stripCR(lineStart, lineEnd);
+            position = lineEnd + 1;
+
+            int extension = indexOf(';', lineStart, sizeEnd);
+            if (extension != -1) {
+                sizeEnd = extension;
+            }
+            sizeEnd = trimWhitespace(lineStart, sizeEnd);
+            if (sizeEnd == lineStart || sizeEnd - lineStart > 15) {
+                throw new HTTPParseException("Invalid chunk size: " + latin1(lineStart, sizeEnd));
+            }
+            long size = 0;
+            for (int i = lineStart; i < sizeEnd; i++) {
+                int digit = Character.digit(buffer[i], 16);
+                if (digit < 0) {
+                    throw new HTTPParseException("Invalid chunk size: " + latin1(lineStart, sizeEnd));
                 }
-                bytesRead += read;
-            } catch (IOException e) {
-                throw new HTTPParseException("Failed to read HTTP request body:", e);
+                size = size * 16 + digit;
+            }
+            return size;
+        }
+
+        private void expectEmptyLine() throws IOException, HTTPParseException {
+            int lineEnd = findLineEnd();
+            if (lineEnd < 0 || stripCR(position, lineEnd) != position) {
+                throw new HTTPParseException("Missing CRLF after chunk data");
+            }
+            position = lineEnd + 1;
+        }
+
+        private void skipTrailers() throws IOException, HTTPParseException {
+            int trailerBytes = 0;
+            while (true) {
+                int lineEnd = findLineEnd();
+                if (lineEnd < 0) {
+                    throw new EOFException("Connection closed in chunked trailer");
+                }
+                trailerBytes += lineEnd + 1 - position;
+                if (trailerBytes > maxHeaderSize) {
+                    throw new HTTPParseException("Chunked trailer exceeds " + maxHeaderSize + " bytes");
+                }
+                boolean empty = stripCR(position, lineEnd) == position;
+                position = lineEnd + 1;
+                if (empty) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the next LF, reading more input as needed, or -1
+     * if the stream ends first. Any partial line at end of stream is consumed.
+     */
+    private int findLineEnd() throws IOException, HTTPParseException {
+        int scan = position;
+        while (true) {
+            byte[] buf = buffer;
+            for (int i = scan, end = limit; i < end; i++) {
+                if (buf[i] == '\n') {
+                    if (i - position > maxLineLength) {
+                        throw new HTTPParseException("Request line exceeds " + maxLineLength + " bytes");
+                    }
+                    return i;
+                }
+            }
+            if (limit - position > maxLineLength) {
+                throw new HTTPParseException("Request line exceeds " + maxLineLength + " bytes");
             }
+            scan = limit - position;
+            if (!fill()) {
+                position = limit;
+                return -1;
+            }
+            scan += position;
+        }
+    }
+
+    /**
+     * Compacts the unread bytes to the start of the buffer and reads more
+     * input after them. Returns false at end of stream.
+     */
+    private boolean fill() throws IOException {
+        if (inPlace) {
+            return false;
+        }
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read <= 0) {
+            return false;
+        }
+        limit += read;
+        if (awaitingRequest) {
+            awaitingRequest = false;
+            deadlines.setTimeout(limits.getHeaderTimeoutMillis());
+        }
+        return true;
+    }
+
+    private int stripCR(int start, int lineEnd) {
+        return lineEnd > start && buffer[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+    }
+
+    private int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int skipWhitespace(int from, int to) {
+        while (from < to && (buffer[from] == ' ' || buffer[from] == '\t')) {
+            from++;
+        }
+        return from;
+    }
+
+    private int trimWhitespace(int from, int to) {
+        while (to > from && (buffer[to - 1] == ' ' || buffer[to - 1] == '\t')) {
+            to--;
+        }
+        return to;
+    }
+
+    private String decode(String[] names, byte[][] encoded, int start, int end) {
+        int length = end - start;
+        for (int n = 0; n < encoded.length; n++) {
+            byte[] candidate = encoded[n];
+            if (candidate.length != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && buffer[start + i] == candidate[i]) {
+                i++;
+            }
+            if (i == length) {
+                return names[n];
+            }
+        }
+        return latin1(start, end);
+    }
+
+    /**
+     * Returns the previous request target if the bytes are the same, so a
+     * client that repeats a request does not cost a new String.
+     */
+    private String decodePath(int start, int end) {
+        int length = end - start;
+        if (lastPath != null && length == lastPathBytes.length
+                && Arrays.equals(buffer, start, end, lastPathBytes, 0, length)) {
+            return lastPath;
+        }
+        lastPath = latin1(start, end);
+        lastPathBytes = Arrays.copyOfRange(buffer, start, end);
+        return lastPath;
+    }
+
+    /**
+     * Returns the interned constant for a well-known header name sent in any
+     * letter case, or null for other names.
+     */
+    private String knownHeaderName(int start, int end) {
+        int length = end - start;
+        for (int n = 0; n < KNOWN_HEADER_BYTES.length; n++) {
+            byte[] candidate = KNOWN_HEADER_BYTES[n];
+            if (candidate.length != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && equalsIgnoreCase(buffer[start + i], candidate[i])) {
+                i++;
+            }
+            if (i == length) {
+                return HTTPHeaders.KNOWN_NAMES[n];
+            }
+        }
+        return null;
+    }
+
+    private static boolean equalsIgnoreCase(byte a, byte b) {
+        if (a == b) {
+            return true;
+        }
+        int lower = a | 0x20;
+        return lower >= 'a' && lower <= 'z' && lower == (b | 0x20);
+    }
+
+    private String latin1(int start, int end) {
+        return new String(buffer, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[][] toBytes(String[] values) {
+        byte[][] encoded = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            encoded[i] = values[i].getBytes(StandardCharsets.US_ASCII);
         }
-        return body;
+        return encoded;
     }
 
 }
@@ -1,27 +1,61 @@
 package http;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Map;
 
 /**
  * Represents an HTTP response to be sent back to the client.
  * Stores status line, headers, and response body.
  * Used by handlers to construct protocol-compliant HTTP responses.
+ *
+ * Handlers that want to take part in connection recycling obtain their
+ * response from HTTPRequest.newResponse() and fill it in place: headers
+ * through getHeaders(), the body through bodyBuffer() or setBody().
  */
 public class HTTPResponse {
 
     String version;
     int statusCode;
     String reasonPhrase;
-    Map<String, String> headers;
-    byte[] body;
+    HTTPHeaders headers;
+    ResponseBody body;
+    private BufferBody bodyBuffer;
 
     public HTTPResponse(String version, int statusCode, String reasonPhrase,
             Map<String, String> headers, byte[] body) {
+        this(version, statusCode, reasonPhrase, HTTPHeaders.of(headers), ResponseBody.of(body));
+    }
+
+    public HTTPResponse(String version, int statusCode, String reasonPhrase,
+            Map<String, String> headers, ResponseBody body) {
+        this(version, statusCode, reasonPhrase, HTTPHeaders.of(headers), body);
+    }
+
+    public HTTPResponse(String version, int statusCode, String reasonPhrase,
+            HTTPHeaders headers, byte[] body) {
+        this(version, statusCode, reasonPhrase, headers, ResponseBody.of(body));
+    }
+
+    public HTTPResponse(String version, int statusCode, String reasonPhrase,
+            HTTPHeaders headers, ResponseBody body) {
         this.version = version;
         this.statusCode = statusCode;
         this.reasonPhrase = reasonPhrase;
         this.headers = headers;
-        this.body = body;
+        this.body = body != null ? body : ResponseBody.empty();
+    }
+
+    /**
+     * Prepares a recycled response for the next request, keeping the header
+     * arrays and body buffer.
+     */
+    void reset(String version, int statusCode, String reasonPhrase) {
+        this.version = version;
+        this.statusCode = statusCode;
+        this.reasonPhrase = reasonPhrase;
+        this.headers.clear();
+        this.body = ResponseBody.empty();
     }
 
     public String getVersion() {
@@ -40,12 +74,43 @@ public class HTTPResponse {
         return headers.get(name);
     }
 
-    public Map<String, String> getHeaders() {
+    public HTTPHeaders getHeaders() {
         return headers;
     }
 
+    /**
+     * Returns the body as a byte array. Streaming bodies are read fully into
+     * memory on first call, so the connection layer uses getResponseBody().
+     */
     public byte[] getBody() {
+        if (!(body instanceof ByteArrayBody)) {
+            try {
+                body = new ByteArrayBody(body.toByteArray());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read response body", e);
+            }
+        }
+        return ((ByteArrayBody) body).getData();
+    }
+
+    public ResponseBody getResponseBody() {
         return body;
     }
 
+    public void setBody(ResponseBody body) {
+        this.body = body != null ? body : ResponseBody.empty();
+    }
+
+    /**
+     * Makes this response's reusable in-memory body the current body, emptied,
+     * and returns it for the handler to append to.
+     */
+    public BufferBody bodyBuffer() {
+        if (bodyBuffer == null) {
+            bodyBuffer = new BufferBody();
+        }
+        body = bodyBuffer.clear();
+        return bodyBuffer;
+    }
+
 }
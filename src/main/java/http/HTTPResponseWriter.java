@@ -0,0 +1,176 @@
+package http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Serializes an HTTPResponse onto an OutputStream.
+ * Shared by the blocking connection loop and the NIO event loop so both
+ * modes produce identical bytes on the wire.
+ *
+ * Bodies are streamed from their ResponseBody rather than copied into the
+ * head. A body of unknown length is sent with "Transfer-Encoding: chunked"
+ * to HTTP/1.1 clients, so the connection stays reusable; HTTP/1.0 clients
+ * get it delimited by closing the connection instead.
+ *
+ * Heads are encoded by a per-connection ResponseEncoder. On a socket
+ * channel, a head and a small in-memory body leave in one gathering write,
+ * and the responses to pipelined requests can be batched into one flush.
+ */
+public class HTTPResponseWriter {
+
+    /**
+     * Bodies up to this size are sent in the same gathering write as the
+     * head, so a small response costs one syscall and usually one segment.
+     */
+    public static final int GATHER_LIMIT = 16 * 1024;
+
+    /**
+     * Writes the response and returns whether the connection may be reused
+     * for another request.
+     */
+    public static boolean write(OutputStream out, HTTPResponse response, String method) throws IOException {
+        return write(out, null, response, method, new ResponseEncoder());
+    }
+
+    public static boolean write(OutputStream out, WritableByteChannel channel, HTTPResponse response,
+            String method) throws IOException {
+        return write(out, channel, response, method, new ResponseEncoder());
+    }
+
+    public static boolean write(OutputStream out, WritableByteChannel channel, HTTPResponse response,
+            String method, ResponseEncoder encoder) throws IOException {
+        return write(out, channel, response, method, encoder, false);
+    }
+
+    /**
+     * Writes the response, sending file bodies straight to the given channel
+     * with zero-copy transfer, and small in-memory bodies together with the
+     * head in one gathering write. The channel must be the one underlying
+     * out; when it is null everything is copied through the stream instead.
+     *
+     * When batch is true more pipelined responses follow, so a small
+     * response is left in out (normally a BatchingOutputStream) to be sent
+     * together with the next ones; the caller flushes after the last.
+     *
+     * @param encoder the connection's reusable head encoder
+     */
+    public static boolean write(OutputStream out, WritableByteChannel channel, HTTPResponse response,
+            String method, ResponseEncoder encoder, boolean batch) throws IOException {
+        boolean sendBody = sendsBody(response, method);
+        boolean keepAlive = isKeepAlive(response, method);
+        ByteBuffer head = encoder.encodeHead(response, keepAlive);
+        boolean small = !sendBody || isGatherable(response);
+        boolean buffered = out instanceof BatchingOutputStream && ((BatchingOutputStream) out).hasBuffered();
+
+        try (ResponseBody body = response.getResponseBody()) {
+            if (small && !batch && !buffered && channel instanceof GatheringByteChannel) {
+                ByteBuffer[] buffers = encoder.gather(head, sendBody ? body.asByteBuffer() : null);
+                writeFully((GatheringByteChannel) channel, buffers);
+                return keepAlive;
+            }
+
+            out.write(head.array(), head.arrayOffset() + head.position(), head.remaining());
+            if (sendBody) {
+                if (isChunked(response)) {
+                    ChunkedOutputStream chunked = new ChunkedOutputStream(out);
+                    body.writeTo(chunked);
+                    chunked.finish();
+                } else if (channel != null && body instanceof CompositeBody) {
+                    for (ResponseBody part : ((CompositeBody) body).getParts()) {
+                        writePart(out, channel, part);
+                    }
+                } else if (channel != null) {
+                    writePart(out, channel, body);
+                } else {
+                    body.writeTo(out);
+                }
+            }
+        }
+
+        if (!batch) {
+            out.flush();
+        }
+        return keepAlive;
+    }
+
+    /**
+     * Returns whether the body is small and held in memory, so it can be
+     * gathered with the head.
+     */
+    public static boolean isGatherable(HTTPResponse response) {
+        ResponseBody body = response.getResponseBody();
+        return body.isInMemory() && body.length() <= GATHER_LIMIT && !isChunked(response);
+    }
+
+    private static void writeFully(GatheringByteChannel channel, ByteBuffer[] buffers) throws IOException {
+        ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
+    private static void writePart(OutputStream out, WritableByteChannel channel, ResponseBody body)
+            throws IOException {
+        if (body instanceof FileRegionBody) {
+            out.flush();
+            ((FileRegionBody) body).transferTo(channel);
+        } else {
+            body.writeTo(out);
+        }
+    }
+
+    /**
+     * Encodes the status line and headers, including the terminating blank
+     * line. Content-Length (or Transfer-Encoding) and Connection are filled
+     * in when the handler did not set them.
+     */
+    public static byte[] encodeHead(HTTPResponse response, boolean keepAlive) {
+        return new ResponseEncoder().encodeHeadBytes(response, keepAlive);
+    }
+
+    /**
+     * Returns whether a body is transmitted after the head.
+     */
+    public static boolean sendsBody(HTTPResponse response, String method) {
+        return !method.equals("HEAD") && statusAllowsBody(response)
+                && response.getResponseBody().length() != 0;
+    }
+
+    /**
+     * Returns whether the connection stays open after this response.
+     */
+    public static boolean isKeepAlive(HTTPResponse response, String method) {
+        String connection = response.getHeader("Connection");
+        if (connection != null && connection.equalsIgnoreCase("close")) {
+            return false;
+        }
+        return !sendsBody(response, method) || hasDelimitedLength(response);
+    }
+
+    /**
+     * Returns whether the body is framed with chunked transfer coding: its
+     * length is unknown and the client speaks HTTP/1.1.
+     */
+    public static boolean isChunked(HTTPResponse response) {
+        return statusAllowsBody(response)
+                && response.getResponseBody().length() < 0
+                && response.getHeader("Content-Length") == null
+                && "HTTP/1.1".equals(response.getVersion());
+    }
+
+    private static boolean hasDelimitedLength(HTTPResponse response) {
+        return response.getResponseBody().length() >= 0
+                || response.getHeader("Content-Length") != null
+                || isChunked(response);
+    }
+
+    static boolean statusAllowsBody(HTTPResponse response) {
+        int status = response.getStatusCode();
+        return status >= 200 && status != 204 && status != 304;
+    }
+
+}
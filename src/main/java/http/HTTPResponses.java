@@ -1,7 +1,6 @@
 package http;
 
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
 
 /**
  * Provides static helper methods for generating common HTTP responses.
@@ -13,9 +12,9 @@ public class HTTPResponses {
     public static HTTPResponse internalServerError(String version, String message) {
         byte[] body = message.getBytes(StandardCharsets.UTF_8);
 
-        HashMap<String, String> headers = new HashMap<>();
-        headers.put("Content-Type", "text/plain");
-        headers.put("Content-Length", String.valueOf(body.length));
+        HTTPHeaders headers = new HTTPHeaders();
+        headers.set("Content-Type", "text/plain");
+        headers.set("Content-Length", String.valueOf(body.length));
 
         return new HTTPResponse(
                 version,
@@ -28,9 +27,9 @@ public class HTTPResponses {
     public static HTTPResponse notFoundError(String version, String message) {
         byte[] body = message.getBytes(StandardCharsets.UTF_8);
 
-        HashMap<String, String> headers = new HashMap<>();
-        headers.put("Content-Type", ContentType.TEXT_PLAIN.getType());
-        headers.put("Content-Length", String.valueOf(body.length));
+        HTTPHeaders headers = new HTTPHeaders();
+        headers.set("Content-Type", ContentType.TEXT_PLAIN.getType());
+        headers.set("Content-Length", String.valueOf(body.length));
 
         return new HTTPResponse(
                 version,
@@ -44,9 +43,9 @@ public class HTTPResponses {
     public static HTTPResponse conflictError(String version, String message) {
         byte[] body = message.getBytes(StandardCharsets.UTF_8);
 
-        HashMap<String, String> headers = new HashMap<>();
-        headers.put("Content-Type", ContentType.TEXT_PLAIN.getType());
-        headers.put("Content-Length", String.valueOf(body.length));
+        HTTPHeaders headers = new HTTPHeaders();
+        headers.set("Content-Type", ContentType.TEXT_PLAIN.getType());
+        headers.set("Content-Length", String.valueOf(body.length));
 
         return new HTTPResponse(
                 version,
@@ -59,9 +58,9 @@ public class HTTPResponses {
     public static HTTPResponse created(String version, String message) {
         byte[] body = message.getBytes(StandardCharsets.UTF_8);
 
-        HashMap<String, String> headers = new HashMap<>();
-        headers.put("Content-Type", ContentType.TEXT_PLAIN.getType());
-        headers.put("Content-Length", String.valueOf(body.length));
+        HTTPHeaders headers = new HTTPHeaders();
+        headers.set("Content-Type", ContentType.TEXT_PLAIN.getType());
+        headers.set("Content-Length", String.valueOf(body.length));
 
         return new HTTPResponse(
                 version,
@@ -71,4 +70,119 @@ public class HTTPResponses {
                 body);
     }
 
+    /**
+     * 416 response for a Range header none of whose ranges overlap the
+     * representation.
+     */
+    public static HTTPResponse rangeNotSatisfiable(String version, long size) {
+        HTTPHeaders headers = new HTTPHeaders();
+        headers.set("Content-Range", "bytes */" + size);
+        headers.set("Content-Length", "0");
+
+        return new HTTPResponse(
+                version,
+                416,
+                "Range Not Satisfiable",
+                headers,
+                new byte[0]);
+    }
+
+    /**
+     * 400 response for a request that could not be parsed. The connection
+     * is closed after it.
+     */
+    public static HTTPResponse badRequest(String version) {
+        HTTPHeaders headers = new HTTPHeaders();
+        headers.set(HTTPHeaders.CONNECTION, "close");
+        headers.set("Content-Length", "0");
+
+        return new HTTPResponse(
+                version,
+                400,
+                "Bad Request",
+                headers,
+                new byte[0]);
+    }
+
+    /**
+     * 413 response for a request larger than the server accepts. The
+     * connection is closed after it, without reading the rest.
+     */
+    public static HTTPResponse contentTooLarge(String version) {
+        HTTPHeaders headers = new HTTPHeaders();
+        headers.set(HTTPHeaders.CONNECTION, "close");
+        headers.set("Content-Length", "0");
+
+        return new HTTPResponse(
+                version,
+                413,
+                "Content Too Large",
+                headers,
+                new byte[0]);
+    }
+
+    /**
+     * 408 response for a client that did not send its request in time. The
+     * connection is closed after it.
+     */
+    public static HTTPResponse requestTimeout(String version) {
+        HTTPHeaders headers = new HTTPHeaders();
+        headers.set(HTTPHeaders.CONNECTION, "close");
+        headers.set("Content-Length", "0");
+
+        return new HTTPResponse(
+                version,
+                408,
+                "Request Timeout",
+                headers,
+                new byte[0]);
+    }
+
+    /**
+     * 503 response for a request the server is too busy to handle, telling
+     * the client when to try again. The connection is closed after it.
+     */
+    public static HTTPResponse serviceUnavailable(String version, int retryAfterSeconds) {
+        HTTPHeaders headers = new HTTPHeaders();
+        headers.set(HTTPHeaders.CONNECTION, "close");
+        headers.set("Retry-After", String.valueOf(retryAfterSeconds));
+        headers.set("Content-Length", "0");
+
+        return new HTTPResponse(
+                version,
+                503,
+                "Service Unavailable",
+                headers,
+                new byte[0]);
+    }
+
+    /**
+     * 503 response for a request whose asynchronous handler did not answer
+     * before the handler timeout. The connection stays open.
+     */
+    public static HTTPResponse handlerTimeout(String version) {
+        HTTPHeaders headers = new HTTPHeaders();
+        headers.set("Content-Length", "0");
+
+        return new HTTPResponse(
+                version,
+                503,
+                "Service Unavailable",
+                headers,
+                new byte[0]);
+    }
+
+    /**
+     * 304 response carrying the validator headers of the current
+     * representation and no body.
+     */
+    public static HTTPResponse notModified(String version, HTTPHeaders headers) {
+        return new HTTPResponse(
+                version,
+                304,
+                "Not Modified",
+                headers,
+                new byte[0]);
+    }
+
 }
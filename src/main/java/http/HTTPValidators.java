@@ -0,0 +1,116 @@
+package http;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * Helpers for cache validators: ETag and Last-Modified values derived from
+ * file metadata, and evaluation of If-None-Match / If-Modified-Since so a
+ * handler can answer 304 Not Modified without reading any content, and of
+ * If-Range before serving a partial response.
+ */
+public class HTTPValidators {
+
+    /**
+     * IMF-fixdate. RFC_1123_DATE_TIME would print single-digit days without
+     * the leading zero the format requires; it is still used for parsing,
+     * which accepts both.
+     */
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter
+            .ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+    /**
+     * Returns a strong entity tag for a file of the given size and
+     * modification time. Different encodings of the same file must use
+     * different suffixes, since their bytes differ.
+     *
+     * @param suffix distinguishes the representation, or null for identity
+     */
+    public static String etag(long size, long lastModifiedMillis, String suffix) {
+        StringBuilder tag = new StringBuilder(32).append('"')
+                .append(Long.toHexString(size)).append('-')
+                .append(Long.toHexString(lastModifiedMillis));
+        if (suffix != null) {
+            tag.append('-').append(suffix);
+        }
+        return tag.append('"').toString();
+    }
+
+    /**
+     * Formats a timestamp as an IMF-fixdate, e.g. "Sun, 06 Nov 1994 08:49:37 GMT".
+     */
+    public static String formatDate(long millis) {
+        return HTTP_DATE.format(Instant.ofEpochMilli(millis));
+    }
+
+    /**
+     * Parses an HTTP date, returning -1 if it is malformed.
+     */
+    public static long parseDate(String value) {
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns whether a GET or HEAD request's preconditions say the client's
+     * copy is current. If-None-Match takes precedence over If-Modified-Since,
+     * as in RFC 9110 section 13.2.2.
+     */
+    public static boolean isNotModified(HTTPRequest request, String etag, long lastModifiedMillis) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return matchesAny(ifNoneMatch, etag);
+        }
+        String ifModifiedSince = request.getHeader("If-Modified-Since");
+        if (ifModifiedSince != null) {
+            long since = parseDate(ifModifiedSince);
+            // HTTP dates have one-second resolution.
+            return since >= 0 && lastModifiedMillis / 1000 <= since / 1000;
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether a Range header should be honoured: true without
+     * If-Range, otherwise only if If-Range names the current representation.
+     * An entity tag must match strongly, and a date must equal Last-Modified.
+     */
+    public static boolean ifRangeMatches(HTTPRequest request, String etag, long lastModifiedMillis) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        long date = parseDate(ifRange);
+        return date >= 0 && date / 1000 == lastModifiedMillis / 1000;
+    }
+
+    /**
+     * Weak comparison of etag against a comma-separated If-None-Match list.
+     */
+    static boolean matchesAny(String list, String etag) {
+        String target = opaqueTag(etag);
+        for (String candidate : list.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || opaqueTag(tag).equals(target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaqueTag(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+}
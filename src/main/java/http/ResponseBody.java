@@ -0,0 +1,125 @@
+package http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Source of the bytes sent as an HTTP response body.
+ * Bodies are streamed to the connection through a bounded buffer, so the
+ * memory needed to send a response does not depend on its size. A body can
+ * be written once; close() releases any underlying file or stream when the
+ * body is never written (for example in answer to HEAD).
+ */
+public abstract class ResponseBody implements Closeable {
+
+    public static final int TRANSFER_BUFFER_SIZE = 16 * 1024;
+
+    private static final ResponseBody EMPTY = new ByteArrayBody(new byte[0]);
+
+    /**
+     * Callback that produces a body by writing to the connection's stream.
+     * Implementations must not close the stream.
+     */
+    public interface BodyWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    public static ResponseBody empty() {
+        return EMPTY;
+    }
+
+    public static ResponseBody of(byte[] data) {
+        return data == null || data.length == 0 ? EMPTY : new ByteArrayBody(data);
+    }
+
+    public static ResponseBody ofFile(Path path) throws IOException {
+        return new FileRegionBody(path, 0, Files.size(path));
+    }
+
+    public static ResponseBody ofFile(Path path, long position, long length) {
+        return new FileRegionBody(path, position, length);
+    }
+
+    /**
+     * @param length the number of bytes the stream will produce, or -1 if unknown
+     */
+    public static ResponseBody ofStream(InputStream in, long length) {
+        return new ChannelBody(Channels.newChannel(in), length);
+    }
+
+    /**
+     * @param length the number of bytes the channel will produce, or -1 if unknown
+     */
+    public static ResponseBody ofChannel(ReadableByteChannel channel, long length) {
+        return new ChannelBody(channel, length);
+    }
+
+    /**
+     * @param length the number of bytes the writer will produce, or -1 if unknown
+     */
+    public static ResponseBody ofWriter(BodyWriter writer, long length) {
+        return new WriterBody(writer, length);
+    }
+
+    /**
+     * Returns a body that sends the given bodies one after another.
+     */
+    public static ResponseBody ofParts(List<ResponseBody> parts) {
+        return new CompositeBody(parts);
+    }
+
+    /**
+     * Returns the body length in bytes, or -1 if it is not known in advance.
+     */
+    public abstract long length();
+
+    /**
+     * Writes the whole body to the given stream, blocking as needed.
+     */
+    public abstract void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * Opens a channel from which the body can be pulled in pieces. Used by
+     * the non-blocking server, which copies from it as the socket drains.
+     */
+    public abstract ReadableByteChannel openChannel() throws IOException;
+
+    /**
+     * Returns whether the body is held in memory, so asByteBuffer() can hand
+     * it to a gathering write without copying.
+     */
+    public boolean isInMemory() {
+        return false;
+    }
+
+    /**
+     * Returns the bytes of an in-memory body as a buffer positioned at its
+     * start. Not supported by other bodies.
+     */
+    public ByteBuffer asByteBuffer() {
+        throw new UnsupportedOperationException("Body is not held in memory");
+    }
+
+    /**
+     * Reads the whole body into memory.
+     */
+    public byte[] toByteArray() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length() > 0 ? (int) length() : 32);
+        writeTo(out);
+        return out.toByteArray();
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+}
@@ -0,0 +1,259 @@
+package http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encodes response heads into one reusable buffer, so writing a response
+ * costs no StringBuilder, String or charset encoder. Status lines for the
+ * codes this server sends, common header names and the Connection lines
+ * are encoded once as byte arrays; other text is copied char by char.
+ *
+ * An encoder is owned by one connection and is not thread-safe. The
+ * buffer returned by encodeHead is only valid until the next call.
+ */
+public final class ResponseEncoder {
+
+    private static final int INITIAL_CAPACITY = 512;
+
+    private static final byte[] CRLF = ascii("\r\n");
+    private static final byte[] COLON_SPACE = ascii(": ");
+    private static final byte[] KEEP_ALIVE = ascii("Connection: keep-alive\r\n");
+    private static final byte[] CLOSE = ascii("Connection: close\r\n");
+    private static final byte[] KEEP_ALIVE_HEADER = ascii("Keep-Alive: ");
+    private static final byte[] TIMEOUT_PARAMETER = ascii("timeout=");
+    private static final byte[] MAX_PARAMETER = ascii("max=");
+    private static final byte[] PARAMETER_SEPARATOR = ascii(", ");
+    private static final byte[] CHUNKED = ascii("Transfer-Encoding: chunked\r\n");
+    private static final byte[] CONTENT_LENGTH = ascii("Content-Length: ");
+
+    private static final Map<Integer, String> REASONS = new HashMap<>();
+    private static final String[] REASON_PHRASES = new String[600];
+    private static final byte[][] STATUS_LINES_11 = new byte[600][];
+    private static final byte[][] STATUS_LINES_10 = new byte[600][];
+    private static final Map<String, byte[]> HEADER_NAMES = new HashMap<>();
+
+    static {
+        REASONS.put(100, "Continue");
+        REASONS.put(200, "OK");
+        REASONS.put(201, "Created");
+        REASONS.put(204, "No Content");
+        REASONS.put(206, "Partial Content");
+        REASONS.put(301, "Moved Permanently");
+        REASONS.put(302, "Found");
+        REASONS.put(304, "Not Modified");
+        REASONS.put(400, "Bad Request");
+        REASONS.put(403, "Forbidden");
+        REASONS.put(404, "Not Found");
+        REASONS.put(405, "Method Not Allowed");
+        REASONS.put(408, "Request Timeout");
+        REASONS.put(409, "Conflict");
+        REASONS.put(411, "Length Required");
+        REASONS.put(413, "Content Too Large");
+        REASONS.put(416, "Range Not Satisfiable");
+        REASONS.put(431, "Request Header Fields Too Large");
+        REASONS.put(500, "Internal Server Error");
+        REASONS.put(501, "Not Implemented");
+        REASONS.put(503, "Service Unavailable");
+        for (Map.Entry<Integer, String> reason : REASONS.entrySet()) {
+            REASON_PHRASES[reason.getKey()] = reason.getValue();
+            STATUS_LINES_11[reason.getKey()] = ascii("HTTP/1.1 " + reason.getKey() + " " + reason.getValue() + "\r\n");
+            STATUS_LINES_10[reason.getKey()] = ascii("HTTP/1.0 " + reason.getKey() + " " + reason.getValue() + "\r\n");
+        }
+        for (String name : new String[] { "Accept-Ranges", "Allow", "Cache-Control", "Connection",
+                "Content-Encoding", "Content-Length", "Content-Range", "Content-Type", "Date", "ETag",
+                "Keep-Alive", "Last-Modified", "Location", "Retry-After", "Server", "Transfer-Encoding",
+                "Vary" }) {
+            HEADER_NAMES.put(name, ascii(name + ": "));
+        }
+    }
+
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+    private final ByteBuffer[] headOnly = new ByteBuffer[1];
+    private final ByteBuffer[] headAndBody = new ByteBuffer[2];
+    private long keepAliveTimeout = -1;
+    private long keepAliveMax = -1;
+
+    /**
+     * Sets the parameters of the Keep-Alive header added to the following
+     * keep-alive responses: the idle timeout in seconds and the number of
+     * requests the connection has left. -1 leaves a parameter out, and the
+     * header is omitted when both are.
+     */
+    public void setKeepAlive(long timeoutSeconds, long maxRequests) {
+        this.keepAliveTimeout = timeoutSeconds;
+        this.keepAliveMax = maxRequests;
+    }
+
+    /**
+     * Encodes the status line and headers, including the terminating blank
+     * line, and returns the buffer ready for reading. Content-Length (or
+     * Transfer-Encoding) and Connection are filled in when the handler did
+     * not set them.
+     */
+    public ByteBuffer encodeHead(HTTPResponse response, boolean keepAlive) {
+        buffer.clear();
+        writeStatusLine(response);
+
+        if (response.getHeader("Connection") == null) {
+            put(keepAlive ? KEEP_ALIVE : CLOSE);
+            if (keepAlive && (keepAliveTimeout >= 0 || keepAliveMax >= 0)) {
+                putKeepAliveHeader();
+            }
+        }
+
+        long length = response.getResponseBody().length();
+        if (response.getHeader("Content-Length") == null && length >= 0
+                && HTTPResponseWriter.statusAllowsBody(response)) {
+            put(CONTENT_LENGTH);
+            putDecimal(length);
+            put(CRLF);
+        } else if (HTTPResponseWriter.isChunked(response)) {
+            put(CHUNKED);
+        }
+
+        HTTPHeaders headers = response.getHeaders();
+        for (int i = 0; i < headers.size(); i++) {
+            byte[] name = HEADER_NAMES.get(headers.name(i));
+            if (name != null) {
+                put(name);
+            } else {
+                putText(headers.name(i));
+                put(COLON_SPACE);
+            }
+            putText(headers.value(i));
+            put(CRLF);
+        }
+
+        put(CRLF);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Encodes the head into a new array, for callers that queue it.
+     */
+    public byte[] encodeHeadBytes(HTTPResponse response, boolean keepAlive) {
+        ByteBuffer head = encodeHead(response, keepAlive);
+        byte[] bytes = new byte[head.remaining()];
+        head.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns a reusable array holding the head and, if not null, the body,
+     * for a gathering write.
+     */
+    public ByteBuffer[] gather(ByteBuffer head, ByteBuffer body) {
+        if (body == null) {
+            headOnly[0] = head;
+            return headOnly;
+        }
+        headAndBody[0] = head;
+        headAndBody[1] = body;
+        return headAndBody;
+    }
+
+    private void writeStatusLine(HTTPResponse response) {
+        int status = response.getStatusCode();
+        String reason = response.getReasonPhrase();
+        if (status >= 0 && status < STATUS_LINES_11.length && reason.equals(REASON_PHRASES[status])) {
+            if ("HTTP/1.1".equals(response.getVersion())) {
+                put(STATUS_LINES_11[status]);
+                return;
+            }
+            if ("HTTP/1.0".equals(response.getVersion())) {
+                put(STATUS_LINES_10[status]);
+                return;
+            }
+        }
+        putText(response.getVersion());
+        putByte((byte) ' ');
+        putDecimal(status);
+        putByte((byte) ' ');
+        putText(reason);
+        put(CRLF);
+    }
+
+    private void putKeepAliveHeader() {
+        put(KEEP_ALIVE_HEADER);
+        if (keepAliveTimeout >= 0) {
+            put(TIMEOUT_PARAMETER);
+            putDecimal(keepAliveTimeout);
+            if (keepAliveMax >= 0) {
+                put(PARAMETER_SEPARATOR);
+            }
+        }
+        if (keepAliveMax >= 0) {
+            put(MAX_PARAMETER);
+            putDecimal(keepAliveMax);
+        }
+        put(CRLF);
+    }
+
+    private void put(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void putByte(byte b) {
+        ensureCapacity(1);
+        buffer.put(b);
+    }
+
+    /**
+     * Copies ASCII text byte by byte; text with other characters is UTF-8
+     * encoded, as the StringBuilder-based encoder did.
+     */
+    private void putText(String text) {
+        int length = text.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                buffer.position(buffer.position() - i);
+                put(text.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            buffer.put((byte) c);
+        }
+    }
+
+    private void putDecimal(long value) {
+        if (value == 0) {
+            putByte((byte) '0');
+            return;
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int start = buffer.position();
+        while (value > 0) {
+            buffer.put((byte) ('0' + value % 10));
+            value /= 10;
+        }
+        for (int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+            byte swap = buffer.get(i);
+            buffer.put(i, buffer.get(j));
+            buffer.put(j, swap);
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (buffer.remaining() < extra) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + extra));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+}
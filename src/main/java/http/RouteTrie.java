@@ -0,0 +1,295 @@
+package http;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import handlers.HTTPHandler;
+import handlers.OptionsHandler;
+
+/**
+ * Immutable radix tree compiled from a Router's routes.
+ *
+ * Routes are prefixes: a route matches every path that starts with it, and
+ * the longest matching route for the request method wins, so overlapping
+ * prefixes resolve the same way regardless of registration order. A
+ * "{name}" segment matches one path segment (up to the next '/' or '?') and
+ * is captured as a path parameter; where a static edge and a parameter both
+ * apply, the static edge is tried first.
+ *
+ * Lookup walks the tree with String.startsWith and indexOf only, so routing
+ * a request to a static route allocates nothing. The OPTIONS handler with
+ * its Allow header is built once per route at compile time.
+ */
+final class RouteTrie {
+
+    private static final String[] KNOWN_METHODS = {
+            "GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "PATCH", "TRACE", "CONNECT" };
+
+    /** Method index that matches any route, used to answer OPTIONS. */
+    private static final int ANY_METHOD = -2;
+    private static final int OTHER_METHOD = -1;
+
+    private final Node root;
+
+    RouteTrie(Map<String, Map<String, HTTPHandler>> routes) {
+        Builder builder = new Builder();
+        for (Map.Entry<String, Map<String, HTTPHandler>> methodRoutes : routes.entrySet()) {
+            for (Map.Entry<String, HTTPHandler> route : methodRoutes.getValue().entrySet()) {
+                builder.insert(route.getKey(), methodRoutes.getKey(), route.getValue());
+            }
+        }
+        this.root = builder.freeze("", new LinkedHashSet<>());
+    }
+
+    /**
+     * Returns the handler for the request, or null when no route matches.
+     * Path parameters of the matched route are stored on the request.
+     */
+    HTTPHandler route(HTTPRequest request) {
+        String method = request.getMethod();
+        boolean options = method.equals("OPTIONS");
+        int methodIndex = options ? ANY_METHOD : methodIndex(method);
+        String path = request.getPath();
+
+        Node node = search(root, path, 0, methodIndex, method);
+        if (node == null) {
+            return null;
+        }
+        if (node.paramNames != null) {
+            request.setPathParameters(node.paramNames, node.extractParameters(path));
+        }
+        return options ? node.options : node.handler(methodIndex, method);
+    }
+
+    /**
+     * Returns the deepest node on a path through the tree that has a route
+     * for the method, preferring static edges over parameters.
+     */
+    private static Node search(Node node, String path, int pos, int methodIndex, String method) {
+        if (pos < path.length()) {
+            Node child = node.staticChild(path.charAt(pos));
+            if (child != null && path.startsWith(child.label, pos)) {
+                Node found = search(child, path, pos + child.label.length(), methodIndex, method);
+                if (found != null) {
+                    return found;
+                }
+            }
+            if (node.paramChild != null) {
+                int end = segmentEnd(path, pos);
+                if (end > pos) {
+                    Node found = search(node.paramChild, path, end, methodIndex, method);
+                    if (found != null) {
+                        return found;
+                    }
+                }
+            }
+        }
+        return node.handles(methodIndex, method) ? node : null;
+    }
+
+    private static int segmentEnd(String path, int pos) {
+        int end = pos;
+        while (end < path.length()) {
+            char c = path.charAt(end);
+            if (c == '/' || c == '?') {
+                break;
+            }
+            end++;
+        }
+        return end;
+    }
+
+    private static int methodIndex(String method) {
+        switch (method) {
+            case "GET":
+                return 0;
+            case "HEAD":
+                return 1;
+            case "POST":
+                return 2;
+            case "PUT":
+                return 3;
+            case "DELETE":
+                return 4;
+            case "OPTIONS":
+                return 5;
+            case "PATCH":
+                return 6;
+            case "TRACE":
+                return 7;
+            case "CONNECT":
+                return 8;
+            default:
+                return OTHER_METHOD;
+        }
+    }
+
+    private static final class Node {
+        final String label;
+        final char[] firstChars;
+        final Node[] children;
+        final Node paramChild;
+
+        final HTTPHandler[] handlers;
+        final Map<String, HTTPHandler> otherHandlers;
+        final boolean terminal;
+        final OptionsHandler options;
+
+        final String pattern;
+        final String[] paramNames;
+
+        Node(String label, char[] firstChars, Node[] children, Node paramChild, HTTPHandler[] handlers,
+                Map<String, HTTPHandler> otherHandlers, OptionsHandler options, String pattern,
+                String[] paramNames) {
+            this.label = label;
+            this.firstChars = firstChars;
+            this.children = children;
+            this.paramChild = paramChild;
+            this.handlers = handlers;
+            this.otherHandlers = otherHandlers;
+            this.terminal = options != null;
+            this.options = options;
+            this.pattern = pattern;
+            this.paramNames = paramNames;
+        }
+
+        Node staticChild(char c) {
+            int index = Arrays.binarySearch(firstChars, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        boolean handles(int methodIndex, String method) {
+            if (!terminal) {
+                return false;
+            }
+            if (methodIndex == ANY_METHOD) {
+                return true;
+            }
+            return handler(methodIndex, method) != null;
+        }
+
+        HTTPHandler handler(int methodIndex, String method) {
+            return methodIndex >= 0 ? handlers[methodIndex] : otherHandlers.get(method);
+        }
+
+        /**
+         * Re-matches the route pattern against the path to pick out the
+         * parameter values. Only runs for routes that declare parameters.
+         */
+        String[] extractParameters(String path) {
+            String[] values = new String[paramNames.length];
+            int p = 0;
+            int param = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '{') {
+                    int end = segmentEnd(path, p);
+                    values[param++] = path.substring(p, end);
+                    p = end;
+                    i = pattern.indexOf('}', i);
+                } else {
+                    p++;
+                }
+            }
+            return values;
+        }
+    }
+
+    /**
+     * Mutable character-per-node trie used while compiling. freeze() merges
+     * chains of single-child nodes into labelled edges.
+     */
+    private static final class Builder {
+        final TreeMap<Character, Builder> children = new TreeMap<>();
+        Builder paramChild;
+        String paramName;
+        final Map<String, HTTPHandler> handlers = new LinkedHashMap<>();
+        String pattern;
+        String[] paramNames;
+
+        void insert(String pattern, String method, HTTPHandler handler) {
+            Builder node = this;
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '{') {
+                    int close = pattern.indexOf('}', i);
+                    if (close == -1) {
+                        throw new IllegalArgumentException("Unclosed parameter in route: " + pattern);
+                    }
+                    if (close + 1 < pattern.length() && pattern.charAt(close + 1) != '/') {
+                        throw new IllegalArgumentException("Parameter must end a path segment: " + pattern);
+                    }
+                    String name = pattern.substring(i + 1, close);
+                    if (node.paramChild == null) {
+                        node.paramChild = new Builder();
+                        node.paramName = name;
+                    } else if (!node.paramName.equals(name)) {
+                        throw new IllegalArgumentException("Conflicting parameter names {" + node.paramName
+                                + "} and {" + name + "} in route: " + pattern);
+                    }
+                    names.add(name);
+                    node = node.paramChild;
+                    i = close;
+                } else {
+                    node = node.children.computeIfAbsent(c, key -> new Builder());
+                }
+            }
+            node.handlers.put(method, handler);
+            node.pattern = pattern;
+            node.paramNames = names.isEmpty() ? null : names.toArray(new String[0]);
+        }
+
+        Node freeze(String label, Set<String> inheritedMethods) {
+            Builder node = this;
+            StringBuilder edge = new StringBuilder(label);
+            while (node.handlers.isEmpty() && node.paramChild == null && node.children.size() == 1
+                    && edge.length() > 0) {
+                Map.Entry<Character, Builder> only = node.children.firstEntry();
+                edge.append(only.getKey());
+                node = only.getValue();
+            }
+
+            Set<String> allowed = new LinkedHashSet<>(inheritedMethods);
+            allowed.addAll(node.handlers.keySet());
+
+            char[] firstChars = new char[node.children.size()];
+            Node[] children = new Node[node.children.size()];
+            int i = 0;
+            for (Map.Entry<Character, Builder> child : node.children.entrySet()) {
+                firstChars[i] = child.getKey();
+                children[i] = child.getValue().freeze(String.valueOf(child.getKey()), allowed);
+                i++;
+            }
+            Node param = node.paramChild != null ? node.paramChild.freeze("", allowed) : null;
+
+            HTTPHandler[] handlers = new HTTPHandler[KNOWN_METHODS.length];
+            Map<String, HTTPHandler> otherHandlers = new HashMap<>();
+            for (Map.Entry<String, HTTPHandler> entry : node.handlers.entrySet()) {
+                int index = methodIndex(entry.getKey());
+                if (index >= 0) {
+                    handlers[index] = entry.getValue();
+                } else {
+                    otherHandlers.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            OptionsHandler options = null;
+            if (!node.handlers.isEmpty()) {
+                Set<String> allow = new LinkedHashSet<>(allowed);
+                allow.add("OPTIONS");
+                options = new OptionsHandler(String.join(", ", allow));
+            }
+            return new Node(edge.toString(), firstChars, children, param, handlers, otherHandlers, options,
+                    node.pattern, node.paramNames);
+        }
+    }
+
+}
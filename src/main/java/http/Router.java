@@ -1,45 +1,52 @@
 package http;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import handlers.HTTPHandler;
 import handlers.NotFoundHandler;
-import handlers.OptionsHandler;
 
 /**
  * Maintains routing logic for HTTP requests.
  * Maps HTTP methods and paths to corresponding handlers.
  * Used to direct incoming requests to the appropriate HTTPHandler.
+ *
+ * Routes are path prefixes, optionally with "{name}" parameter segments.
+ * The first lookup after a change compiles them into an immutable RouteTrie;
+ * see that class for the matching rules. OPTIONS requests are answered with
+ * the Allow header of the matched route, and misses share one 404 handler.
  */
 public class Router {
 
-    Map<String, Map<String, HTTPHandler>> routes = new HashMap<>();
+    private static final HTTPHandler NOT_FOUND = new NotFoundHandler();
+
+    private final Map<String, Map<String, HTTPHandler>> routes = new LinkedHashMap<>();
+    private volatile RouteTrie compiled;
 
     public HTTPHandler route(HTTPRequest request) {
-        Map<String, HTTPHandler> methodRoutes = routes.get(request.getMethod());
-        if (methodRoutes == null) {
-            return new NotFoundHandler();
-        }
-        if (request.getMethod().equals("OPTIONS")) {
-            return new OptionsHandler(this);
+        RouteTrie trie = compiled;
+        if (trie == null) {
+            trie = compile();
         }
-        return methodRoutes.entrySet().stream()
-                .filter(entry -> request.getPath().startsWith(entry.getKey()))
-                .map(entry -> entry.getValue())
-                .findFirst()
-                .orElse(new NotFoundHandler());
+        HTTPHandler handler = trie.route(request);
+        return handler != null ? handler : NOT_FOUND;
+    }
 
+    public synchronized void addRoute(String method, String path, HTTPHandler handler) {
+        routes.computeIfAbsent(method, key -> new LinkedHashMap<>()).put(path, handler);
+        compiled = null;
     }
 
-    public void addRoute(String method, String path, HTTPHandler handler) {
-        Map<String, HTTPHandler> methodRoutes = routes.getOrDefault(method, new HashMap<>());
-        methodRoutes.put(path, handler);
-        routes.put(method, methodRoutes);
+    public synchronized Map<String, Map<String, HTTPHandler>> getRoutes() {
+        return Collections.unmodifiableMap(routes);
     }
 
-    public Map<String, Map<String, HTTPHandler>> getRoutes() {
-        return routes;
+    private synchronized RouteTrie compile() {
+        if (compiled == null) {
+            compiled = new RouteTrie(routes);
+        }
+        return compiled;
     }
 
 }
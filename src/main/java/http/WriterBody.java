@@ -0,0 +1,40 @@
+package http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Response body produced by a callback that writes to the connection.
+ * In blocking mode the callback writes straight to the socket stream. The
+ * non-blocking server cannot hand a callback the socket, so there the output
+ * is collected in memory before it is sent.
+ */
+public class WriterBody extends ResponseBody {
+
+    private final BodyWriter writer;
+    private final long length;
+
+    public WriterBody(BodyWriter writer, long length) {
+        this.writer = writer;
+        this.length = length;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        writer.writeTo(out);
+    }
+
+    @Override
+    public ReadableByteChannel openChannel() throws IOException {
+        return Channels.newChannel(new ByteArrayInputStream(toByteArray()));
+    }
+
+}
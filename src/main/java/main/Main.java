@@ -1,111 +1,380 @@
 package main;
 
+import exceptions.HTTPParseException;
+import exceptions.RequestTimeoutException;
+import http.BatchingOutputStream;
+import http.ConnectionLimits;
+import http.DeadlineInputStream;
+import http.HTTPHeaders;
 import http.HTTPRequest;
 import http.HTTPRequestParser;
 import http.HTTPResponse;
+import http.HTTPResponseWriter;
+import http.HTTPResponses;
+import http.ResponseEncoder;
 import http.Router;
+import handlers.AsyncHTTPHandler;
 import handlers.EchoHandler;
 import handlers.FileHandler;
+import handlers.HTTPHandler;
 import handlers.UserAgentHandler;
+import server.AdmissionControl;
+import server.Listeners;
+import server.NIOServer;
+import util.CompressionPolicy;
+import util.FileContentCache;
+import util.GzipVariantCache;
+import util.ParallelGzip;
+import util.VirtualThreads;
 
 import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
-import java.nio.charset.StandardCharsets;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 /**
  * Entry point for the HTTP server.
  * Listens for incoming connections and processes HTTP requests using the
  * configured Router.
+ *
+ * Usage: {@code Main [base_directory] [port] [--name=value ...]}; see
+ * ServerConfig for the available options.
  */
 public class Main {
 
     private static volatile boolean keepRunning = true;
-    private static ServerSocket serverSocket;
+    private static volatile List<ServerSocketChannel> serverChannels = List.of();
+    private static NIOServer nioServer;
 
     public static void main(String[] args) {
-        int port = args.length > 1 ? Integer.parseInt(args[1]) : 1212;
-        String fileBaseDir = args.length > 0 ? args[0] : ".";
+        ServerConfig config = ServerConfig.parse(args);
+
+        keepRunning = true;
+        FileContentCache fileCache = config.getFileCacheBytes() > 0
+                ? new FileContentCache(config.getFileCacheBytes())
+                : null;
+        GzipVariantCache gzipCache = createGzipCache(config);
+        ForkJoinPool gzipPool = createParallelGzipPool(config);
+        CompressionPolicy compression = createCompressionPolicy(config, gzipPool);
+        Router router = createRouter(config.getBaseDirectory(), fileCache, gzipCache, compression);
+        ConnectionLimits limits = config.getConnectionLimits();
+
+        try {
+            if (config.getMode().equals("nio")) {
+                runNIO(config, router, limits);
+            } else {
+                boolean recycle = config.isRecycleRequests();
+                ExecutorService workers = createConnectionExecutor(config);
+                AdmissionControl admission = createAdmissionControl(config, workers,
+                        client -> handleClient(client, router, recycle, limits));
+                runBlocking(config, workers, admission);
+            }
+        } finally {
+            // Both run methods return once the listeners are closed.
+            if (gzipPool != null) {
+                gzipPool.shutdown();
+            }
+        }
+
+        if (fileCache != null) {
+            System.out.println(fileCache);
+        }
+        if (gzipCache != null) {
+            System.out.println(gzipCache);
+        }
+    }
+
+    /**
+     * Each blocking connection occupies its thread for as long as it is kept
+     * alive, so a fixed pool serves at most that many clients at once while
+     * the rest wait to be accepted into it. A virtual thread per connection
+     * lifts the cap: a thread blocked on a socket read only costs its small
+     * heap-allocated stack.
+     */
+    private static ExecutorService createConnectionExecutor(ServerConfig config) {
+        if (config.getThreads().equals("virtual")) {
+            return VirtualThreads.newPerTaskExecutor();
+        }
+        return Executors.newFixedThreadPool(config.getWorkerThreads());
+    }
+
+    private static AdmissionControl createAdmissionControl(ServerConfig config, ExecutorService workers,
+            Consumer<SocketChannel> handler) {
+        if (config.getAdmission().equals("codel")) {
+            return AdmissionControl.codel(workers, config.getWorkerThreads(), config.getAcceptQueue(),
+                    config.getCodelTargetMillis(), config.getCodelIntervalMillis(), handler);
+        }
+        return AdmissionControl.fixed(workers, config.getWorkerThreads(), config.getAcceptQueue(), handler);
+    }
+
+    /**
+     * Returns the pool that parallel gzip compresses blocks on, or null if
+     * it is disabled. The caller shuts it down when the server stops.
+     */
+    private static ForkJoinPool createParallelGzipPool(ServerConfig config) {
+        if (config.getParallelGzipMinBytes() <= 0 || config.getCompressionLevel() == 0) {
+            return null;
+        }
+        return new ForkJoinPool(config.getParallelGzipThreads());
+    }
+
+    private static CompressionPolicy createCompressionPolicy(ServerConfig config, ForkJoinPool gzipPool) {
+        if (gzipPool == null) {
+            return new CompressionPolicy(config.getCompressionLevel(), config.getCompressionMinBytes());
+        }
+        ParallelGzip parallelGzip = new ParallelGzip(gzipPool, config.getCompressionLevel());
+        return new CompressionPolicy(config.getCompressionLevel(), config.getCompressionMinBytes(),
+                parallelGzip, config.getParallelGzipMinBytes());
+    }
+
+    private static GzipVariantCache createGzipCache(ServerConfig config) {
+        if (config.getGzipCacheBytes() <= 0 && config.getGzipCacheDirectory() == null) {
+            return null;
+        }
+        try {
+            return new GzipVariantCache(config.getGzipCacheBytes(),
+                    config.getGzipCacheDirectory() != null ? Paths.get(config.getGzipCacheDirectory()) : null,
+                    config.getCompressionLevel());
+        } catch (IOException e) {
+            System.err.println("Gzip cache disabled: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public static Router createRouter(String fileBaseDir) {
+        return createRouter(fileBaseDir, null);
+    }
+
+    public static Router createRouter(String fileBaseDir, FileContentCache fileCache) {
+        return createRouter(fileBaseDir, fileCache, null);
+    }
+
+    public static Router createRouter(String fileBaseDir, FileContentCache fileCache,
+            GzipVariantCache gzipCache) {
+        return createRouter(fileBaseDir, fileCache, gzipCache, CompressionPolicy.defaults());
+    }
+
+    public static Router createRouter(String fileBaseDir, FileContentCache fileCache,
+            GzipVariantCache gzipCache, CompressionPolicy compression) {
+        // One FileHandler serves every method so that writes invalidate the
+        // caches that GETs read from.
+        FileHandler fileHandler = new FileHandler(fileBaseDir, fileCache, gzipCache, compression);
+        EchoHandler echoHandler = new EchoHandler(compression);
 
         Router router = new Router();
         router.addRoute("GET", "/user-agent", new UserAgentHandler());
-        router.addRoute("GET", "/echo/", new EchoHandler());
-        router.addRoute("GET", "/files/", new FileHandler(fileBaseDir));
+        router.addRoute("GET", "/echo/", echoHandler);
+        router.addRoute("GET", "/files/", fileHandler);
 
-        router.addRoute("POST", "/files/", new FileHandler(fileBaseDir));
-        router.addRoute("PUT", "/files/", new FileHandler(fileBaseDir));
+        router.addRoute("POST", "/files/", fileHandler);
+        router.addRoute("PUT", "/files/", fileHandler);
 
-        router.addRoute("HEAD", "/echo/", new EchoHandler());
-        router.addRoute("HEAD", "/files/", new FileHandler(fileBaseDir));
+        router.addRoute("HEAD", "/echo/", echoHandler);
+        router.addRoute("HEAD", "/files/", fileHandler);
 
-        router.addRoute("DELETE", "/files/", new FileHandler(fileBaseDir));
+        router.addRoute("DELETE", "/files/", fileHandler);
 
-        router.addRoute("OPTIONS", "/files/", new FileHandler(fileBaseDir));
+        router.addRoute("OPTIONS", "/files/", fileHandler);
 
+        return router;
+    }
 
-        ExecutorService pool = Executors.newFixedThreadPool(20);
+    private static void runNIO(ServerConfig config, Router router, ConnectionLimits limits) {
+        int listeners = config.getListeners();
+        NIOServer server = new NIOServer(config.getPort(), router, config.getEventLoops(), limits, listeners,
+                config.getUnixSocket() != null ? Paths.get(config.getUnixSocket()) : null);
+        nioServer = server;
+        try {
+            server.start();
+            System.out.println("Server started on " + describeListeners(config) + " (nio, "
+                    + (listeners > 1 ? listeners + " SO_REUSEPORT listeners" : config.getEventLoops() + " event loops")
+                    + ")");
+            server.acceptLoop();
+        } catch (IOException e) {
+            System.err.println("Failed to start server: " + e.getMessage());
+        } finally {
+            server.stop();
+            System.out.println("Server shutting down.");
+        }
+    }
 
-        try (ServerSocket server = new ServerSocket(port)) {
-            serverSocket = server;
-            server.setReuseAddress(true);
-            System.out.println("Server started on port " + port);
+    private static void runBlocking(ServerConfig config, ExecutorService workers, AdmissionControl admission) {
+        // Connections are served as SocketChannels, which lets file bodies
+        // be sent with FileChannel.transferTo and works the same for Unix
+        // domain sockets, which have no Socket.
+        List<ServerSocketChannel> channels = new ArrayList<>();
+        List<Thread> acceptors = new ArrayList<>();
+        try {
+            if (config.getListeners() > 0) {
+                channels.addAll(Listeners.open(config.getPort(), config.getListeners()));
+            }
+            if (config.getUnixSocket() != null) {
+                channels.add(Listeners.openUnix(Paths.get(config.getUnixSocket())));
+            }
+            serverChannels = channels;
+            System.out.println("Server started on " + describeListeners(config));
 
-            while (keepRunning) {
-                try {
-                    Socket client = server.accept();
-                    pool.submit(() -> handleClient(client, router));
-                } catch (SocketException e) {
-                    if (!keepRunning) {
-                        break;
-                    } else {
-                        throw e;
+            // Every listener but the first gets its own acceptor thread.
+            for (int i = 1; i < channels.size(); i++) {
+                ServerSocketChannel server = channels.get(i);
+                Thread acceptor = new Thread(() -> {
+                    try {
+                        acceptLoop(server, admission);
+                    } catch (IOException e) {
+                        System.err.println("Acceptor stopped: " + e.getMessage());
                     }
-                }
+                }, "acceptor-" + i);
+                acceptor.start();
+                acceptors.add(acceptor);
             }
+            acceptLoop(channels.get(0), admission);
 
         } catch (IOException e) {
             System.err.println("Failed to start server: " + e.getMessage());
         } finally {
-            pool.shutdown();
+            Listeners.close(channels);
+            for (Thread acceptor : acceptors) {
+                try {
+                    acceptor.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            admission.shutdown();
+            workers.shutdown();
+            System.out.println(admission);
             System.out.println("Server shutting down.");
         }
     }
 
+    private static String describeListeners(ServerConfig config) {
+        String tcp = "port " + config.getPort()
+                + (config.getListeners() > 1 ? " (" + config.getListeners() + " SO_REUSEPORT listeners)" : "");
+        if (config.getUnixSocket() == null) {
+            return tcp;
+        }
+        String unix = "unix socket " + config.getUnixSocket();
+        return config.getListeners() > 0 ? tcp + " and " + unix : unix;
+    }
+
+    private static void acceptLoop(ServerSocketChannel server, AdmissionControl admission) throws IOException {
+        while (keepRunning) {
+            try {
+                SocketChannel client = server.accept();
+                admission.submit(client);
+            } catch (ClosedChannelException e) {
+                if (!keepRunning) {
+                    break;
+                } else {
+                    throw e;
+                }
+            }
+        }
+    }
+
     public static void stopServer() {
         keepRunning = false;
-        try {
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
+        Listeners.close(serverChannels);
+        if (nioServer != null) {
+            nioServer.stop();
+        }
+    }
+
+    /**
+     * Suspends the connection's thread until an asynchronous handler
+     * answers, cancelling its stage once the handler timeout passes. The
+     * next pipelined request is only read after that, so responses keep
+     * their order. On a virtual thread the wait holds no platform thread.
+     */
+    private static HTTPResponse awaitResponse(AsyncHTTPHandler handler, HTTPRequest request,
+            ConnectionLimits limits) {
+        CompletableFuture<HTTPResponse> future = handler.handleAsync(request).toCompletableFuture();
+        if (limits.getHandlerTimeoutMillis() > 0) {
+            try {
+                future.get(limits.getHandlerTimeoutMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+            } catch (ExecutionException ignored) {
+                // Answered with 500 below.
             }
-        } catch (IOException e) {
-            System.err.println("Error closing server socket: " + e.getMessage());
         }
+        return AsyncHTTPHandler.responseOf(future, request);
     }
 
-    private static void handleClient(Socket client, Router router) {
-        try (InputStream in = client.getInputStream();
-                OutputStream out = client.getOutputStream()) {
+    private static void handleClient(SocketChannel client, Router router, boolean recycle,
+            ConnectionLimits limits) {
+        try (InputStream in = DeadlineInputStream.of(client);
+                BatchingOutputStream out = new BatchingOutputStream(client)) {
 
             HTTPRequestParser parser = new HTTPRequestParser(in);
+            parser.setRecycling(recycle);
+            parser.setTimeouts(limits);
+            ResponseEncoder encoder = new ResponseEncoder();
 
             boolean keepAlive = true;
+            int served = 0;
+            String lastVersion = "HTTP/1.0";
 
             while (keepAlive) {
-                HTTPRequest request = parser.nextRequest();
+                HTTPRequest request;
+                try {
+                    request = parser.nextRequest();
+                } catch (RequestTimeoutException e) {
+                    // Answered in the version of the request that stalled,
+                    // if its request line arrived, else of the last one.
+                    String version = e.getVersion() != null ? e.getVersion() : lastVersion;
+                    HTTPResponseWriter.write(out, client, HTTPResponses.requestTimeout(version), "GET", encoder);
+                    break;
+                } catch (HTTPParseException e) {
+                    // Malformed requests are answered; a connection that
+                    // failed or timed out mid-body is not.
+                    System.err.println("Error handling client: " + e.getMessage());
+                    if (!(e.getCause() instanceof IOException)) {
+                        String version = e.getVersion() != null ? e.getVersion() : lastVersion;
+                        HTTPResponseWriter.write(out, client, HTTPResponses.badRequest(version), "GET", encoder);
+                    }
+                    break;
+                }
                 if (request == null) {
                     break;
                 }
+                served++;
+                lastVersion = request.getVersion();
 
-                HTTPResponse response = router.route(request).handle(request);
+                HTTPHandler handler = router.route(request);
+                HTTPResponse response = handler instanceof AsyncHTTPHandler
+                        ? awaitResponse((AsyncHTTPHandler) handler, request, limits)
+                        : handler.handle(request);
 
-                writeResponse(out, response, request.getMethod());
+                boolean closeRequested = request.getHeaders().valueEqualsIgnoreCase(HTTPHeaders.CONNECTION, "close")
+                        || limits.isLastRequest(served);
+                if (closeRequested) {
+                    response.getHeaders().set(HTTPHeaders.CONNECTION, "close");
+                }
+                encoder.setKeepAlive(limits.getKeepAliveTimeoutSeconds(),
+                        limits.getMaxRequests() > 0 ? limits.getMaxRequests() - served : -1);
 
-                String connectionHeader = request.getHeader("Connection");
-                if (connectionHeader != null && connectionHeader.equalsIgnoreCase("close")) {
-                    keepAlive = false;
+                // While pipelined requests are already buffered, responses
+                // are collected and sent together after the last of them.
+                boolean batch = !closeRequested && parser.hasBufferedRequest();
+                keepAlive = HTTPResponseWriter.write(out, client, response, request.getMethod(),
+                        encoder, batch) && !closeRequested;
+                if (!keepAlive) {
+                    out.flush();
                 }
             }
 
@@ -119,25 +388,4 @@ public class Main {
         }
     }
 
-    private static void writeResponse(OutputStream out, HTTPResponse response, String method) throws IOException {
-        out.write((response.getVersion() + " " + response.getStatusCode() + " " + response.getReasonPhrase() + "\r\n")
-                .getBytes(StandardCharsets.UTF_8));
-
-        if (response.getHeader("Connection") == null) {
-            out.write("Connection: keep-alive\r\n".getBytes(StandardCharsets.UTF_8));
-        }
-
-        for (var entry : response.getHeaders().entrySet()) {
-            out.write((entry.getKey() + ": " + entry.getValue() + "\r\n").getBytes(StandardCharsets.UTF_8));
-        }
-
-        out.write("\r\n".getBytes(StandardCharsets.UTF_8));
-
-        if (response.getBody() != null && response.getBody().length > 0 && !method.equals("HEAD")) {
-            out.write(response.getBody());
-        }
-
-        out.flush();
-    }
-
 }
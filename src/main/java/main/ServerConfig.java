@@ -0,0 +1,290 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import http.ConnectionLimits;
+import server.AdmissionControl;
+import util.CompressionPolicy;
+import util.CompressionUtils;
+import util.VirtualThreads;
+
+/**
+ * Command-line configuration for the server.
+ * Positional arguments are the base directory and port, as before; every
+ * other setting is an optional {@code --name=value} flag.
+ */
+public class ServerConfig {
+
+    String baseDirectory = ".";
+    int port = 1212;
+    String mode = "blocking";
+    String threads = "platform";
+    int workerThreads = -1;
+    int acceptQueue = AdmissionControl.DEFAULT_QUEUE_CAPACITY;
+    String admission = "fixed";
+    long codelTargetMillis = AdmissionControl.DEFAULT_TARGET_MILLIS;
+    long codelIntervalMillis = AdmissionControl.DEFAULT_INTERVAL_MILLIS;
+    int eventLoops = Runtime.getRuntime().availableProcessors();
+    int listeners = 1;
+    String unixSocket = null;
+    long fileCacheBytes = 0;
+    long gzipCacheBytes = 0;
+    String gzipCacheDirectory = null;
+    boolean recycleRequests = false;
+    long idleTimeoutMillis = ConnectionLimits.DEFAULT_IDLE_TIMEOUT_MILLIS;
+    long headerTimeoutMillis = ConnectionLimits.DEFAULT_HEADER_TIMEOUT_MILLIS;
+    long bodyTimeoutMillis = ConnectionLimits.DEFAULT_BODY_TIMEOUT_MILLIS;
+    long handlerTimeoutMillis = ConnectionLimits.DEFAULT_HANDLER_TIMEOUT_MILLIS;
+    int maxRequestsPerConnection = ConnectionLimits.DEFAULT_MAX_REQUESTS;
+    int compressionLevel = CompressionUtils.DEFAULT_LEVEL;
+    long compressionMinBytes = CompressionPolicy.DEFAULT_MIN_SIZE;
+    long parallelGzipMinBytes = 0;
+    int parallelGzipThreads = Runtime.getRuntime().availableProcessors();
+
+    public static ServerConfig parse(String[] args) {
+        ServerConfig config = new ServerConfig();
+        List<String> positional = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                positional.add(arg);
+                continue;
+            }
+            int equals = arg.indexOf('=');
+            if (equals == -1) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            }
+            String name = arg.substring(2, equals);
+            String value = arg.substring(equals + 1);
+            switch (name) {
+                case "mode":
+                    if (!value.equals("blocking") && !value.equals("nio")) {
+                        throw new IllegalArgumentException("Expected --mode=blocking|nio but got: " + arg);
+                    }
+                    config.mode = value;
+                    break;
+                case "threads":
+                    if (!value.equals("platform") && !value.equals("virtual")) {
+                        throw new IllegalArgumentException("Expected --threads=platform|virtual but got: " + arg);
+                    }
+                    if (value.equals("virtual") && !VirtualThreads.isSupported()) {
+                        throw new IllegalArgumentException("--threads=virtual needs Java 21 or later, running on "
+                                + System.getProperty("java.version"));
+                    }
+                    config.threads = value;
+                    break;
+                case "worker-threads":
+                    config.workerThreads = Integer.parseInt(value);
+                    break;
+                case "accept-queue":
+                    config.acceptQueue = Integer.parseInt(value);
+                    break;
+                case "admission":
+                    if (!value.equals("fixed") && !value.equals("codel")) {
+                        throw new IllegalArgumentException("Expected --admission=fixed|codel but got: " + arg);
+                    }
+                    config.admission = value;
+                    break;
+                case "codel-target-ms":
+                    config.codelTargetMillis = Long.parseLong(value);
+                    break;
+                case "codel-interval-ms":
+                    config.codelIntervalMillis = Long.parseLong(value);
+                    break;
+                case "listeners":
+                    config.listeners = Integer.parseInt(value);
+                    break;
+                case "unix-socket":
+                    config.unixSocket = value;
+                    break;
+                case "event-loops":
+                    config.eventLoops = Integer.parseInt(value);
+                    break;
+                case "file-cache-bytes":
+                    config.fileCacheBytes = Long.parseLong(value);
+                    break;
+                case "gzip-cache-bytes":
+                    config.gzipCacheBytes = Long.parseLong(value);
+                    break;
+                case "gzip-cache-dir":
+                    config.gzipCacheDirectory = value;
+                    break;
+                case "compression-level":
+                    config.compressionLevel = Integer.parseInt(value);
+                    break;
+                case "compression-min-bytes":
+                    config.compressionMinBytes = Long.parseLong(value);
+                    break;
+                case "parallel-gzip-min-bytes":
+                    config.parallelGzipMinBytes = Long.parseLong(value);
+                    break;
+                case "parallel-gzip-threads":
+                    config.parallelGzipThreads = Integer.parseInt(value);
+                    break;
+                case "idle-timeout-ms":
+                    config.idleTimeoutMillis = Long.parseLong(value);
+                    break;
+                case "header-timeout-ms":
+                    config.headerTimeoutMillis = Long.parseLong(value);
+                    break;
+                case "body-timeout-ms":
+                    config.bodyTimeoutMillis = Long.parseLong(value);
+                    break;
+                case "handler-timeout-ms":
+                    config.handlerTimeoutMillis = Long.parseLong(value);
+                    break;
+                case "max-requests-per-connection":
+                    config.maxRequestsPerConnection = Integer.parseInt(value);
+                    break;
+                case "recycle-requests":
+                    config.recycleRequests = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        if (positional.size() > 0) {
+            config.baseDirectory = positional.get(0);
+        }
+        if (positional.size() > 1) {
+            config.port = Integer.parseInt(positional.get(1));
+        }
+        if (config.listeners < 0) {
+            throw new IllegalArgumentException("--listeners must not be negative");
+        }
+        if (config.listeners == 0 && config.unixSocket == null) {
+            throw new IllegalArgumentException("--listeners=0 needs a --unix-socket to listen on instead");
+        }
+        return config;
+    }
+
+    public String getBaseDirectory() {
+        return baseDirectory;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * How blocking-mode connections are run: "platform" on a fixed pool of
+     * getWorkerThreads() threads, which caps the number of connections
+     * served at once, or "virtual" on a new virtual thread each (Java 21+).
+     */
+    public String getThreads() {
+        return threads;
+    }
+
+    /**
+     * The number of blocking-mode connections handled at once: the size of
+     * the platform pool (default 20), or a cap on virtual threads (default
+     * 0, none). Further connections wait in the accept queue.
+     */
+    public int getWorkerThreads() {
+        if (workerThreads >= 0) {
+            return workerThreads;
+        }
+        return threads.equals("virtual") ? 0 : 20;
+    }
+
+    /**
+     * How many accepted connections may wait for a worker before new ones
+     * are rejected with 503.
+     */
+    public int getAcceptQueue() {
+        return acceptQueue;
+    }
+
+    /**
+     * "fixed" to shed load only when the accept queue is full, or "codel" to
+     * also shed queued connections by how long they waited.
+     */
+    public String getAdmission() {
+        return admission;
+    }
+
+    public long getCodelTargetMillis() {
+        return codelTargetMillis;
+    }
+
+    public long getCodelIntervalMillis() {
+        return codelIntervalMillis;
+    }
+
+    /**
+     * The number of listening sockets opened on the port with SO_REUSEPORT,
+     * each accepted from by its own thread; in nio mode each also gets its
+     * own event loop, replacing the event-loops setting. 0 opens no TCP
+     * listener, serving only the Unix domain socket.
+     */
+    public int getListeners() {
+        return listeners;
+    }
+
+    /**
+     * The path of a Unix domain socket to listen on as well as the TCP
+     * port, or instead of it when getListeners() is 0; null for none.
+     */
+    public String getUnixSocket() {
+        return unixSocket;
+    }
+
+    public int getEventLoops() {
+        return eventLoops;
+    }
+
+    public long getFileCacheBytes() {
+        return fileCacheBytes;
+    }
+
+    public long getGzipCacheBytes() {
+        return gzipCacheBytes;
+    }
+
+    public String getGzipCacheDirectory() {
+        return gzipCacheDirectory;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public long getCompressionMinBytes() {
+        return compressionMinBytes;
+    }
+
+    /**
+     * Files at least this large are gzipped in parallel blocks; 0 disables
+     * parallel compression.
+     */
+    public long getParallelGzipMinBytes() {
+        return parallelGzipMinBytes;
+    }
+
+    public int getParallelGzipThreads() {
+        return parallelGzipThreads;
+    }
+
+    /**
+     * Timeouts and the request limit applied to every client connection, in
+     * both modes.
+     */
+    public ConnectionLimits getConnectionLimits() {
+        return new ConnectionLimits(idleTimeoutMillis, headerTimeoutMillis, bodyTimeoutMillis,
+                handlerTimeoutMillis, maxRequestsPerConnection);
+    }
+
+    /**
+     * Whether blocking-mode connections reuse one request and response
+     * object across keep-alive requests. NIO connections queue responses
+     * past the next request and always use fresh objects.
+     */
+    public boolean isRecycleRequests() {
+        return recycleRequests;
+    }
+
+}
@@ -0,0 +1,291 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import http.HTTPResponseWriter;
+import http.HTTPResponses;
+
+/**
+ * Admission control for blocking-mode connections. At most maxActive
+ * connections are handled at once; further accepted connections wait in a
+ * bounded queue, and once that is full they are answered straight away
+ * with 503 Service Unavailable and a Retry-After header, then closed, so
+ * an overloaded server sheds load instead of piling up sockets.
+ *
+ * A worker that finishes a connection takes the next one from the queue
+ * itself, so the executor never holds more than maxActive tasks.
+ *
+ * In CoDel mode queued connections are also shed by how long they waited,
+ * in the style of controlled-delay queue management: while the queue has
+ * been empty at some point in the last interval, a connection may wait up
+ * to the interval; once it has stayed non-empty for a whole interval the
+ * server is overloaded, and anything that waited longer than the much
+ * shorter target is rejected with 503 when it reaches the head of the
+ * queue. Standing queues drain quickly, and the clients that are served
+ * are served with low delay.
+ */
+public final class AdmissionControl {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+    public static final long DEFAULT_TARGET_MILLIS = 5;
+    public static final long DEFAULT_INTERVAL_MILLIS = 100;
+    public static final int RETRY_AFTER_SECONDS = 1;
+
+    private static final byte[] REJECTION = HTTPResponseWriter.encodeHead(
+            HTTPResponses.serviceUnavailable("HTTP/1.1", RETRY_AFTER_SECONDS), false);
+
+    private static final class Queued {
+        final SocketChannel client;
+        final long enqueued;
+
+        Queued(SocketChannel client, long enqueued) {
+            this.client = client;
+            this.enqueued = enqueued;
+        }
+    }
+
+    private final Executor workers;
+    private final int maxActive;
+    private final int queueCapacity;
+    private final boolean codel;
+    private final long targetNanos;
+    private final long intervalNanos;
+    private final Consumer<SocketChannel> handler;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Queued> queue = new ArrayDeque<>();
+    private int active;
+    private long lastEmpty = System.nanoTime();
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+
+    private AdmissionControl(Executor workers, int maxActive, int queueCapacity, boolean codel, long targetMillis,
+            long intervalMillis, Consumer<SocketChannel> handler) {
+        if (maxActive < 0 || queueCapacity < 0) {
+            throw new IllegalArgumentException("maxActive and queueCapacity must not be negative");
+        }
+        this.workers = workers;
+        this.maxActive = maxActive;
+        this.queueCapacity = queueCapacity;
+        this.codel = codel;
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.handler = handler;
+    }
+
+    /**
+     * Admits connections by a fixed concurrency limit and queue size.
+     *
+     * @param maxActive connections handled at once, or 0 for no limit
+     */
+    public static AdmissionControl fixed(Executor workers, int maxActive, int queueCapacity,
+            Consumer<SocketChannel> handler) {
+        return new AdmissionControl(workers, maxActive, queueCapacity, false, 0, 0, handler);
+    }
+
+    /**
+     * Admits connections by a concurrency limit and queue size, and sheds
+     * queued ones by queueing delay.
+     */
+    public static AdmissionControl codel(Executor workers, int maxActive, int queueCapacity, long targetMillis,
+            long intervalMillis, Consumer<SocketChannel> handler) {
+        return new AdmissionControl(workers, maxActive, queueCapacity, true, targetMillis, intervalMillis,
+                handler);
+    }
+
+    /**
+     * Hands an accepted connection to a worker, queues it, or rejects it
+     * with 503 on the calling thread if the queue is full or the executor
+     * refuses the task.
+     */
+    public void submit(SocketChannel client) {
+        boolean admit;
+        lock.lock();
+        try {
+            if (maxActive == 0 || active < maxActive) {
+                active++;
+                admit = true;
+            } else if (queue.size() < queueCapacity) {
+                long now = System.nanoTime();
+                if (queue.isEmpty()) {
+                    lastEmpty = now;
+                }
+                queue.add(new Queued(client, now));
+                return;
+            } else {
+                admit = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!admit) {
+            rejected.increment();
+            reject(client);
+            return;
+        }
+        try {
+            workers.execute(() -> work(client));
+        } catch (RejectedExecutionException e) {
+            // The executor is shut down or saturated: give the slot back.
+            lock.lock();
+            try {
+                active--;
+            } finally {
+                lock.unlock();
+            }
+            rejected.increment();
+            reject(client);
+            return;
+        }
+        admitted.increment();
+    }
+
+    /**
+     * Rejects every queued connection, for a server that is shutting down.
+     */
+    public void shutdown() {
+        while (true) {
+            Queued next;
+            lock.lock();
+            try {
+                next = queue.poll();
+            } finally {
+                lock.unlock();
+            }
+            if (next == null) {
+                return;
+            }
+            reject(next.client);
+        }
+    }
+
+    private void work(SocketChannel client) {
+        SocketChannel next = client;
+        while (next != null) {
+            handler.accept(next);
+            next = nextQueued();
+        }
+    }
+
+    /**
+     * Returns the next queued connection to handle, rejecting those that
+     * waited too long, or null, giving up the worker slot, if none is left.
+     */
+    private SocketChannel nextQueued() {
+        while (true) {
+            Queued next;
+            boolean late;
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                next = queue.poll();
+                if (next == null) {
+                    active--;
+                    lastEmpty = now;
+                    return null;
+                }
+                late = codel && now - next.enqueued > (now - lastEmpty > intervalNanos ? targetNanos : intervalNanos);
+                if (queue.isEmpty()) {
+                    lastEmpty = now;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (!late) {
+                admitted.increment();
+                return next.client;
+            }
+            shed.increment();
+            reject(next.client);
+        }
+    }
+
+    /**
+     * Answers with 503 and closes without reading the request. Whatever the
+     * client already sent is drained first, so the close does not turn into
+     * a reset that could discard the response before the client reads it.
+     *
+     * This runs on the acceptor or a worker, so nothing here blocks: the
+     * response is written with a single non-blocking attempt, which a fresh
+     * socket's send buffer always takes whole, and a client that has not
+     * even left room for that is closed without it.
+     */
+    static void reject(SocketChannel client) {
+        try {
+            client.configureBlocking(false);
+            client.write(ByteBuffer.wrap(REJECTION));
+            client.shutdownOutput();
+            ByteBuffer drain = ByteBuffer.allocate(4096);
+            while (client.read(drain) > 0) {
+                drain.clear();
+            }
+        } catch (IOException ignored) {
+        } finally {
+            try {
+                client.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Returns the number of connections waiting for a worker.
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of connections being handled.
+     */
+    public int getActive() {
+        lock.lock();
+        try {
+            return active;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getAdmitted() {
+        return admitted.sum();
+    }
+
+    /**
+     * Returns the number of connections rejected because the queue was full.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the number of queued connections rejected for waiting too long.
+     */
+    public long getShed() {
+        return shed.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionControl[" + (codel ? "codel" : "fixed") + ", active=" + getActive() + "/" + maxActive
+                + ", queued=" + getQueueDepth() + "/" + queueCapacity + ", admitted=" + getAdmitted()
+                + ", rejected=" + getRejected() + ", shed=" + getShed() + "]";
+    }
+
+}
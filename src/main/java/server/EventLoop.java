@@ -0,0 +1,198 @@
+package server;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import http.ConnectionLimits;
+import http.Router;
+
+/**
+ * Single-threaded selector loop that multiplexes many non-blocking
+ * connections. Accepted channels are handed over through register() and
+ * serviced until the client disconnects or the loop is shut down. A loop
+ * may also own a listening socket, and then accepts its own connections.
+ *
+ * When the connection limits set timeouts, the selector wakes up at least
+ * once per SWEEP_INTERVAL_MILLIS to close idle connections and answer
+ * stalled requests with 408, so a timeout fires up to that much late.
+ *
+ * Other threads hand work to the loop through execute(); asynchronous
+ * handlers complete their requests this way, so a connection's state is
+ * only ever touched by its loop.
+ */
+class EventLoop implements Runnable {
+
+    static final long SWEEP_INTERVAL_MILLIS = 1000;
+
+    private final Selector selector;
+    private final Router router;
+    private final ConnectionLimits limits;
+    private final long selectTimeout;
+    private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    EventLoop(Router router, ConnectionLimits limits) throws IOException {
+        this.selector = Selector.open();
+        this.router = router;
+        this.limits = limits;
+        boolean timed = limits.getIdleTimeoutMillis() > 0 || limits.getHeaderTimeoutMillis() > 0
+                || limits.getBodyTimeoutMillis() > 0 || limits.getHandlerTimeoutMillis() > 0;
+        this.selectTimeout = timed ? SWEEP_INTERVAL_MILLIS : 0;
+    }
+
+    /**
+     * Makes this loop accept connections from the listener itself. Must be
+     * called before the loop is started.
+     */
+    void listen(ServerSocketChannel listener) throws IOException {
+        listener.configureBlocking(false);
+        listener.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    void register(SocketChannel channel) {
+        pendingChannels.add(channel);
+        selector.wakeup();
+    }
+
+    /**
+     * Runs the task on the loop thread, after the current round of events.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            long nextSweep = System.nanoTime();
+            while (running) {
+                selector.select(selectTimeout);
+                registerPendingChannels();
+                runTasks();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isAcceptable()) {
+                        acceptAll((ServerSocketChannel) key.channel());
+                        continue;
+                    }
+                    NIOConnection connection = (NIOConnection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("Error handling client: " + e.getMessage());
+                        connection.close();
+                    }
+                }
+
+                if (selectTimeout > 0 && System.nanoTime() - nextSweep >= 0) {
+                    nextSweep = System.nanoTime() + SWEEP_INTERVAL_MILLIS * 1_000_000;
+                    sweepDeadlines(System.nanoTime());
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            System.err.println("Event loop stopped: " + e.getMessage());
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void acceptAll(ServerSocketChannel listener) {
+        try {
+            SocketChannel channel;
+            while ((channel = listener.accept()) != null) {
+                registerChannel(channel);
+            }
+        } catch (IOException e) {
+            if (listener.isOpen()) {
+                System.err.println("Failed to accept client: " + e.getMessage());
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Event loop task failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void registerPendingChannels() {
+        SocketChannel channel;
+        while ((channel = pendingChannels.poll()) != null) {
+            registerChannel(channel);
+        }
+    }
+
+    private void registerChannel(SocketChannel channel) {
+        try {
+            channel.configureBlocking(false);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new NIOConnection(this, channel, key, router, limits));
+        } catch (IOException e) {
+            System.err.println("Failed to register client: " + e.getMessage());
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void sweepDeadlines(long now) {
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid() && key.attachment() instanceof NIOConnection) {
+                NIOConnection connection = (NIOConnection) key.attachment();
+                try {
+                    connection.checkDeadline(now);
+                } catch (IOException e) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NIOConnection) {
+                ((NIOConnection) key.attachment()).close();
+            }
+        }
+        SocketChannel channel;
+        while ((channel = pendingChannels.poll()) != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+}
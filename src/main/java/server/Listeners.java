@@ -0,0 +1,100 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Opens the listening sockets of a server. With more than one, every socket
+ * is bound to the same port with SO_REUSEPORT, and the kernel spreads
+ * incoming connections across them, so each can be accepted from by its
+ * own thread instead of all connections funnelling through one accept
+ * loop.
+ *
+ * A server can also listen on a Unix domain socket, for clients on the
+ * same host such as a reverse proxy or sidecar: connections skip the TCP
+ * stack, and are served by the same parser, router and handlers.
+ */
+public final class Listeners {
+
+    private Listeners() {
+    }
+
+    /**
+     * Opens count blocking listeners on the port. Port 0 binds the first to
+     * an ephemeral port and the rest to the same one.
+     *
+     * @throws IOException if a socket cannot be bound, or count is above 1
+     *                     and the platform does not support SO_REUSEPORT
+     */
+    public static List<ServerSocketChannel> open(int port, int count) throws IOException {
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be at least 1");
+        }
+        List<ServerSocketChannel> channels = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                ServerSocketChannel channel = ServerSocketChannel.open();
+                channels.add(channel);
+                channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                if (count > 1) {
+                    if (!channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+                        throw new IOException("SO_REUSEPORT is not supported on this platform");
+                    }
+                    channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                }
+                channel.bind(new InetSocketAddress(port));
+                port = channel.socket().getLocalPort();
+            }
+        } catch (IOException e) {
+            close(channels);
+            throw e;
+        }
+        return channels;
+    }
+
+    /**
+     * Opens a blocking listener on a Unix domain socket at the path. A file
+     * left there by a server that did not shut down cleanly is replaced.
+     */
+    public static ServerSocketChannel openUnix(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.bind(UnixDomainSocketAddress.of(path));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    /**
+     * Closes the listeners, and removes the socket files of those on Unix
+     * domain sockets.
+     */
+    public static void close(List<ServerSocketChannel> channels) {
+        for (ServerSocketChannel channel : channels) {
+            try {
+                Path socketFile = null;
+                if (channel.isOpen() && channel.getLocalAddress() instanceof UnixDomainSocketAddress) {
+                    socketFile = ((UnixDomainSocketAddress) channel.getLocalAddress()).getPath();
+                }
+                channel.close();
+                if (socketFile != null) {
+                    Files.deleteIfExists(socketFile);
+                }
+            } catch (IOException e) {
+                System.err.println("Error closing server channel: " + e.getMessage());
+            }
+        }
+    }
+
+}
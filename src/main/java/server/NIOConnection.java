@@ -0,0 +1,693 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import exceptions.ContentTooLargeException;
+import exceptions.HTTPParseException;
+import handlers.AsyncHTTPHandler;
+import handlers.HTTPHandler;
+import http.ConnectionLimits;
+import http.HTTPHeaders;
+import http.HTTPRequest;
+import http.HTTPRequestParser;
+import http.HTTPResponse;
+import http.HTTPResponses;
+import http.ResponseBody;
+import http.ResponseEncoder;
+import http.Router;
+
+/**
+ * State of a single non-blocking client connection owned by an EventLoop.
+ * Bytes are accumulated in a per-connection buffer until a complete request
+ * (headers plus a Content-Length or chunked body) is available; only then is the request
+ * parsed, routed and handled. Responses are queued and written as the socket
+ * becomes writable, with bodies streamed through a single transfer buffer that
+ * only exists while a write is in progress.
+ *
+ * Since a handler runs on the event loop, it cannot wait for a body still
+ * arriving, so unlike the blocking server this one does not stream request
+ * bodies: a request over MAX_REQUEST_SIZE is answered with 413 Content Too
+ * Large, and malformed framing with 400, before the connection is closed.
+ *
+ * Every complete request already in the read buffer is handled before the
+ * connection flushes, in order, and runs of small responses are coalesced
+ * into one gathering write. Parsing stops at the first request that closes
+ * the connection. Requests are parsed in place in the read buffer, so a
+ * synchronous handler reads its body straight from there; an asynchronous
+ * handler may read after the buffer has moved on, so a request with a body
+ * is copied out for it.
+ *
+ * The connection keeps one deadline for the stage it is waiting in: the
+ * idle timeout with nothing buffered, the header timeout from the first
+ * byte of a request to the end of its head, and the body timeout until the
+ * rest of the request is in. The event loop checks it periodically; while
+ * responses are being written no deadline applies.
+ *
+ * An asynchronous handler whose stage has not completed suspends its
+ * request: it waits in the in-flight queue, and the requests pipelined
+ * behind it are handled but wait there too, so that responses are written
+ * in request order. When a stage completes, the event loop is woken to
+ * queue the responses at the head that are ready. While requests are in
+ * flight only the handler timeout applies, and a stage that reaches it is
+ * cancelled and answered with 503.
+ *
+ * A response body produced on other threads, such as a parallel gzip, is
+ * waited for the same way: the connection stops selecting the socket until
+ * the body has bytes ready and the event loop is woken to write them.
+ */
+class NIOConnection {
+
+    static final int INITIAL_BUFFER_SIZE = 4096;
+    static final int MAX_HEADER_SIZE = 64 * 1024;
+    static final int MAX_REQUEST_SIZE = 16 * 1024 * 1024;
+    /** Stays well below the IOV_MAX of common kernels (1024). */
+    static final int MAX_GATHER_BUFFERS = 512;
+    /** Pipelined requests handled while an earlier response is pending. */
+    static final int MAX_IN_FLIGHT = 64;
+
+    /**
+     * A handled request whose response waits for its stage to complete or
+     * for an earlier response, with the request's number on the connection.
+     */
+    private static final class InFlight {
+        final HTTPRequest request;
+        final int number;
+        final CompletableFuture<HTTPResponse> future;
+        final boolean timed;
+        final long deadline;
+
+        InFlight(HTTPRequest request, int number, CompletableFuture<HTTPResponse> future, long timeoutMillis) {
+            this.request = request;
+            this.number = number;
+            this.future = future;
+            this.timed = timeoutMillis > 0 && !future.isDone();
+            this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        }
+    }
+
+    private final EventLoop loop;
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final Router router;
+    private final ConnectionLimits limits;
+
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private final ArrayDeque<OutboundResponse> writeQueue = new ArrayDeque<>();
+    private final ArrayDeque<InFlight> inFlight = new ArrayDeque<>();
+    private ByteBuffer transferBuffer;
+    private final ResponseEncoder encoder = new ResponseEncoder();
+
+    private int requestStart = 0;
+    private int scanPosition = 0;
+    private int headerEnd = -1;
+    private int contentLength = 0;
+    private boolean chunked = false;
+    private boolean inTrailers = false;
+    private int chunkScan = 0;
+    private boolean closeAfterWrite = false;
+    private int served = 0;
+    private String lastVersion = "HTTP/1.0";
+    private boolean closed = false;
+
+    private static final int IDLE = 0;
+    private static final int HEAD = 1;
+    private static final int BODY = 2;
+    private int stage = IDLE;
+    private boolean timed;
+    private long deadline;
+
+    NIOConnection(EventLoop loop, SocketChannel channel, SelectionKey key, Router router, ConnectionLimits limits) {
+        this.loop = loop;
+        this.channel = channel;
+        this.key = key;
+        this.router = router;
+        this.limits = limits;
+        enterStage(IDLE, System.nanoTime());
+    }
+
+    void onReadable() throws IOException {
+        if (closeAfterWrite) {
+            // Nothing more is handled on this connection, such as the rest
+            // of a body too large to accept; what arrives is dropped.
+            readBuffer.clear();
+        }
+        if (!readBuffer.hasRemaining()) {
+            growReadBuffer();
+        }
+        int read = channel.read(readBuffer);
+        if (read == -1) {
+            close();
+            return;
+        }
+        boolean handled = processRequests();
+        updateStage(handled);
+        flush();
+    }
+
+    /**
+     * Closes the connection if it has been idle past the idle timeout, or
+     * answers a request that stalled past its header or body timeout with
+     * 408 and closes after it. While requests are in flight, cancels the
+     * stages that are past the handler timeout instead.
+     */
+    void checkDeadline(long now) throws IOException {
+        if (!inFlight.isEmpty()) {
+            for (InFlight pending : inFlight) {
+                if (pending.timed && now - pending.deadline >= 0) {
+                    pending.future.cancel(true);
+                }
+            }
+            return;
+        }
+        if (!timed || !writeQueue.isEmpty() || closeAfterWrite || now - deadline < 0) {
+            return;
+        }
+        if (stage == IDLE) {
+            close();
+            return;
+        }
+        HTTPResponse timeout = HTTPResponses.requestTimeout(stalledRequestVersion());
+        writeQueue.add(new OutboundResponse(timeout, "GET", encoder));
+        closeAfterWrite = true;
+        flush();
+    }
+
+    /**
+     * Returns the version on the request line of the request still being
+     * read if that line has arrived, else the version of the last request
+     * on the connection, else HTTP/1.0.
+     */
+    private String stalledRequestVersion() {
+        byte[] data = readBuffer.array();
+        int limit = readBuffer.position();
+        int start = requestStart;
+        while (start < limit && (data[start] == '\r' || data[start] == '\n')) {
+            start++;
+        }
+        int end = start;
+        while (end < limit && data[end] != '\n') {
+            end++;
+        }
+        if (end < limit) {
+            String[] parts = new String(data, start, end - start, StandardCharsets.ISO_8859_1).trim().split(" ");
+            if (parts.length >= 3 && parts[2].startsWith("HTTP/")) {
+                return parts[2];
+            }
+        }
+        return lastVersion;
+    }
+
+    /**
+     * Moves to the stage the buffered bytes are in, restarting its deadline
+     * when the stage changes or a request has just been handled.
+     */
+    private void updateStage(boolean handled) {
+        int current;
+        if (readBuffer.position() == 0) {
+            current = IDLE;
+        } else {
+            current = headerEnd < 0 ? HEAD : BODY;
+        }
+        if (current != stage || handled) {
+            enterStage(current, System.nanoTime());
+        }
+    }
+
+    private void enterStage(int stage, long now) {
+        this.stage = stage;
+        long timeout = stage == IDLE ? limits.getIdleTimeoutMillis()
+                : stage == HEAD ? limits.getHeaderTimeoutMillis() : limits.getBodyTimeoutMillis();
+        timed = timeout > 0;
+        deadline = now + TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    void onWritable() throws IOException {
+        flush();
+    }
+
+    void close() {
+        closed = true;
+        discardInFlight();
+        for (OutboundResponse pending : writeQueue) {
+            pending.release();
+        }
+        writeQueue.clear();
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Handles every complete request in the read buffer and returns whether
+     * there was at least one. Requests are parsed in place in the read
+     * buffer, which is only compacted once all of them have been handled.
+     */
+    private boolean processRequests() throws IOException {
+        try {
+            return handleCompleteRequests();
+        } finally {
+            compactReadBuffer();
+        }
+    }
+
+    private boolean handleCompleteRequests() throws IOException {
+        boolean handled = false;
+        while (!closeAfterWrite && inFlight.size() < MAX_IN_FLIGHT) {
+            int requestLength;
+            try {
+                requestLength = completeRequestLength();
+            } catch (HTTPParseException e) {
+                rejectMalformed(e, stalledRequestVersion());
+                return true;
+            }
+            if (requestLength < 0) {
+                return handled;
+            }
+            handled = true;
+
+            byte[] data = readBuffer.array();
+            int start = requestStart;
+            boolean hasBody = chunked || contentLength > 0;
+            requestStart += requestLength;
+            scanPosition = requestStart;
+            headerEnd = -1;
+            contentLength = 0;
+            chunked = false;
+            inTrailers = false;
+            chunkScan = 0;
+
+            HTTPRequest request;
+            try {
+                request = new HTTPRequestParser(data, start, requestLength).nextRequest();
+            } catch (HTTPParseException e) {
+                rejectMalformed(e, e.getVersion() != null ? e.getVersion() : lastVersion);
+                return handled;
+            }
+            if (request == null) {
+                closeAfterWrite = true;
+                return handled;
+            }
+            served++;
+            lastVersion = request.getVersion();
+
+            HTTPHandler handler = router.route(request);
+            HTTPResponse response;
+            if (handler instanceof AsyncHTTPHandler) {
+                if (hasBody) {
+                    // The handler may read the body after the read buffer
+                    // has moved on, so it gets a copy of its own.
+                    try {
+                        request = new HTTPRequestParser(Arrays.copyOfRange(data, start, requestStart))
+                                .nextRequest();
+                    } catch (HTTPParseException e) {
+                        throw new IOException(e.getMessage(), e);
+                    }
+                }
+                CompletableFuture<HTTPResponse> future = ((AsyncHTTPHandler) handler).handleAsync(request)
+                        .toCompletableFuture();
+                if (!inFlight.isEmpty() || !future.isDone()) {
+                    suspend(request, future);
+                    continue;
+                }
+                response = AsyncHTTPHandler.responseOf(future, request);
+            } else {
+                response = handler.handle(request);
+                if (!inFlight.isEmpty()) {
+                    suspend(request, CompletableFuture.completedFuture(response));
+                    continue;
+                }
+            }
+            queueResponse(request, served, response);
+        }
+        return handled;
+    }
+
+    /**
+     * Answers a request that could not be parsed with 400, or with 413 if
+     * it is too large to buffer, after the responses to the requests before
+     * it, and closes the connection, as the blocking server does.
+     */
+    private void rejectMalformed(HTTPParseException e, String version) {
+        System.err.println("Error handling client: " + e.getMessage());
+        HTTPRequest failed = new HTTPRequest("GET", "/", version, new byte[0], new HTTPHeaders());
+        HTTPResponse response = e instanceof ContentTooLargeException
+                ? HTTPResponses.contentTooLarge(version)
+                : HTTPResponses.badRequest(version);
+        if (inFlight.isEmpty()) {
+            queueResponse(failed, served, response);
+        } else {
+            suspend(failed, CompletableFuture.completedFuture(response));
+        }
+        closeAfterWrite = true;
+    }
+
+    /**
+     * Moves the bytes after the last handled request to the start of the
+     * read buffer, along with the scan state of the request they begin.
+     */
+    private void compactReadBuffer() {
+        if (requestStart == 0) {
+            return;
+        }
+        readBuffer.flip().position(requestStart);
+        readBuffer.compact();
+        scanPosition = Math.max(0, scanPosition - requestStart);
+        if (headerEnd >= 0) {
+            headerEnd -= requestStart;
+            chunkScan -= requestStart;
+        }
+        requestStart = 0;
+    }
+
+    /**
+     * Encodes the response to the request with the given number on the
+     * connection into the write queue, and returns whether the connection
+     * stays open after it.
+     */
+    private boolean queueResponse(HTTPRequest request, int number, HTTPResponse response) {
+        if (isCloseRequested(request, number)) {
+            response.getHeaders().set(HTTPHeaders.CONNECTION, "close");
+        }
+        encoder.setKeepAlive(limits.getKeepAliveTimeoutSeconds(),
+                limits.getMaxRequests() > 0 ? limits.getMaxRequests() - number : -1);
+        OutboundResponse outbound = new OutboundResponse(response, request.getMethod(), encoder);
+        writeQueue.add(outbound);
+
+        if (!outbound.isKeepAlive()) {
+            closeAfterWrite = true;
+        }
+        return outbound.isKeepAlive();
+    }
+
+    private boolean isCloseRequested(HTTPRequest request, int number) {
+        return request.getHeaders().valueEqualsIgnoreCase(HTTPHeaders.CONNECTION, "close")
+                || limits.isLastRequest(number);
+    }
+
+    /**
+     * Holds the just-handled request in flight until its stage completes
+     * and every earlier response has been queued. Nothing pipelined after
+     * a request that closes the connection is handled.
+     */
+    private void suspend(HTTPRequest request, CompletableFuture<HTTPResponse> future) {
+        inFlight.add(new InFlight(request, served, future, limits.getHandlerTimeoutMillis()));
+        if (isCloseRequested(request, served)) {
+            closeAfterWrite = true;
+        }
+        if (!future.isDone()) {
+            future.whenComplete((response, failure) -> loop.execute(this::resume));
+        }
+    }
+
+    /**
+     * Runs on the event loop when a stage completes: queues the responses
+     * at the head of the in-flight queue that are ready, handles requests
+     * held back by the in-flight limit, and writes.
+     */
+    private void resume() {
+        if (closed || inFlight.isEmpty() || !inFlight.peek().future.isDone()) {
+            return;
+        }
+        try {
+            while (!inFlight.isEmpty() && inFlight.peek().future.isDone()) {
+                InFlight next = inFlight.poll();
+                if (!queueResponse(next.request, next.number,
+                        AsyncHTTPHandler.responseOf(next.future, next.request))) {
+                    discardInFlight();
+                }
+            }
+            if (inFlight.isEmpty()) {
+                processRequests();
+                updateStage(true);
+            }
+            flush();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error handling client: " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Runs on the event loop when the body of the response being written
+     * has bytes ready again.
+     */
+    private void resumeWrite() {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error handling client: " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Cancels the stages still in flight and releases the responses that
+     * were already ready.
+     */
+    private void discardInFlight() {
+        for (InFlight pending : inFlight) {
+            if (!pending.future.cancel(true) && !pending.future.isCompletedExceptionally()) {
+                HTTPResponse response = pending.future.getNow(null);
+                if (response != null) {
+                    try {
+                        response.getResponseBody().close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }
+        inFlight.clear();
+    }
+
+    /**
+     * Returns the length of the first unhandled complete request in the read
+     * buffer, which starts at requestStart, or -1 if more bytes are needed.
+     * The header scan resumes where the previous call stopped so each byte
+     * is only examined once.
+     */
+    private int completeRequestLength() throws IOException, HTTPParseException {
+        byte[] data = readBuffer.array();
+        int limit = readBuffer.position();
+
+        if (headerEnd < 0) {
+            for (int i = Math.max(scanPosition, requestStart + 1); i < limit; i++) {
+                if (data[i] == '\n' && (data[i - 1] == '\n'
+                        || (i >= requestStart + 2 && data[i - 1] == '\r' && data[i - 2] == '\n'))) {
+                    headerEnd = i + 1;
+                    break;
+                }
+            }
+            if (headerEnd < 0) {
+                scanPosition = limit;
+                if (limit - requestStart > MAX_HEADER_SIZE) {
+                    throw new HTTPParseException("Request header block exceeds " + MAX_HEADER_SIZE + " bytes");
+                }
+                return -1;
+            }
+            parseFraming(data, requestStart, headerEnd);
+            if (contentLength < 0) {
+                throw new HTTPParseException("Invalid Content-Length: " + contentLength);
+            }
+            if (headerEnd - requestStart + contentLength > MAX_REQUEST_SIZE) {
+                throw new ContentTooLargeException("Request exceeds " + MAX_REQUEST_SIZE + " bytes");
+            }
+            chunkScan = headerEnd;
+        }
+
+        if (chunked) {
+            int end = chunkedRequestEnd(data, limit);
+            return end < 0 ? -1 : end - requestStart;
+        }
+        int total = headerEnd + contentLength;
+        return limit >= total ? total - requestStart : -1;
+    }
+
+    /**
+     * Walks the chunk framing of a chunked request body, resuming at the
+     * first chunk not yet known to be complete. Returns the index just past
+     * the request once the last chunk and trailers have arrived, else -1.
+     */
+    private int chunkedRequestEnd(byte[] data, int limit) throws IOException, HTTPParseException {
+        while (true) {
+            int lineEnd = chunkScan;
+            while (lineEnd < limit && data[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            if (lineEnd >= limit) {
+                return -1;
+            }
+
+            if (inTrailers) {
+                boolean empty = lineEnd == chunkScan || (lineEnd == chunkScan + 1 && data[chunkScan] == '\r');
+                chunkScan = lineEnd + 1;
+                if (empty) {
+                    return chunkScan;
+                }
+                continue;
+            }
+
+            long size = 0;
+            int digits = 0;
+            for (int i = chunkScan; i < lineEnd; i++) {
+                int digit = Character.digit(data[i], 16);
+                if (digit < 0) {
+                    break;
+                }
+                size = size * 16 + digit;
+                if (++digits > 8) {
+                    throw new ContentTooLargeException("Request exceeds " + MAX_REQUEST_SIZE + " bytes");
+                }
+            }
+            if (digits == 0) {
+                throw new HTTPParseException("Invalid chunk size");
+            }
+            if (size == 0) {
+                inTrailers = true;
+                chunkScan = lineEnd + 1;
+                continue;
+            }
+
+            long dataEnd = lineEnd + 1 + size;
+            if (dataEnd + 2 - requestStart > MAX_REQUEST_SIZE) {
+                throw new ContentTooLargeException("Request exceeds " + MAX_REQUEST_SIZE + " bytes");
+            }
+            if (dataEnd >= limit) {
+                return -1;
+            }
+            int terminator = (int) dataEnd;
+            if (data[terminator] == '\r') {
+                terminator++;
+                if (terminator >= limit) {
+                    return -1;
+                }
+            }
+            if (data[terminator] != '\n') {
+                throw new HTTPParseException("Missing CRLF after chunk data");
+            }
+            chunkScan = terminator + 1;
+        }
+    }
+
+    /**
+     * Reads Content-Length and Transfer-Encoding from the header block to
+     * decide how the end of the body will be found.
+     */
+    private void parseFraming(byte[] data, int start, int end) throws HTTPParseException {
+        String head = new String(data, start, end - start, StandardCharsets.ISO_8859_1);
+        for (String line : head.split("\r?\n")) {
+            int colonIndex = line.indexOf(':');
+            if (colonIndex == -1) {
+                continue;
+            }
+            String name = line.substring(0, colonIndex).trim();
+            String value = line.substring(colonIndex + 1).trim();
+            if (name.equalsIgnoreCase("Transfer-Encoding") && value.toLowerCase().endsWith("chunked")) {
+                chunked = true;
+            } else if (name.equalsIgnoreCase("Content-Length")) {
+                long length;
+                try {
+                    length = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    throw new HTTPParseException("Invalid Content-Length: " + line);
+                }
+                // Anything past the limit is rejected the same way.
+                contentLength = (int) Math.min(length, MAX_REQUEST_SIZE + 1L);
+            }
+        }
+        if (chunked) {
+            contentLength = 0;
+        }
+    }
+
+    private void growReadBuffer() throws IOException {
+        if (readBuffer.capacity() >= MAX_REQUEST_SIZE) {
+            throw new IOException("Request exceeds " + MAX_REQUEST_SIZE + " bytes");
+        }
+        int required = headerEnd < 0 || chunked ? 0 : headerEnd + contentLength;
+        int newCapacity = Math.min(MAX_REQUEST_SIZE, Math.max(readBuffer.capacity() * 2, required));
+        ByteBuffer bigger = ByteBuffer.allocate(newCapacity);
+        readBuffer.flip();
+        bigger.put(readBuffer);
+        readBuffer = bigger;
+    }
+
+    /**
+     * Writes the run of small responses at the head of the queue with one
+     * gathering write, so a burst of pipelined requests is answered with as
+     * few syscalls as the socket allows. Returns false if the socket filled
+     * up before all of them were written.
+     */
+    private boolean writeGathered() throws IOException {
+        List<ByteBuffer> buffers = new ArrayList<>();
+        int responses = 0;
+        for (OutboundResponse pending : writeQueue) {
+            ByteBuffer[] gather = pending.gatherBuffers();
+            if (gather == null || buffers.size() + gather.length > MAX_GATHER_BUFFERS) {
+                break;
+            }
+            Collections.addAll(buffers, gather);
+            responses++;
+        }
+        channel.write(buffers.toArray(new ByteBuffer[0]));
+
+        int written = 0;
+        while (written < responses && writeQueue.peek().isWritten()) {
+            writeQueue.poll().release();
+            written++;
+        }
+        return written == responses;
+    }
+
+    private void flush() throws IOException {
+        while (!writeQueue.isEmpty()) {
+            if (writeQueue.size() > 1 && writeQueue.peek().gatherBuffers() != null) {
+                if (!writeGathered()) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+                continue;
+            }
+            if (transferBuffer == null) {
+                transferBuffer = ByteBuffer.allocate(ResponseBody.TRANSFER_BUFFER_SIZE);
+            }
+            OutboundResponse head = writeQueue.peek();
+            if (!head.writeTo(channel, transferBuffer)) {
+                CompletionStage<?> body = head.bodyPending();
+                if (body == null) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                } else {
+                    key.interestOps(0);
+                    body.whenComplete((result, failure) -> loop.execute(this::resumeWrite));
+                }
+                return;
+            }
+            writeQueue.poll();
+        }
+        transferBuffer = null;
+
+        if (closeAfterWrite && inFlight.isEmpty()) {
+            close();
+            return;
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+}
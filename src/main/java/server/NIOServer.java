@@ -0,0 +1,170 @@
+package server;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import http.ConnectionLimits;
+import http.Router;
+
+/**
+ * Non-blocking HTTP server built on ServerSocketChannel and Selector.
+ * A single acceptor hands connections round-robin to a small, fixed number of
+ * EventLoop threads, so idle keep-alive connections cost a buffer rather than
+ * a thread.
+ *
+ * With more than one listener, the server instead opens that many sockets
+ * on the port with SO_REUSEPORT and gives each its own event loop, which
+ * accepts on its own selector and serves the connections it accepted. The
+ * kernel spreads new connections over the listeners, so connection storms
+ * are accepted on every core and no connection changes threads.
+ *
+ * Given a Unix domain socket path, the server also listens there, with an
+ * acceptor thread of its own handing connections to the event loops; with
+ * no TCP listeners it serves that socket only.
+ */
+public class NIOServer {
+
+    private final int port;
+    private final Router router;
+    private final EventLoop[] eventLoops;
+    private final ConnectionLimits limits;
+    private final int listenerCount;
+    private final Path unixSocket;
+    private volatile List<ServerSocketChannel> serverChannels = List.of();
+    private volatile ServerSocketChannel unixChannel;
+    private volatile boolean keepRunning = true;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    public NIOServer(int port, Router router, int eventLoopCount) {
+        this(port, router, eventLoopCount, ConnectionLimits.defaults());
+    }
+
+    public NIOServer(int port, Router router, int eventLoopCount, ConnectionLimits limits) {
+        this(port, router, eventLoopCount, limits, 1);
+    }
+
+    public NIOServer(int port, Router router, int eventLoopCount, ConnectionLimits limits, int listenerCount) {
+        this(port, router, eventLoopCount, limits, listenerCount, null);
+    }
+
+    /**
+     * @param eventLoopCount event loops behind the single acceptor; ignored
+     *                       with several listeners, which get one loop each
+     * @param listenerCount  SO_REUSEPORT listeners to open on the port, or
+     *                       0 for none when listening on unixSocket
+     * @param unixSocket     path of a Unix domain socket to listen on too,
+     *                       or null
+     */
+    public NIOServer(int port, Router router, int eventLoopCount, ConnectionLimits limits, int listenerCount,
+            Path unixSocket) {
+        if (eventLoopCount < 1 || listenerCount < 0 || listenerCount == 0 && unixSocket == null) {
+            throw new IllegalArgumentException("eventLoopCount must be at least 1, and listenerCount too "
+                    + "without a Unix domain socket");
+        }
+        this.port = port;
+        this.router = router;
+        this.eventLoops = new EventLoop[listenerCount > 1 ? listenerCount : eventLoopCount];
+        this.limits = limits;
+        this.listenerCount = listenerCount;
+        this.unixSocket = unixSocket;
+    }
+
+    /**
+     * Binds the listening sockets and starts the event loop threads.
+     */
+    public void start() throws IOException {
+        List<ServerSocketChannel> channels = listenerCount > 0 ? Listeners.open(port, listenerCount) : List.of();
+        serverChannels = channels;
+        if (unixSocket != null) {
+            try {
+                unixChannel = Listeners.openUnix(unixSocket);
+            } catch (IOException e) {
+                Listeners.close(channels);
+                throw e;
+            }
+        }
+
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop(router, limits);
+            if (listenerCount > 1) {
+                eventLoops[i].listen(channels.get(i));
+            }
+            Thread thread = new Thread(eventLoops[i], "nio-event-loop-" + i);
+            thread.start();
+        }
+        if (unixChannel != null) {
+            ServerSocketChannel channel = unixChannel;
+            Thread acceptor = new Thread(() -> {
+                try {
+                    accept(channel);
+                } catch (IOException e) {
+                    System.err.println("Unix socket acceptor stopped: " + e.getMessage());
+                }
+            }, "nio-unix-acceptor");
+            acceptor.start();
+        }
+    }
+
+    /**
+     * Accepts connections on the calling thread until stop() is called.
+     * With several listeners the event loops accept by themselves, and
+     * without TCP listeners only the Unix socket acceptor does; then this
+     * only waits for stop().
+     */
+    public void acceptLoop() throws IOException {
+        if (listenerCount != 1) {
+            try {
+                stopped.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+        accept(serverChannels.get(0));
+    }
+
+    /**
+     * Accepts from the channel until stop(), handing connections to the
+     * event loops round-robin.
+     */
+    private void accept(ServerSocketChannel serverChannel) throws IOException {
+        int next = 0;
+        while (keepRunning) {
+            try {
+                SocketChannel client = serverChannel.accept();
+                eventLoops[next].register(client);
+                next = (next + 1) % eventLoops.length;
+            } catch (ClosedChannelException e) {
+                if (!keepRunning) {
+                    break;
+                }
+                throw e;
+            }
+        }
+    }
+
+    public void stop() {
+        keepRunning = false;
+        Listeners.close(serverChannels);
+        if (unixChannel != null) {
+            Listeners.close(List.of(unixChannel));
+        }
+        for (EventLoop loop : eventLoops) {
+            if (loop != null) {
+                loop.shutdown();
+            }
+        }
+        stopped.countDown();
+    }
+
+    public int getPort() {
+        List<ServerSocketChannel> channels = serverChannels;
+        return channels.isEmpty() ? port : channels.get(0).socket().getLocalPort();
+    }
+
+}
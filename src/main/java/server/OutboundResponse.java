@@ -0,0 +1,205 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+import http.AwaitableChannel;
+import http.ChunkedChannel;
+import http.CompositeBody;
+import http.FileRegionBody;
+import http.HTTPResponse;
+import http.HTTPResponseWriter;
+import http.ResponseBody;
+import http.ResponseEncoder;
+
+/**
+ * A response queued on an NIOConnection. The encoded head is written first,
+ * then the body is pulled from its channel one buffer at a time, only as
+ * fast as the socket accepts it. File bodies skip the buffer and are handed
+ * to the socket with FileChannel.transferTo, including file regions inside
+ * a CompositeBody such as a multipart/byteranges response. A small
+ * in-memory body is gathered with the head into a single write. A body
+ * produced on other threads is only read once it is ready, so writing
+ * never waits on anything but the socket.
+ */
+class OutboundResponse {
+
+    private final ByteBuffer head;
+    private final ResponseBody body;
+    private final boolean sendBody;
+    private final boolean keepAlive;
+    private final boolean chunked;
+
+    private final List<ResponseBody> parts;
+    private ByteBuffer[] gather;
+    private int partIndex;
+
+    private ReadableByteChannel bodySource;
+    private ReadableByteChannel bodyChannel;
+    private ByteBuffer chunk;
+    private CompletionStage<?> bodyPending;
+
+    private FileChannel file;
+    private long fileOffset;
+    private long fileEnd;
+
+    OutboundResponse(HTTPResponse response, String method, ResponseEncoder encoder) {
+        this.sendBody = HTTPResponseWriter.sendsBody(response, method);
+        this.keepAlive = HTTPResponseWriter.isKeepAlive(response, method);
+        this.chunked = HTTPResponseWriter.isChunked(response);
+        this.head = ByteBuffer.wrap(encoder.encodeHeadBytes(response, keepAlive));
+        this.body = response.getResponseBody();
+        this.parts = body instanceof CompositeBody ? ((CompositeBody) body).getParts() : List.of(body);
+        if (!sendBody) {
+            gather = new ByteBuffer[] { head };
+        } else if (HTTPResponseWriter.isGatherable(response)) {
+            gather = new ByteBuffer[] { head, body.asByteBuffer() };
+        }
+    }
+
+    /**
+     * Returns the buffers of a response that is only a head and a small
+     * in-memory body, or null. NIOConnection gathers these across queued
+     * responses so pipelined replies share one write.
+     */
+    ByteBuffer[] gatherBuffers() {
+        return gather;
+    }
+
+    boolean isWritten() {
+        return gather != null && !gather[gather.length - 1].hasRemaining();
+    }
+
+    boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Returns the stage to wait for when the last writeTo stopped because
+     * the body had nothing ready, or null if it stopped on a full socket.
+     */
+    CompletionStage<?> bodyPending() {
+        return bodyPending;
+    }
+
+    /**
+     * Writes as much as the channel accepts without blocking. Returns true
+     * once the whole response has been written.
+     */
+    boolean writeTo(WritableByteChannel channel, ByteBuffer transferBuffer) throws IOException {
+        bodyPending = null;
+        if (gather != null && channel instanceof GatheringByteChannel) {
+            ((GatheringByteChannel) channel).write(gather);
+            if (!isWritten()) {
+                return false;
+            }
+            release();
+            return true;
+        }
+        if (head.hasRemaining()) {
+            channel.write(head);
+            if (head.hasRemaining()) {
+                return false;
+            }
+        }
+        if (!sendBody) {
+            release();
+            return true;
+        }
+        while (partIndex < parts.size()) {
+            ResponseBody part = parts.get(partIndex);
+            boolean done = part instanceof FileRegionBody
+                    ? transferFile(channel, (FileRegionBody) part)
+                    : pull(channel, part, transferBuffer);
+            if (!done) {
+                return false;
+            }
+            partIndex++;
+        }
+        release();
+        return true;
+    }
+
+    /**
+     * Copies a body through the transfer buffer. Returns true once the body
+     * is exhausted and its channel closed.
+     */
+    private boolean pull(WritableByteChannel channel, ResponseBody part, ByteBuffer transferBuffer)
+            throws IOException {
+        if (bodyChannel == null) {
+            bodySource = part.openChannel();
+            bodyChannel = chunked ? new ChunkedChannel(bodySource) : bodySource;
+            chunk = transferBuffer;
+            chunk.clear().flip();
+        }
+        while (true) {
+            if (chunk.hasRemaining()) {
+                channel.write(chunk);
+                if (chunk.hasRemaining()) {
+                    return false;
+                }
+            }
+            if (bodySource instanceof AwaitableChannel) {
+                bodyPending = ((AwaitableChannel) bodySource).whenReadable();
+                if (bodyPending != null) {
+                    return false;
+                }
+            }
+            chunk.clear();
+            int read = bodyChannel.read(chunk);
+            chunk.flip();
+            if (read == -1) {
+                bodyChannel.close();
+                bodyChannel = null;
+                bodySource = null;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Zero-copy path for file bodies: FileChannel.transferTo hands the region
+     * to the kernel (sendfile on Linux). On a non-blocking socket it sends
+     * what fits and returns, so the rest goes out on the next OP_WRITE.
+     */
+    private boolean transferFile(WritableByteChannel channel, FileRegionBody region) throws IOException {
+        if (file == null) {
+            file = region.openFile();
+            fileOffset = region.getPosition();
+            fileEnd = fileOffset + region.length();
+        }
+        while (fileOffset < fileEnd) {
+            long sent = file.transferTo(fileOffset, fileEnd - fileOffset, channel);
+            if (sent == 0) {
+                if (fileOffset >= file.size()) {
+                    throw new IOException("File truncated while sending: " + region.getPath());
+                }
+                return false;
+            }
+            fileOffset += sent;
+        }
+        file.close();
+        file = null;
+        return true;
+    }
+
+    void release() {
+        try {
+            if (file != null) {
+                file.close();
+            }
+            if (bodyChannel != null) {
+                bodyChannel.close();
+            }
+            body.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+}
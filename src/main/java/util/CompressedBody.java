@@ -0,0 +1,73 @@
+package util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import http.ContentCoding;
+import http.ResponseBody;
+
+/**
+ * Response body that is another body compressed on its way to the socket.
+ * Both the blocking and the non-blocking path pull it through a
+ * DeflatingChannel, so nothing is compressed ahead of sending and the
+ * memory used does not depend on the size of the source. The compressed
+ * length is unknown, so the response is sent with chunked encoding.
+ * With a ParallelGzip the source is compressed in blocks on several cores
+ * instead.
+ */
+public class CompressedBody extends ResponseBody {
+
+    private final ResponseBody source;
+    private final ContentCoding coding;
+    private final int level;
+    private final ParallelGzip parallel;
+
+    public CompressedBody(ResponseBody source, ContentCoding coding, int level) {
+        this.source = source;
+        this.coding = coding;
+        this.level = level;
+        this.parallel = null;
+    }
+
+    /**
+     * Gzips the source with a parallel block compressor.
+     */
+    public CompressedBody(ResponseBody source, ParallelGzip parallel) {
+        this.source = source;
+        this.coding = ContentCoding.GZIP;
+        this.level = -1;
+        this.parallel = parallel;
+    }
+
+    @Override
+    public long length() {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        try (ReadableByteChannel in = openChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocate(TRANSFER_BUFFER_SIZE);
+            while (in.read(buffer) != -1) {
+                out.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        }
+    }
+
+    @Override
+    public ReadableByteChannel openChannel() throws IOException {
+        if (parallel != null) {
+            return parallel.compress(source.openChannel());
+        }
+        return new DeflatingChannel(source.openChannel(), coding, level);
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+}
@@ -0,0 +1,152 @@
+package util;
+
+import java.util.Locale;
+import java.util.Set;
+
+import http.ContentCoding;
+import http.ContentType;
+import http.HTTPRequest;
+import http.ResponseBody;
+
+/**
+ * Decides whether and how a response body is compressed.
+ *
+ * Bodies shorter than the minimum size are sent as they are: the gzip
+ * framing alone is 18 bytes and a tiny body rarely saves a packet. Formats
+ * that are already compressed (images listed as such in ContentType,
+ * audio, video, fonts and archives) are never compressed again. For
+ * everything else the coding is negotiated from Accept-Encoding, and the
+ * response must carry "Vary: Accept-Encoding" whether or not it ends up
+ * compressed, so that caches keep the variants apart.
+ *
+ * A level of 0 turns compression off. With a ParallelGzip, gzip bodies
+ * at least as large as its threshold are compressed on several cores.
+ */
+public final class CompressionPolicy {
+
+    public static final int DEFAULT_MIN_SIZE = 256;
+
+    private static final CompressionPolicy DEFAULT = new CompressionPolicy(CompressionUtils.DEFAULT_LEVEL,
+            DEFAULT_MIN_SIZE);
+
+    private static final Set<String> COMPRESSED_EXTENSIONS = Set.of(
+            "gz", "tgz", "zip", "bz2", "xz", "zst", "br", "7z", "rar",
+            "webp", "avif", "heic", "mp3", "ogg", "mp4", "m4a", "webm", "mov", "woff", "woff2");
+
+    private static final Set<String> COMPRESSED_MEDIA_TYPES = Set.of(
+            "application/zip", "application/gzip", "application/x-gzip", "application/zstd",
+            "application/x-bzip2", "application/x-xz", "application/x-7z-compressed", "application/x-rar-compressed",
+            "font/woff", "font/woff2");
+
+    private final int level;
+    private final long minSize;
+    private final ParallelGzip parallelGzip;
+    private final long parallelMinSize;
+
+    /**
+     * @param level   deflate level from 1 (fastest) to 9 (smallest), or 0
+     *                to disable compression
+     * @param minSize the smallest body, in bytes, that is compressed
+     */
+    public CompressionPolicy(int level, long minSize) {
+        this(level, minSize, null, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param parallelGzip    compressor for large gzip bodies, or null
+     * @param parallelMinSize the smallest body, in bytes, given to it
+     */
+    public CompressionPolicy(int level, long minSize, ParallelGzip parallelGzip, long parallelMinSize) {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("Compression level must be between 0 and 9: " + level);
+        }
+        this.level = level;
+        this.minSize = minSize;
+        this.parallelGzip = parallelGzip;
+        this.parallelMinSize = parallelMinSize;
+    }
+
+    public static CompressionPolicy defaults() {
+        return DEFAULT;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public long getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * Returns whether a body of this media type and length is worth
+     * compressing, and so whether the response varies by Accept-Encoding.
+     *
+     * @param length the body length, or -1 if unknown
+     */
+    public boolean isCompressible(String mediaType, long length) {
+        if (level == 0 || (length >= 0 && length < minSize)) {
+            return false;
+        }
+        if (mediaType == null) {
+            return true;
+        }
+        ContentType known = ContentType.forMediaType(mediaType);
+        if (known != null) {
+            return !known.isCompressed();
+        }
+        String bare = mediaType.toLowerCase(Locale.ROOT);
+        int parameters = bare.indexOf(';');
+        if (parameters >= 0) {
+            bare = bare.substring(0, parameters).trim();
+        }
+        if (bare.startsWith("audio/") || bare.startsWith("video/")) {
+            return false;
+        }
+        if (bare.startsWith("image/")) {
+            return bare.equals("image/svg+xml") || bare.equals("image/bmp") || bare.equals("image/x-icon");
+        }
+        return !COMPRESSED_MEDIA_TYPES.contains(bare);
+    }
+
+    /**
+     * Same as isCompressible, for a file typed by its name's extension.
+     */
+    public boolean isCompressibleFile(String fileName, long length) {
+        ContentType known = ContentType.forFileName(fileName);
+        if (known != null) {
+            return isCompressible(known.getType(), length);
+        }
+        int dot = fileName.lastIndexOf('.');
+        if (dot >= 0 && COMPRESSED_EXTENSIONS.contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT))) {
+            return false;
+        }
+        return isCompressible(null, length);
+    }
+
+    /**
+     * Returns the coding to apply to a compressible body for this request.
+     */
+    public ContentCoding negotiate(HTTPRequest request) {
+        return level == 0 ? ContentCoding.IDENTITY : CompressionUtils.negotiate(request);
+    }
+
+    /**
+     * Returns a body that compresses the source with the coding while it is
+     * sent.
+     *
+     * @param length the source length, or -1 if unknown
+     */
+    public ResponseBody compress(ResponseBody source, ContentCoding coding, long length) {
+        if (coding == ContentCoding.GZIP && parallelGzip != null && length >= parallelMinSize) {
+            return new CompressedBody(source, parallelGzip);
+        }
+        return new CompressedBody(source, coding, level);
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionPolicy{level=" + level + ", minSize=" + minSize + "}";
+    }
+
+}
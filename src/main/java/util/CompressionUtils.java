@@ -2,39 +2,147 @@ package util;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
+import http.AcceptEncoding;
+import http.ContentCoding;
 import http.HTTPRequest;
 
 /**
  * Utility class for handling compression-related tasks.
+ *
+ * Bodies are compressed with Deflaters borrowed from the shared
+ * DeflaterPool. gzip is written as the fixed ten-byte header, raw deflate
+ * data and a CRC-32/length trailer, as GZIPOutputStream would produce;
+ * "deflate" is the zlib format required by RFC 9110.
  */
 public class CompressionUtils {
 
+    public static final int DEFAULT_LEVEL = 6;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final List<ContentCoding> SUPPORTED = List.of(ContentCoding.GZIP, ContentCoding.DEFLATE);
+
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
     public static byte[] gzipCompress(byte[] data) throws IOException {
-        ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
-        GZIPOutputStream gzipOut = new GZIPOutputStream(byteOut);
-        gzipOut.write(data);
-        gzipOut.finish();
-        gzipOut.close();
-        return byteOut.toByteArray();
+        return compress(data, ContentCoding.GZIP, DEFAULT_LEVEL);
     }
 
-    public static boolean acceptsGzip(HTTPRequest request) {
-        String acceptEncoding = request.getHeader("Accept-Encoding");
-        if (acceptEncoding == null) {
-            return false;
+    /**
+     * Gzips everything read from in onto out as it is read, without buffering
+     * the whole payload. out is finished but left open.
+     */
+    public static void gzipCompress(InputStream in, OutputStream out) throws IOException {
+        compress(in, out, ContentCoding.GZIP, DEFAULT_LEVEL);
+    }
+
+    /**
+     * Compresses a whole body in memory with gzip or deflate.
+     */
+    public static byte[] compress(byte[] data, ContentCoding coding, int level) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+        boolean gzip = coding == ContentCoding.GZIP;
+        Deflater deflater = acquire(coding, level);
+        try {
+            if (gzip) {
+                out.write(GZIP_HEADER);
+            }
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buffer = new byte[Math.min(BUFFER_SIZE, Math.max(64, data.length))];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            if (gzip) {
+                CRC32 crc = new CRC32();
+                crc.update(data);
+                writeTrailer(out, crc.getValue(), data.length);
+            }
+        } finally {
+            DeflaterPool.shared().release(deflater, level, gzip);
         }
-        List<String> encodingTypes = Arrays.asList(acceptEncoding.split(",\\s*"));
-        for (String type : encodingTypes) {
-            String encodingName = type.split(";")[0].trim();
-            if (encodingName.equalsIgnoreCase("gzip")) {
-                return true;
+        return out.toByteArray();
+    }
+
+    /**
+     * Compresses everything read from in onto out as it is read. out is
+     * left open.
+     */
+    public static void compress(InputStream in, OutputStream out, ContentCoding coding, int level)
+            throws IOException {
+        boolean gzip = coding == ContentCoding.GZIP;
+        Deflater deflater = acquire(coding, level);
+        try {
+            if (gzip) {
+                out.write(GZIP_HEADER);
+            }
+            CRC32 crc = new CRC32();
+            long total = 0;
+            byte[] input = new byte[BUFFER_SIZE];
+            byte[] output = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(input)) != -1) {
+                crc.update(input, 0, read);
+                total += read;
+                deflater.setInput(input, 0, read);
+                while (!deflater.needsInput()) {
+                    int produced = deflater.deflate(output);
+                    if (produced > 0) {
+                        out.write(output, 0, produced);
+                    }
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                out.write(output, 0, deflater.deflate(output));
             }
+            if (gzip) {
+                writeTrailer(out, crc.getValue(), total);
+            }
+        } finally {
+            DeflaterPool.shared().release(deflater, level, gzip);
         }
-        return false;
+    }
+
+    /**
+     * Returns whether the request's Accept-Encoding makes gzip acceptable,
+     * honouring q-values.
+     */
+    public static boolean acceptsGzip(HTTPRequest request) {
+        return AcceptEncoding.accepts(request.getHeader("Accept-Encoding"), ContentCoding.GZIP);
+    }
+
+    /**
+     * Returns the coding to use for the request, preferring gzip over
+     * deflate when the client rates them equally.
+     */
+    public static ContentCoding negotiate(HTTPRequest request) {
+        return AcceptEncoding.negotiate(request.getHeader("Accept-Encoding"), SUPPORTED);
+    }
+
+    private static Deflater acquire(ContentCoding coding, int level) {
+        if (coding != ContentCoding.GZIP && coding != ContentCoding.DEFLATE) {
+            throw new IllegalArgumentException("Not a compressing coding: " + coding);
+        }
+        return DeflaterPool.shared().acquire(level, coding == ContentCoding.GZIP);
+    }
+
+    private static void writeTrailer(OutputStream out, long crc, long length) throws IOException {
+        writeIntLE(out, (int) crc);
+        writeIntLE(out, (int) length);
+    }
+
+    private static void writeIntLE(OutputStream out, int value) throws IOException {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
     }
 
 }
@@ -0,0 +1,80 @@
+package util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * Pool of reset Deflaters, one bounded free list per compression level and
+ * wrapping. A Deflater owns a native zlib stream of a few hundred KB that
+ * is only freed by end() or, much later, by the garbage collector, so
+ * creating one per response is both slow and a source of native memory
+ * growth. Deflaters that do not fit back into a full list are ended.
+ */
+public final class DeflaterPool {
+
+    private static final DeflaterPool SHARED = new DeflaterPool(2 * Runtime.getRuntime().availableProcessors());
+
+    // Index (level + 1) * 2 + (nowrap ? 1 : 0), for levels -1 to 9.
+    private final ArrayBlockingQueue<Deflater>[] idle;
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    /**
+     * @param maxIdle the most Deflaters kept per level and wrapping
+     */
+    @SuppressWarnings("unchecked")
+    public DeflaterPool(int maxIdle) {
+        idle = (ArrayBlockingQueue<Deflater>[]) new ArrayBlockingQueue<?>[22];
+        for (int i = 0; i < idle.length; i++) {
+            idle[i] = new ArrayBlockingQueue<>(Math.max(1, maxIdle));
+        }
+    }
+
+    public static DeflaterPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Takes a Deflater from the pool or creates one.
+     *
+     * @param nowrap true for raw deflate data, as inside gzip; false for
+     *               the zlib format of the "deflate" content coding
+     */
+    public Deflater acquire(int level, boolean nowrap) {
+        Deflater deflater = idle[index(level, nowrap)].poll();
+        if (deflater != null) {
+            reused.incrementAndGet();
+            return deflater;
+        }
+        created.incrementAndGet();
+        return new Deflater(level, nowrap);
+    }
+
+    /**
+     * Returns a Deflater obtained from acquire with the same arguments. It
+     * must not be used by the caller afterwards.
+     */
+    public void release(Deflater deflater, int level, boolean nowrap) {
+        deflater.reset();
+        if (!idle[index(level, nowrap)].offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    public long getCreated() {
+        return created.get();
+    }
+
+    public long getReused() {
+        return reused.get();
+    }
+
+    private static int index(int level, boolean nowrap) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        return (level + 1) * 2 + (nowrap ? 1 : 0);
+    }
+
+}
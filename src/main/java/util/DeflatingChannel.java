@@ -0,0 +1,126 @@
+package util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import http.ContentCoding;
+
+/**
+ * Pull-based compression stage: wraps a body channel and yields its bytes
+ * gzip- or deflate-encoded, as the Deflater produces them. Each read pulls
+ * at most one input buffer from the source and deflates straight into the
+ * caller's buffer, so memory stays fixed at one input buffer and the
+ * Deflater's own window whatever the size of the body.
+ *
+ * The Deflater comes from the shared DeflaterPool and goes back once the
+ * stream is finished or the channel is closed.
+ */
+public class DeflatingChannel implements ReadableByteChannel {
+
+    private static final int INPUT_BUFFER_SIZE = 16 * 1024;
+
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+    private final ReadableByteChannel source;
+    private final boolean gzip;
+    private final int level;
+    private final ByteBuffer input = ByteBuffer.allocate(INPUT_BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private Deflater deflater;
+
+    private ByteBuffer framing;
+    private long totalIn;
+    private boolean sourceDone;
+    private boolean trailerQueued;
+    private boolean open = true;
+
+    public DeflatingChannel(ReadableByteChannel source, ContentCoding coding, int level) {
+        if (coding != ContentCoding.GZIP && coding != ContentCoding.DEFLATE) {
+            throw new IllegalArgumentException("Not a compressing coding: " + coding);
+        }
+        this.source = source;
+        this.gzip = coding == ContentCoding.GZIP;
+        this.level = level;
+        this.deflater = DeflaterPool.shared().acquire(level, gzip);
+        this.framing = gzip ? ByteBuffer.wrap(GZIP_HEADER) : null;
+        this.input.limit(0);
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int start = dst.position();
+        while (dst.hasRemaining()) {
+            if (framing != null && framing.hasRemaining()) {
+                int count = Math.min(dst.remaining(), framing.remaining());
+                int oldLimit = framing.limit();
+                framing.limit(framing.position() + count);
+                dst.put(framing);
+                framing.limit(oldLimit);
+                continue;
+            }
+            if (deflater == null) {
+                break;
+            }
+            if (deflater.finished()) {
+                if (gzip && !trailerQueued) {
+                    framing = trailer();
+                    trailerQueued = true;
+                    continue;
+                }
+                release();
+                continue;
+            }
+            if (deflater.needsInput() && !sourceDone) {
+                input.clear();
+                int read = source.read(input);
+                input.flip();
+                if (read == -1) {
+                    sourceDone = true;
+                    deflater.finish();
+                } else if (read == 0) {
+                    break;
+                } else {
+                    crc.update(input.array(), 0, read);
+                    totalIn += read;
+                    deflater.setInput(input);
+                }
+            }
+            deflater.deflate(dst);
+        }
+        int produced = dst.position() - start;
+        if (produced == 0 && deflater == null && (framing == null || !framing.hasRemaining())) {
+            return -1;
+        }
+        return produced;
+    }
+
+    private ByteBuffer trailer() {
+        ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        trailer.putInt((int) crc.getValue()).putInt((int) totalIn).flip();
+        return trailer;
+    }
+
+    private void release() {
+        if (deflater != null) {
+            DeflaterPool.shared().release(deflater, level, gzip);
+            deflater = null;
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        release();
+        source.close();
+    }
+
+}
@@ -0,0 +1,168 @@
+package util;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Size-bounded LRU cache of file contents, or of data derived from them.
+ * Entries are keyed by path and remember the modification time and size the
+ * file had when it was read; a lookup only hits when both still match, so
+ * files changed behind the server's back are re-read. The total size of all
+ * cached contents never exceeds the configured byte budget.
+ *
+ * The map is guarded by a ReentrantLock rather than a monitor, so virtual
+ * threads waiting for it park instead of pinning their carrier thread.
+ */
+public class FileContentCache {
+
+    private static class Entry {
+        final long lastModified;
+        final long size;
+        final byte[] data;
+
+        Entry(long lastModified, long size, byte[] data) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.data = data;
+        }
+    }
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes = 0;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache holding at most maxBytes of file data, in which a
+     * single file may take up to a quarter of the budget.
+     */
+    public FileContentCache(long maxBytes) {
+        this(maxBytes, maxBytes / 4);
+    }
+
+    public FileContentCache(long maxBytes, long maxEntryBytes) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+    }
+
+    /**
+     * Returns whether a file of the given size is small enough to be cached.
+     */
+    public boolean accepts(long size) {
+        return size <= maxEntryBytes;
+    }
+
+    /**
+     * Returns the cached contents if the entry matches the file's current
+     * modification time and size, or null on a miss.
+     */
+    public byte[] get(Path path, long lastModified, long size) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(path);
+            if (entry != null && entry.lastModified == lastModified && entry.size == size) {
+                hits.increment();
+                return entry.data;
+            }
+            if (entry != null) {
+                remove(path);
+            }
+            misses.increment();
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(Path path, long lastModified, byte[] data) {
+        put(path, lastModified, data.length, data);
+    }
+
+    /**
+     * Caches data derived from a file of the given modification time and
+     * size, such as its compressed form. The entry counts data.length bytes
+     * against the budget.
+     */
+    public void put(Path path, long lastModified, long size, byte[] data) {
+        if (!accepts(data.length)) {
+            return;
+        }
+        lock.lock();
+        try {
+            remove(path);
+            entries.put(path, new Entry(lastModified, size, data));
+            currentBytes += data.length;
+
+            Iterator<Map.Entry<Path, Entry>> eldest = entries.entrySet().iterator();
+            while (currentBytes > maxBytes && eldest.hasNext()) {
+                currentBytes -= eldest.next().getValue().data.length;
+                eldest.remove();
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(Path path) {
+        lock.lock();
+        try {
+            remove(path);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCurrentBytes() {
+        lock.lock();
+        try {
+            return currentBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getEntryCount() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "FileContentCache[entries=" + getEntryCount() + ", bytes=" + getCurrentBytes() + "/" + maxBytes
+                + ", hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+    }
+
+    private void remove(Path path) {
+        Entry removed = entries.remove(path);
+        if (removed != null) {
+            currentBytes -= removed.data.length;
+        }
+    }
+
+}
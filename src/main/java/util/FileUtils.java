@@ -1,15 +1,27 @@
 package util;
 
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Utility class for file operations.
  */
 public class FileUtils {
 
+    private static final String UPLOAD_SUFFIX = ".upload";
+
     public static void createFile(String path, byte[] content) {
         try {
             Files.write(
@@ -20,4 +32,102 @@ public class FileUtils {
             throw new RuntimeException("Failed to create file: " + path, e);
         }
     }
+
+    /**
+     * Streams content into a temporary file next to target, then moves it
+     * into place in one step, so readers see either the old file or the
+     * complete new one and never a partial write. Memory use is constant
+     * regardless of the content size.
+     *
+     * The temporary file is created like any new file, so it gets the
+     * permissions the umask gives; when an existing target is replaced,
+     * the target's permissions are copied instead. It is named so that
+     * isUploadInProgress recognizes it, for servers that must not expose it.
+     *
+     * @param replaceExisting whether an existing target is overwritten; if
+     *                        false and target exists, FileAlreadyExistsException
+     *                        is thrown and target is left untouched
+     * @return the number of bytes written
+     */
+    public static long writeAtomically(InputStream content, Path target, boolean replaceExisting)
+            throws IOException {
+        Path directory = target.toAbsolutePath().getParent();
+        Path temp = createUploadFile(directory, target.getFileName().toString());
+        try {
+            long written;
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                written = content.transferTo(out);
+            }
+            if (replaceExisting) {
+                copyPermissions(target, temp);
+                moveReplacing(temp, target);
+            } else {
+                moveIfAbsent(temp, target);
+            }
+            return written;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Creates an empty file with a fresh name for an upload to the named
+     * file. Files.createTempFile would create it with mode 0600, which the
+     * move then carries over to the target; this gets the umask default.
+     */
+    private static Path createUploadFile(Path directory, String name) throws IOException {
+        while (true) {
+            Path candidate = directory.resolve("." + name + "."
+                    + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + UPLOAD_SUFFIX);
+            try {
+                return Files.createFile(candidate);
+            } catch (FileAlreadyExistsException e) {
+                // Name taken; try another.
+            }
+        }
+    }
+
+    /**
+     * Returns whether the file name is that of a temporary file of an
+     * upload that writeAtomically has not yet moved into place.
+     */
+    public static boolean isUploadInProgress(String fileName) {
+        return fileName.startsWith(".") && fileName.endsWith(UPLOAD_SUFFIX);
+    }
+
+    private static void copyPermissions(Path from, Path to) throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(to, PosixFileAttributeView.class);
+        if (view == null) {
+            return;
+        }
+        try {
+            view.setPermissions(Files.getPosixFilePermissions(from));
+        } catch (NoSuchFileException e) {
+            // The target was deleted meanwhile; keep the default permissions.
+        }
+    }
+
+    private static void moveReplacing(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * A rename would silently replace a target created concurrently, so a
+     * hard link is used instead: link(2) is atomic and fails if the name is
+     * taken. File systems without hard links fall back to a plain move,
+     * which also refuses to overwrite.
+     */
+    private static void moveIfAbsent(Path temp, Path target) throws IOException {
+        try {
+            Files.createLink(target, temp);
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            Files.move(temp, target);
+        }
+    }
 }
@@ -0,0 +1,212 @@
+package util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.LongAdder;
+
+import http.ContentCoding;
+import http.ResponseBody;
+
+/**
+ * Cache of gzip-compressed file variants, keyed by the source file's path,
+ * modification time and size, so each version of a file is compressed once.
+ *
+ * Variants small enough for the memory budget are kept in a
+ * FileContentCache. When a disk directory is configured every variant is
+ * also written there, which lets large variants be cached at all and lets
+ * variants evicted from memory be served from disk without recompressing.
+ * Disk entries are named after the source version, so a changed file never
+ * matches an old entry, and older versions are deleted when a new one is
+ * written.
+ */
+public class GzipVariantCache {
+
+    private final FileContentCache memory;
+    private final Path diskDirectory;
+    private final int level;
+
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder compressions = new LongAdder();
+
+    /**
+     * @param maxMemoryBytes memory budget for compressed variants
+     * @param diskDirectory  directory to spill variants to, or null for
+     *                       memory only
+     */
+    public GzipVariantCache(long maxMemoryBytes, Path diskDirectory) throws IOException {
+        this(maxMemoryBytes, diskDirectory, CompressionUtils.DEFAULT_LEVEL);
+    }
+
+    /**
+     * @param level deflate level used for variants; each is compressed once,
+     *              so a slower level than for on-the-fly responses pays off
+     */
+    public GzipVariantCache(long maxMemoryBytes, Path diskDirectory, int level) throws IOException {
+        this.memory = new FileContentCache(maxMemoryBytes);
+        this.diskDirectory = diskDirectory;
+        this.level = level;
+        if (diskDirectory != null) {
+            Files.createDirectories(diskDirectory);
+        }
+    }
+
+    /**
+     * Returns the gzip encoding of the file, compressing and caching it on a
+     * miss. Returns null if the variant is too large for memory and no disk
+     * directory is configured; the caller should then compress on the fly.
+     *
+     * @param content the file contents if the caller already has them, or null
+     */
+    public ResponseBody get(Path path, BasicFileAttributes attributes, byte[] content) throws IOException {
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+
+        byte[] cached = memory.get(path, lastModified, size);
+        if (cached != null) {
+            return ResponseBody.of(cached);
+        }
+
+        Path diskFile = diskDirectory != null ? diskFile(path, lastModified, size) : null;
+        if (diskFile != null && Files.isRegularFile(diskFile)) {
+            diskHits.increment();
+            long diskSize = Files.size(diskFile);
+            if (memory.accepts(diskSize)) {
+                byte[] data = Files.readAllBytes(diskFile);
+                memory.put(path, lastModified, size, data);
+                return ResponseBody.of(data);
+            }
+            return ResponseBody.ofFile(diskFile, 0, diskSize);
+        }
+
+        if (memory.accepts(size)) {
+            byte[] data = compress(path, content);
+            memory.put(path, lastModified, size, data);
+            if (diskFile != null) {
+                writeToDisk(path, diskFile, out -> out.write(data));
+            }
+            return ResponseBody.of(data);
+        }
+
+        if (diskFile != null) {
+            writeToDisk(path, diskFile, out -> {
+                try (InputStream in = Files.newInputStream(path)) {
+                    CompressionUtils.compress(in, out, ContentCoding.GZIP, level);
+                }
+            });
+            compressions.increment();
+            return ResponseBody.ofFile(diskFile, 0, Files.size(diskFile));
+        }
+        return null;
+    }
+
+    /**
+     * Returns the cached variant without compressing on a miss, or null.
+     * Used to answer HEAD requests from metadata alone.
+     */
+    public ResponseBody peek(Path path, BasicFileAttributes attributes) throws IOException {
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        byte[] cached = memory.get(path, lastModified, attributes.size());
+        if (cached != null) {
+            return ResponseBody.of(cached);
+        }
+        if (diskDirectory != null) {
+            Path diskFile = diskFile(path, lastModified, attributes.size());
+            if (Files.isRegularFile(diskFile)) {
+                return ResponseBody.ofFile(diskFile, 0, Files.size(diskFile));
+            }
+        }
+        return null;
+    }
+
+    public void invalidate(Path path) {
+        memory.invalidate(path);
+    }
+
+    public FileContentCache getMemoryCache() {
+        return memory;
+    }
+
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    public long getCompressions() {
+        return compressions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "GzipVariantCache[memory=" + memory + ", diskHits=" + getDiskHits()
+                + ", compressions=" + getCompressions() + "]";
+    }
+
+    private byte[] compress(Path path, byte[] content) throws IOException {
+        compressions.increment();
+        if (content != null) {
+            return CompressionUtils.compress(content, ContentCoding.GZIP, level);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = Files.newInputStream(path)) {
+            CompressionUtils.compress(in, out, ContentCoding.GZIP, level);
+        }
+        return out.toByteArray();
+    }
+
+    private interface VariantWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes a variant through a temporary file so concurrent readers never
+     * see a partial entry, then removes older versions of the same source.
+     */
+    private void writeToDisk(Path path, Path diskFile, VariantWriter writer) throws IOException {
+        Path temp = Files.createTempFile(diskDirectory, ".variant", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                writer.write(out);
+            }
+            Files.move(temp, diskFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        String prefix = pathHash(path) + "-";
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(diskDirectory, prefix + "*.gz")) {
+            for (Path old : stale) {
+                if (!old.equals(diskFile)) {
+                    Files.deleteIfExists(old);
+                }
+            }
+        }
+    }
+
+    private Path diskFile(Path path, long lastModified, long size) {
+        return diskDirectory.resolve(pathHash(path) + "-" + lastModified + "-" + size + ".gz");
+    }
+
+    private static String pathHash(Path path) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(path.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+}
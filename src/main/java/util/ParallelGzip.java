@@ -0,0 +1,260 @@
+package util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import http.AwaitableChannel;
+
+/**
+ * Parallel block gzip in the style of pigz. The input is cut into blocks
+ * that are deflated concurrently on a ForkJoinPool, each primed with the
+ * last 32 KB of the block before it as its dictionary, so matches across
+ * block boundaries are still found and the ratio stays close to a single
+ * stream. Every block but the last ends with a sync flush, which leaves the
+ * raw deflate output byte-aligned, so the blocks concatenate into one valid
+ * deflate stream behind a single gzip header. The source is read on the
+ * pool too, one block after another so the CRC-32 is computed in order,
+ * and each block is deflated as soon as it has been read.
+ *
+ * Compressed blocks are handed out in order as they complete, with a
+ * bounded number in flight, so memory stays proportional to the block size
+ * times the parallelism rather than to the size of the input. A read only
+ * waits for a block when it has nothing else to return, and the event loop
+ * avoids even that by reading only once whenReadable says it may.
+ */
+public final class ParallelGzip {
+
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+    private final ForkJoinPool pool;
+    private final int level;
+    private final int blockSize;
+    private final int maxInFlight;
+
+    public ParallelGzip(ForkJoinPool pool, int level) {
+        this(pool, level, DEFAULT_BLOCK_SIZE);
+    }
+
+    public ParallelGzip(ForkJoinPool pool, int level, int blockSize) {
+        this.pool = pool;
+        this.level = level;
+        this.blockSize = blockSize;
+        this.maxInFlight = 2 * pool.getParallelism();
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Returns a channel yielding the gzip encoding of the source. A read
+     * waits for at most the oldest block still being compressed, and only
+     * if no bytes are ready.
+     */
+    public AwaitableChannel compress(ReadableByteChannel source) {
+        return new ParallelGzipChannel(source);
+    }
+
+    /**
+     * Deflates one block, with the tail of the previous block as dictionary.
+     */
+    private byte[] deflateBlock(byte[] block, int length, byte[] previous, int previousLength, boolean last) {
+        Deflater deflater = DeflaterPool.shared().acquire(level, true);
+        try {
+            if (previous != null) {
+                int dictionaryLength = Math.min(DICTIONARY_SIZE, previousLength);
+                deflater.setDictionary(previous, previousLength - dictionaryLength, dictionaryLength);
+            }
+            deflater.setInput(block, 0, length);
+            byte[] out = new byte[Math.max(64, length / 2)];
+            int size = 0;
+            if (last) {
+                deflater.finish();
+            }
+            while (true) {
+                if (size == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                int produced = last
+                        ? deflater.deflate(out, size, out.length - size)
+                        : deflater.deflate(out, size, out.length - size, Deflater.SYNC_FLUSH);
+                size += produced;
+                // A sync flush is complete once it leaves room in the
+                // output; the final block once the deflater says so.
+                if (last ? deflater.finished() : size < out.length && deflater.needsInput()) {
+                    break;
+                }
+            }
+            return size == out.length ? out : Arrays.copyOf(out, size);
+        } finally {
+            DeflaterPool.shared().release(deflater, level, true);
+        }
+    }
+
+    /**
+     * A block read from the source, with the block before it as dictionary.
+     */
+    private static final class Block {
+        final byte[] data;
+        final int length;
+        final byte[] previous;
+        final int previousLength;
+        final boolean last;
+
+        Block(byte[] data, int length, Block previous, boolean last) {
+            this.data = data;
+            this.length = length;
+            this.previous = previous != null ? previous.data : null;
+            this.previousLength = previous != null ? previous.length : 0;
+            this.last = last;
+        }
+    }
+
+    private final class ParallelGzipChannel implements AwaitableChannel {
+
+        private final ReadableByteChannel source;
+        private final ArrayDeque<CompletableFuture<byte[]>> inFlight = new ArrayDeque<>();
+        // Only touched by the read tasks, which run one after another.
+        private final CRC32 crc = new CRC32();
+        private long totalIn;
+
+        private CompletableFuture<Block> lastRead;
+        // Set by the read task that reaches the end of the source.
+        private volatile boolean sourceDone;
+        private boolean trailerQueued;
+        private volatile boolean open = true;
+
+        private ByteBuffer current = ByteBuffer.wrap(GZIP_HEADER);
+
+        ParallelGzipChannel(ReadableByteChannel source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            int start = dst.position();
+            while (dst.hasRemaining()) {
+                if (current.hasRemaining()) {
+                    int count = Math.min(dst.remaining(), current.remaining());
+                    int oldLimit = current.limit();
+                    current.limit(current.position() + count);
+                    dst.put(current);
+                    current.limit(oldLimit);
+                    continue;
+                }
+                submitBlocks();
+                CompletableFuture<byte[]> next = inFlight.peek();
+                if (next != null) {
+                    if (!next.isDone() && dst.position() > start) {
+                        break;
+                    }
+                    current = ByteBuffer.wrap(join(inFlight.poll()));
+                } else if (!trailerQueued) {
+                    current = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+                    current.putInt((int) crc.getValue()).putInt((int) totalIn).flip();
+                    trailerQueued = true;
+                } else {
+                    break;
+                }
+            }
+            int produced = dst.position() - start;
+            return produced == 0 && trailerQueued && !current.hasRemaining() ? -1 : produced;
+        }
+
+        @Override
+        public CompletionStage<?> whenReadable() throws IOException {
+            if (current.hasRemaining() || trailerQueued) {
+                return null;
+            }
+            submitBlocks();
+            CompletableFuture<byte[]> next = inFlight.peek();
+            return next == null || next.isDone() ? null : next;
+        }
+
+        /**
+         * Schedules blocks until the window of blocks in flight is full or
+         * the source is known to be exhausted. Each block is read by a task
+         * chained on the read of the block before it, then deflated; nothing
+         * is read here, so the event loop can call this. Blocks scheduled
+         * before the end turned up come out empty.
+         */
+        private void submitBlocks() {
+            while (!sourceDone && inFlight.size() < maxInFlight) {
+                lastRead = lastRead == null
+                        ? CompletableFuture.supplyAsync(() -> readBlock(null), pool)
+                        : lastRead.thenApplyAsync(this::readBlock, pool);
+                inFlight.add(lastRead.thenApplyAsync(block -> block == null ? new byte[0]
+                        : deflateBlock(block.data, block.length, block.previous, block.previousLength, block.last),
+                        pool));
+            }
+        }
+
+        /**
+         * Reads the block after the given one, or returns null past the end.
+         */
+        private Block readBlock(Block previous) {
+            if (sourceDone || !open) {
+                return null;
+            }
+            byte[] data = new byte[blockSize];
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            try {
+                while (buffer.hasRemaining()) {
+                    if (source.read(buffer) == -1) {
+                        sourceDone = true;
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                sourceDone = true;
+                throw new UncheckedIOException(e);
+            }
+            int length = buffer.position();
+            crc.update(data, 0, length);
+            totalIn += length;
+            return new Block(data, length, previous, sourceDone);
+        }
+
+        private byte[] join(CompletableFuture<byte[]> block) throws IOException {
+            try {
+                return block.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                throw new IOException("Block compression failed", e.getCause());
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            open = false;
+            for (CompletableFuture<byte[]> task : inFlight) {
+                task.cancel(false);
+            }
+            inFlight.clear();
+            source.close();
+        }
+    }
+
+}
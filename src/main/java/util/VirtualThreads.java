@@ -0,0 +1,51 @@
+package util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads without compiling against them. The server
+ * still builds for Java 17, so the JDK 21 factory is looked up reflectively
+ * and is only available when the running JVM has it.
+ */
+public final class VirtualThreads {
+
+    private static final Method NEW_PER_TASK_EXECUTOR = lookup();
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Returns whether the running JVM supports virtual threads.
+     */
+    public static boolean isSupported() {
+        return NEW_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Returns an executor that starts a new virtual thread for each task.
+     *
+     * @throws UnsupportedOperationException if the JVM is older than 21
+     */
+    public static ExecutorService newPerTaskExecutor() {
+        if (NEW_PER_TASK_EXECUTOR == null) {
+            throw new UnsupportedOperationException(
+                    "Virtual threads need Java 21 or later, running on " + System.getProperty("java.version"));
+        }
+        try {
+            return (ExecutorService) NEW_PER_TASK_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Cannot create a virtual thread executor", e);
+        }
+    }
+
+    private static Method lookup() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+import org.junit.jupiter.api.*;
+
+import server.AdmissionControl;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdmissionControlTest {
+
+    private ServerSocketChannel listener;
+    private ExecutorService workers;
+    private final List<Socket> clients = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        listener = ServerSocketChannel.open().bind(new InetSocketAddress("localhost", 0));
+        workers = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        for (Socket client : clients) {
+            client.close();
+        }
+        listener.close();
+        workers.shutdownNow();
+    }
+
+    @Test
+    public void testFullQueueIsRejectedWith503() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch handled = new CountDownLatch(2);
+        AdmissionControl admission = AdmissionControl.fixed(workers, 1, 1, answering(release, handled));
+
+        admission.submit(accept());
+        admission.submit(accept());
+        admission.submit(accept());
+
+        String rejection = readAll(clients.get(2));
+        assertTrue(rejection.startsWith("HTTP/1.1 503 Service Unavailable\r\n"), rejection);
+        assertTrue(rejection.contains("Retry-After: 1\r\n"), rejection);
+        assertTrue(rejection.contains("Connection: close\r\n"), rejection);
+        assertEquals(1, admission.getQueueDepth());
+        assertEquals(1, admission.getActive());
+        assertEquals(1, admission.getRejected());
+
+        release.countDown();
+        assertTrue(handled.await(5, TimeUnit.SECONDS));
+        assertEquals("handled", readAll(clients.get(0)));
+        assertEquals("handled", readAll(clients.get(1)));
+        assertEquals(2, admission.getAdmitted());
+        assertEquals(0, admission.getQueueDepth());
+    }
+
+    @Test
+    public void testCoDelShedsConnectionsThatWaitedTooLong() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch handled = new CountDownLatch(1);
+        AdmissionControl admission = AdmissionControl.codel(workers, 1, 10, 5, 20, answering(release, handled));
+
+        admission.submit(accept());
+        admission.submit(accept());
+        admission.submit(accept());
+        Thread.sleep(100);
+
+        // The queue has stood non-empty for longer than the interval, so
+        // both queued connections have waited past the target.
+        release.countDown();
+        assertTrue(handled.await(5, TimeUnit.SECONDS));
+        assertEquals("handled", readAll(clients.get(0)));
+        assertTrue(readAll(clients.get(1)).startsWith("HTTP/1.1 503"));
+        assertTrue(readAll(clients.get(2)).startsWith("HTTP/1.1 503"));
+        assertEquals(2, admission.getShed());
+        assertEquals(0, admission.getRejected());
+    }
+
+    @Test
+    public void testRefusedTaskGivesBackItsSlot() throws Exception {
+        ExecutorService stopped = Executors.newSingleThreadExecutor();
+        stopped.shutdown();
+        AdmissionControl admission = AdmissionControl.fixed(stopped, 1, 1,
+                answering(new CountDownLatch(0), new CountDownLatch(1)));
+
+        admission.submit(accept());
+        admission.submit(accept());
+
+        assertTrue(readAll(clients.get(0)).startsWith("HTTP/1.1 503"));
+        assertTrue(readAll(clients.get(1)).startsWith("HTTP/1.1 503"));
+        assertEquals(0, admission.getActive());
+        assertEquals(0, admission.getQueueDepth());
+        assertEquals(0, admission.getAdmitted());
+        assertEquals(2, admission.getRejected());
+    }
+
+    private SocketChannel accept() throws IOException {
+        Socket client = new Socket("localhost", listener.socket().getLocalPort());
+        client.setSoTimeout(5000);
+        clients.add(client);
+        return listener.accept();
+    }
+
+    private static Consumer<SocketChannel> answering(CountDownLatch release, CountDownLatch handled) {
+        return channel -> {
+            try (channel) {
+                release.await();
+                channel.write(ByteBuffer.wrap("handled".getBytes(StandardCharsets.US_ASCII)));
+            } catch (IOException | InterruptedException ignored) {
+            } finally {
+                handled.countDown();
+            }
+        };
+    }
+
+    private static String readAll(Socket client) throws IOException {
+        return new String(client.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+    }
+}
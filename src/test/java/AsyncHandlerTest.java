@@ -0,0 +1,200 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import handlers.AsyncHTTPHandler;
+import handlers.HTTPHandler;
+import http.ConnectionLimits;
+import http.HTTPHeaders;
+import http.HTTPRequest;
+import http.HTTPResponse;
+import http.Router;
+import main.Main;
+import server.NIOServer;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncHandlerTest {
+
+    private static ScheduledExecutorService scheduler;
+    private static final CopyOnWriteArrayList<CompletableFuture<HTTPResponse>> abandoned =
+            new CopyOnWriteArrayList<>();
+    private static NIOServer nioServer;
+    private static Thread acceptor;
+
+    @BeforeAll
+    public static void startServer(@TempDir Path tempDir) throws IOException {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        Router router = Main.createRouter(tempDir.toString());
+        // /delay/{millis}/{text} answers with text after the given delay.
+        router.addRoute("GET", "/delay/", (AsyncHTTPHandler) request -> {
+            String[] parts = request.getPath().split("/");
+            CompletableFuture<HTTPResponse> future = new CompletableFuture<>();
+            scheduler.schedule(() -> future.complete(text(request, parts[3])), Long.parseLong(parts[2]),
+                    TimeUnit.MILLISECONDS);
+            return future;
+        });
+        // Reads the request body only later, on another thread.
+        router.addRoute("POST", "/later", (AsyncHTTPHandler) request -> {
+            CompletableFuture<HTTPResponse> future = new CompletableFuture<>();
+            scheduler.schedule(() -> future.complete(text(request,
+                    new String(request.getBody(), StandardCharsets.UTF_8))), 100, TimeUnit.MILLISECONDS);
+            return future;
+        });
+        router.addRoute("GET", "/never", (AsyncHTTPHandler) request -> {
+            CompletableFuture<HTTPResponse> future = new CompletableFuture<>();
+            abandoned.add(future);
+            return future;
+        });
+        router.addRoute("GET", "/fail", (AsyncHTTPHandler) request -> CompletableFuture
+                .failedFuture(new IllegalStateException("backend down")));
+
+        nioServer = new NIOServer(0, router, 1, new ConnectionLimits(30_000, 10_000, 30_000, 300, 0));
+        nioServer.start();
+        acceptor = new Thread(() -> {
+            try {
+                nioServer.acceptLoop();
+            } catch (IOException ignored) {
+            }
+        });
+        acceptor.start();
+    }
+
+    @AfterAll
+    public static void stopServer() throws InterruptedException {
+        nioServer.stop();
+        acceptor.join(1000);
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testPipelinedResponsesKeepRequestOrder() throws IOException {
+        try (Socket socket = new Socket("localhost", nioServer.getPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            // The first response completes last and the sync one in the
+            // middle is ready at once; all wait for the first.
+            out.write(("GET /delay/300/first HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /echo/second HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /delay/10/third HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes());
+            out.flush();
+
+            assertEquals("first", readBody(in));
+            assertEquals("second", readBody(in));
+            assertEquals("third", readBody(in));
+        }
+    }
+
+    @Test
+    public void testLateBodyReadsSeeTheirOwnRequest() throws Exception {
+        try (Socket socket = new Socket("localhost", nioServer.getPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            // Both bodies are read after the read buffer has moved past them.
+            out.write(("POST /later HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n\r\nalpha"
+                    + "POST /later HTTP/1.1\r\nHost: localhost\r\nContent-Length: 4\r\n\r\nbeta"
+                    + "GET /echo/gamma HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes());
+            out.flush();
+            // Arrives before the bodies are read, into the same buffer space.
+            Thread.sleep(30);
+            out.write(("GET /echo/delta HTTP/1.1\r\nHost: localhost\r\nUser-Agent: " + "x".repeat(200)
+                    + "\r\n\r\n").getBytes());
+            out.flush();
+
+            assertEquals("alpha", readBody(in));
+            assertEquals("beta", readBody(in));
+            assertEquals("gamma", readBody(in));
+            assertEquals("delta", readBody(in));
+        }
+    }
+
+    @Test
+    public void testDeadlineCancelsPendingFuture() throws IOException {
+        try (Socket socket = new Socket("localhost", nioServer.getPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            out.write("GET /never HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes());
+            out.flush();
+            String head = readHead(in);
+            assertTrue(head.startsWith("HTTP/1.1 503 Service Unavailable\r\n"), head);
+            assertTrue(abandoned.get(abandoned.size() - 1).isCancelled());
+
+            // The connection stays usable after the timeout.
+            out.write("GET /delay/0/again HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes());
+            out.flush();
+            assertEquals("again", readBody(in));
+        }
+    }
+
+    @Test
+    public void testFailedFutureIsAnsweredWith500() throws IOException {
+        try (Socket socket = new Socket("localhost", nioServer.getPort())) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write("GET /fail HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes());
+            String head = readHead(socket.getInputStream());
+            assertTrue(head.startsWith("HTTP/1.1 500 Internal Server Error\r\n"), head);
+        }
+    }
+
+    @Test
+    public void testAdaptedSyncHandler() throws Exception {
+        HTTPHandler sync = request -> text(request, "sync");
+        AsyncHTTPHandler adapted = AsyncHTTPHandler.adapt(sync);
+        HTTPRequest request = new HTTPRequest("GET", "/", "HTTP/1.1", new byte[0], new HTTPHeaders());
+
+        CompletableFuture<HTTPResponse> future = adapted.handleAsync(request).toCompletableFuture();
+        assertTrue(future.isDone());
+        assertEquals("sync", new String(future.get().getBody(), StandardCharsets.UTF_8));
+        assertSame(adapted, AsyncHTTPHandler.adapt(adapted));
+
+        AsyncHTTPHandler throwing = AsyncHTTPHandler.adapt(r -> {
+            throw new IllegalStateException("boom");
+        });
+        assertTrue(throwing.handleAsync(request).toCompletableFuture().isCompletedExceptionally());
+        assertEquals(500, throwing.handle(request).getStatusCode());
+    }
+
+    private static HTTPResponse text(HTTPRequest request, String text) {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        HTTPHeaders headers = new HTTPHeaders();
+        headers.set("Content-Type", "text/plain");
+        headers.set("Content-Length", String.valueOf(body.length));
+        return new HTTPResponse(request.getVersion(), 200, "OK", headers, body);
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        String head = readHead(in);
+        assertTrue(head.startsWith("HTTP/1.1 200 OK\r\n"), head);
+        int start = head.indexOf("Content-Length: ") + "Content-Length: ".length();
+        int length = Integer.parseInt(head.substring(start, head.indexOf("\r\n", start)));
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    private static String readHead(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+        while (!head.toString().endsWith("\r\n\r\n")) {
+            int b = in.read();
+            if (b == -1) {
+                fail("Connection closed in response head: " + head);
+            }
+            head.append((char) b);
+        }
+        return head.toString();
+    }
+}
@@ -0,0 +1,283 @@
+import org.junit.jupiter.api.Test;
+
+import http.AcceptEncoding;
+import http.AwaitableChannel;
+import http.ContentCoding;
+import http.ResponseBody;
+import util.CompressedBody;
+import util.CompressionPolicy;
+import util.CompressionUtils;
+import util.DeflaterPool;
+import util.DeflatingChannel;
+import util.ParallelGzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressionTest {
+
+    private static final List<ContentCoding> SUPPORTED = List.of(ContentCoding.GZIP, ContentCoding.DEFLATE);
+
+    @Test
+    public void testNegotiationHonoursQualityValues() {
+        assertEquals(ContentCoding.IDENTITY, AcceptEncoding.negotiate(null, SUPPORTED));
+        assertEquals(ContentCoding.GZIP, AcceptEncoding.negotiate("deflate, gzip", SUPPORTED));
+        assertEquals(ContentCoding.DEFLATE, AcceptEncoding.negotiate("gzip;q=0.5, deflate", SUPPORTED));
+        assertEquals(ContentCoding.DEFLATE,
+                AcceptEncoding.negotiate("GZIP; Q=0, deflate;q=0.1, identity;q=0", SUPPORTED));
+        assertEquals(ContentCoding.IDENTITY, AcceptEncoding.negotiate("deflate;q=0.1", SUPPORTED));
+        assertEquals(ContentCoding.IDENTITY, AcceptEncoding.negotiate("gzip;q=0.5, identity", SUPPORTED));
+        assertEquals(ContentCoding.IDENTITY, AcceptEncoding.negotiate("br, zstd", SUPPORTED));
+        assertEquals(ContentCoding.GZIP, AcceptEncoding.negotiate("*", SUPPORTED));
+        assertEquals(ContentCoding.DEFLATE, AcceptEncoding.negotiate("gzip;q=0, *;q=0.3", SUPPORTED));
+        assertEquals(ContentCoding.GZIP, AcceptEncoding.negotiate("x-gzip", SUPPORTED));
+        assertEquals(ContentCoding.IDENTITY, AcceptEncoding.negotiate("", SUPPORTED));
+        assertFalse(AcceptEncoding.accepts("gzip;q=0.000", ContentCoding.GZIP));
+        assertTrue(AcceptEncoding.accepts("deflate, gzip;q=0.001", ContentCoding.GZIP));
+    }
+
+    @Test
+    public void testCompressedOutputRoundTrips() throws IOException {
+        byte[] data = "round trip ".repeat(2000).getBytes(StandardCharsets.UTF_8);
+
+        byte[] gzip = CompressionUtils.compress(data, ContentCoding.GZIP, 1);
+        assertArrayEquals(data, new GZIPInputStream(new ByteArrayInputStream(gzip)).readAllBytes());
+
+        byte[] deflate = CompressionUtils.compress(data, ContentCoding.DEFLATE, 9);
+        assertArrayEquals(data, new InflaterInputStream(new ByteArrayInputStream(deflate)).readAllBytes());
+
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        CompressionUtils.compress(new ByteArrayInputStream(data), streamed, ContentCoding.GZIP, 6);
+        assertArrayEquals(data,
+                new GZIPInputStream(new ByteArrayInputStream(streamed.toByteArray())).readAllBytes());
+    }
+
+    @Test
+    public void testDeflatingChannelStreamsThroughSmallBuffers() throws IOException {
+        long size = 8L * 1024 * 1024;
+        DeflatingChannel gzip = new DeflatingChannel(new GeneratedChannel(size), ContentCoding.GZIP, 1);
+        InputStream in = new GZIPInputStream(Channels.newInputStream(new ReadableByteChannel() {
+            // Hands the deflating channel 100-byte destinations, so header,
+            // data and trailer all straddle reads.
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                ByteBuffer small = ByteBuffer.allocate(Math.min(100, dst.remaining()));
+                int read = gzip.read(small);
+                small.flip();
+                dst.put(small);
+                return read;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return gzip.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                gzip.close();
+            }
+        }));
+
+        GeneratedChannel expected = new GeneratedChannel(size);
+        byte[] actual = new byte[64 * 1024];
+        ByteBuffer reference = ByteBuffer.allocate(actual.length);
+        long total = 0;
+        int read;
+        while ((read = in.readNBytes(actual, 0, actual.length)) > 0) {
+            reference.clear().limit(read);
+            expected.read(reference);
+            assertArrayEquals(Arrays.copyOf(reference.array(), read), Arrays.copyOf(actual, read));
+            total += read;
+        }
+        assertEquals(size, total);
+        in.close();
+    }
+
+    @Test
+    public void testCompressedBodyIsChunkedDeflate() throws IOException {
+        byte[] data = "streamed ".repeat(5000).getBytes(StandardCharsets.UTF_8);
+        CompressedBody body = new CompressedBody(ResponseBody.of(data), ContentCoding.DEFLATE, 6);
+
+        assertEquals(-1, body.length());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        assertArrayEquals(data, new InflaterInputStream(new ByteArrayInputStream(out.toByteArray())).readAllBytes());
+    }
+
+    @Test
+    public void testParallelGzipProducesOneValidStream() throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelGzip parallel = new ParallelGzip(pool, 6, 16 * 1024);
+            String[] words = { "request", "response", "header", "GET", "/files/", "200", "keep-alive",
+                    "gzip", "connection", "client", "server", "bytes" };
+            Random random = new Random(42);
+            StringBuilder text = new StringBuilder();
+            while (text.length() < 400_000) {
+                text.append(words[random.nextInt(words.length)]).append(random.nextInt(1000))
+                        .append(random.nextInt(8) == 0 ? '\n' : ' ');
+            }
+            byte[] data = text.toString().getBytes(StandardCharsets.UTF_8);
+
+            for (byte[] input : new byte[][] { data, Arrays.copyOf(data, 3 * 16 * 1024), new byte[0] }) {
+                byte[] compressed = drain(parallel.compress(ResponseBody.of(input).openChannel()));
+                assertArrayEquals(input, new GZIPInputStream(new ByteArrayInputStream(compressed)).readAllBytes());
+            }
+
+            // Priming each block with the previous one keeps the ratio close
+            // to that of a single stream.
+            byte[] serial = CompressionUtils.compress(data, ContentCoding.GZIP, 6);
+            byte[] blocks = drain(parallel.compress(ResponseBody.of(data).openChannel()));
+            assertTrue(blocks.length < serial.length * 1.02,
+                    "parallel " + blocks.length + " bytes vs serial " + serial.length);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelGzipReadsWithoutWaitingOnceReady() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(1);
+        CountDownLatch busy = new CountDownLatch(1);
+        try {
+            // The only worker is busy, so no block can be compressed yet.
+            pool.execute(() -> {
+                try {
+                    busy.await();
+                } catch (InterruptedException ignored) {
+                }
+            });
+            byte[] data = "parallel gzip ".repeat(5000).getBytes(StandardCharsets.US_ASCII);
+            ReadableByteChannel source = ResponseBody.of(data).openChannel();
+            AtomicInteger sourceReads = new AtomicInteger();
+            AwaitableChannel channel = new ParallelGzip(pool, 6, 16 * 1024).compress(new ReadableByteChannel() {
+                @Override
+                public int read(ByteBuffer dst) throws IOException {
+                    sourceReads.incrementAndGet();
+                    return source.read(dst);
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return source.isOpen();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    source.close();
+                }
+            });
+
+            assertNull(channel.whenReadable(), "The gzip header is ready at once");
+            ByteBuffer buffer = ByteBuffer.allocate(data.length);
+            assertEquals(10, channel.read(buffer), "A read returns what is ready instead of waiting");
+            CompletionStage<?> ready = channel.whenReadable();
+            assertNotNull(ready);
+            assertFalse(ready.toCompletableFuture().isDone());
+            assertEquals(0, sourceReads.get(), "The source is read on the pool, not by the caller");
+
+            busy.countDown();
+            ready.toCompletableFuture().get(5, TimeUnit.SECONDS);
+            assertNull(channel.whenReadable());
+
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            compressed.write(buffer.array(), 0, buffer.position());
+            compressed.write(drain(channel));
+            assertArrayEquals(data,
+                    new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())).readAllBytes());
+        } finally {
+            busy.countDown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testDeflatersAreReused() {
+        DeflaterPool pool = new DeflaterPool(1);
+        Deflater first = pool.acquire(6, true);
+        pool.release(first, 6, true);
+
+        assertSame(first, pool.acquire(6, true));
+        assertNotSame(first, pool.acquire(6, false), "Wrapping is part of the pool key");
+        assertEquals(2, pool.getCreated());
+        assertEquals(1, pool.getReused());
+    }
+
+    @Test
+    public void testPolicySkipsSmallAndCompressedBodies() {
+        CompressionPolicy policy = new CompressionPolicy(6, 100);
+
+        assertFalse(policy.isCompressible("text/plain", 99));
+        assertTrue(policy.isCompressible("text/plain", 100));
+        assertTrue(policy.isCompressible("text/html; charset=utf-8", -1));
+        assertFalse(policy.isCompressible("image/png", 5000));
+        assertFalse(policy.isCompressible("video/mp4", 5000));
+        assertTrue(policy.isCompressible("image/svg+xml", 5000));
+        assertFalse(policy.isCompressibleFile("photo.JPG", 5000));
+        assertFalse(policy.isCompressibleFile("bundle.tar.gz", 5000));
+        assertTrue(policy.isCompressibleFile("style.css", 5000));
+        assertTrue(policy.isCompressibleFile("README", 5000));
+        assertFalse(new CompressionPolicy(0, 0).isCompressible("text/plain", 5000));
+    }
+
+    private static byte[] drain(ReadableByteChannel channel) throws IOException {
+        try (InputStream in = Channels.newInputStream(channel)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Produces size bytes of mildly repetitive text without holding them.
+     */
+    private static class GeneratedChannel implements ReadableByteChannel {
+        private final long size;
+        private long position;
+
+        GeneratedChannel(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (position == size) {
+                return -1;
+            }
+            int count = 0;
+            while (dst.hasRemaining() && position < size) {
+                dst.put((byte) ('a' + (position * 31 / 7) % 26));
+                position++;
+                count++;
+            }
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
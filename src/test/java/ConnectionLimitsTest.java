@@ -0,0 +1,216 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import http.ConnectionLimits;
+import main.Main;
+import server.NIOServer;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConnectionLimitsTest {
+
+    private static final int BLOCKING_PORT = 1213;
+
+    private static ExecutorService serverExecutor;
+    private static NIOServer nioServer;
+    private static Thread acceptor;
+
+    @BeforeAll
+    public static void startServers(@TempDir Path tempDir) throws IOException {
+        serverExecutor = Executors.newSingleThreadExecutor();
+        serverExecutor.submit(() -> Main.main(new String[] { tempDir.toString(), String.valueOf(BLOCKING_PORT),
+                "--idle-timeout-ms=300", "--header-timeout-ms=300", "--max-requests-per-connection=2" }));
+
+        nioServer = new NIOServer(0, Main.createRouter(tempDir.toString()), 1,
+                new ConnectionLimits(300, 300, 300, 2));
+        nioServer.start();
+        acceptor = new Thread(() -> {
+            try {
+                nioServer.acceptLoop();
+            } catch (IOException ignored) {
+            }
+        });
+        acceptor.start();
+
+        try {
+            Thread.sleep(500);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    @AfterAll
+    public static void stopServers() throws InterruptedException {
+        Main.stopServer();
+        serverExecutor.shutdownNow();
+        nioServer.stop();
+        acceptor.join(1000);
+    }
+
+    @Test
+    public void testKeepAliveHeaderAndMaxRequests() throws IOException {
+        for (int port : new int[] { BLOCKING_PORT, nioServer.getPort() }) {
+            try (Socket socket = new Socket("localhost", port)) {
+                socket.setSoTimeout(5000);
+                OutputStream out = socket.getOutputStream();
+                InputStream in = socket.getInputStream();
+
+                out.write("GET /echo/one HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes());
+                out.flush();
+                String head = readHead(in);
+                assertTrue(head.contains("Connection: keep-alive\r\n"), head);
+                assertTrue(head.contains("Keep-Alive: timeout=1, max=1\r\n"), head);
+                in.readNBytes(3);
+
+                out.write("GET /echo/two HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes());
+                out.flush();
+                head = readHead(in);
+                assertTrue(head.contains("Connection: close\r\n"), head);
+                assertFalse(head.contains("Keep-Alive:"), head);
+                assertEquals("two", new String(in.readNBytes(3), StandardCharsets.US_ASCII));
+                assertEquals(-1, in.read());
+            }
+        }
+    }
+
+    @Test
+    public void testIdleConnectionIsClosed() throws IOException {
+        for (int port : new int[] { BLOCKING_PORT, nioServer.getPort() }) {
+            try (Socket socket = new Socket("localhost", port)) {
+                socket.setSoTimeout(5000);
+                OutputStream out = socket.getOutputStream();
+                InputStream in = socket.getInputStream();
+
+                out.write("GET /echo/hi HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes());
+                out.flush();
+                assertTrue(readHead(in).startsWith("HTTP/1.1 200"));
+                in.readNBytes(2);
+
+                long start = System.nanoTime();
+                assertEquals(-1, in.read());
+                assertTrue(System.nanoTime() - start < 4_000_000_000L);
+            }
+        }
+    }
+
+    @Test
+    public void testSlowHeadIsAnsweredWith408() throws IOException {
+        for (int port : new int[] { BLOCKING_PORT, nioServer.getPort() }) {
+            try (Socket socket = new Socket("localhost", port)) {
+                socket.setSoTimeout(5000);
+                OutputStream out = socket.getOutputStream();
+                InputStream in = socket.getInputStream();
+
+                out.write("GET /echo/slow HTTP/1.1\r\nHo".getBytes());
+                out.flush();
+                String head = readHead(in);
+                assertTrue(head.startsWith("HTTP/1.1 408 Request Timeout\r\n"), head);
+                assertTrue(head.contains("Connection: close\r\n"), head);
+                assertEquals(-1, in.read());
+            }
+        }
+    }
+
+    @Test
+    public void testTimeoutIsAnsweredInTheRequestVersion() throws IOException {
+        for (int port : new int[] { BLOCKING_PORT, nioServer.getPort() }) {
+            // The version of the stalled request, once its line is in.
+            try (Socket socket = new Socket("localhost", port)) {
+                socket.setSoTimeout(5000);
+                socket.getOutputStream().write("GET /echo/slow HTTP/1.0\r\nHo".getBytes());
+                String head = readHead(socket.getInputStream());
+                assertTrue(head.startsWith("HTTP/1.0 408 Request Timeout\r\n"), head);
+                assertTrue(head.contains("Connection: close\r\n"), head);
+            }
+
+            // Else the version of the last request on the connection.
+            try (Socket socket = new Socket("localhost", port)) {
+                socket.setSoTimeout(5000);
+                OutputStream out = socket.getOutputStream();
+                InputStream in = socket.getInputStream();
+                out.write("GET /echo/hi HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes());
+                assertTrue(readHead(in).startsWith("HTTP/1.1 200"));
+                in.readNBytes(2);
+                out.write("GET /ec".getBytes());
+                String head = readHead(in);
+                assertTrue(head.startsWith("HTTP/1.1 408 Request Timeout\r\n"), head);
+                assertTrue(head.contains("Connection: close\r\n"), head);
+            }
+
+            // Else HTTP/1.0.
+            try (Socket socket = new Socket("localhost", port)) {
+                socket.setSoTimeout(5000);
+                socket.getOutputStream().write("GET /ec".getBytes());
+                String head = readHead(socket.getInputStream());
+                assertTrue(head.startsWith("HTTP/1.0 408 Request Timeout\r\n"), head);
+                assertTrue(head.contains("Connection: close\r\n"), head);
+            }
+        }
+    }
+
+    @Test
+    public void testMalformedRequestIsAnsweredWith400() throws IOException {
+        for (int port : new int[] { BLOCKING_PORT, nioServer.getPort() }) {
+            String[][] cases = {
+                    { "GET /echo/x HTTP/1.1\r\nHost: localhost\r\nContent-Length: abc\r\n\r\n", "HTTP/1.1" },
+                    { "NONSENSE\r\n\r\n", "HTTP/1.0" } };
+            for (String[] malformed : cases) {
+                try (Socket socket = new Socket("localhost", port)) {
+                    socket.setSoTimeout(5000);
+                    socket.getOutputStream().write(malformed[0].getBytes());
+                    InputStream in = socket.getInputStream();
+                    String head = readHead(in);
+                    assertTrue(head.startsWith(malformed[1] + " 400 Bad Request\r\n"), port + ": " + head);
+                    assertTrue(head.contains("Connection: close\r\n"), head);
+                    assertEquals(-1, in.read());
+                }
+            }
+
+            // Requests before the malformed one are still answered.
+            try (Socket socket = new Socket("localhost", port)) {
+                socket.setSoTimeout(5000);
+                socket.getOutputStream().write(("GET /echo/ok HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                        + "NONSENSE\r\n\r\n").getBytes());
+                InputStream in = socket.getInputStream();
+                assertTrue(readHead(in).startsWith("HTTP/1.1 200 OK\r\n"));
+                assertEquals("ok", new String(in.readNBytes(2), StandardCharsets.US_ASCII));
+                assertTrue(readHead(in).startsWith("HTTP/1.1 400 Bad Request\r\n"));
+                assertEquals(-1, in.read());
+            }
+        }
+    }
+
+    @Test
+    public void testOversizedUploadIsAnsweredWith413() throws IOException {
+        for (String length : new String[] { "20000000", "5000000000" }) {
+            try (Socket socket = new Socket("localhost", nioServer.getPort())) {
+                socket.setSoTimeout(5000);
+                socket.getOutputStream().write(("POST /files/big HTTP/1.1\r\nHost: localhost\r\n"
+                        + "Content-Length: " + length + "\r\n\r\nfirst bytes").getBytes());
+                InputStream in = socket.getInputStream();
+                String head = readHead(in);
+                assertTrue(head.startsWith("HTTP/1.1 413 Content Too Large\r\n"), head);
+                assertTrue(head.contains("Connection: close\r\n"), head);
+                assertEquals(-1, in.read());
+            }
+        }
+    }
+
+    private static String readHead(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+        while (!head.toString().endsWith("\r\n\r\n")) {
+            int b = in.read();
+            if (b == -1) {
+                fail("Connection closed in response head: " + head);
+            }
+            head.append((char) b);
+        }
+        return head.toString();
+    }
+}
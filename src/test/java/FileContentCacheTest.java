@@ -0,0 +1,62 @@
+import org.junit.jupiter.api.Test;
+
+import util.FileContentCache;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileContentCacheTest {
+
+    private static final Path A = Paths.get("/a");
+    private static final Path B = Paths.get("/b");
+    private static final Path C = Paths.get("/c");
+
+    @Test
+    public void testHitRequiresMatchingMetadata() {
+        FileContentCache cache = new FileContentCache(100, 100);
+        cache.put(A, 1000, new byte[10]);
+
+        assertNotNull(cache.get(A, 1000, 10));
+        assertNull(cache.get(A, 2000, 10), "Changed mtime must miss");
+        assertNull(cache.get(A, 1000, 10), "Stale entry is dropped on mismatch");
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getCurrentBytes());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedWithinBudget() {
+        FileContentCache cache = new FileContentCache(30, 30);
+        cache.put(A, 1, new byte[10]);
+        cache.put(B, 1, new byte[10]);
+        cache.get(A, 1, 10);
+        cache.put(C, 1, new byte[15]);
+
+        assertNotNull(cache.get(A, 1, 10));
+        assertNull(cache.get(B, 1, 10));
+        assertNotNull(cache.get(C, 1, 15));
+        assertEquals(1, cache.getEvictions());
+        assertTrue(cache.getCurrentBytes() <= 30);
+    }
+
+    @Test
+    public void testOversizedEntriesAreNotCached() {
+        FileContentCache cache = new FileContentCache(100, 20);
+        cache.put(A, 1, new byte[21]);
+
+        assertFalse(cache.accepts(21));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void testInvalidate() {
+        FileContentCache cache = new FileContentCache(100);
+        cache.put(A, 1, new byte[5]);
+        cache.invalidate(A);
+
+        assertNull(cache.get(A, 1, 5));
+        assertEquals(0, cache.getCurrentBytes());
+    }
+}
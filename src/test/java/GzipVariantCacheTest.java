@@ -0,0 +1,66 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import http.ResponseBody;
+import util.GzipVariantCache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GzipVariantCacheTest {
+
+    @Test
+    public void testLargeVariantSpillsToDisk(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("big.txt");
+        Files.write(file, "spill me to disk".repeat(100).getBytes(StandardCharsets.UTF_8));
+        Path diskDir = tempDir.resolve("cache");
+        GzipVariantCache cache = new GzipVariantCache(64, diskDir);
+
+        ResponseBody first = cache.get(file, attributes(file), null);
+        ResponseBody second = cache.get(file, attributes(file), null);
+
+        assertEquals(1, cache.getCompressions());
+        assertEquals(1, cache.getDiskHits());
+        assertEquals("spill me to disk".repeat(100), HandlersTest.gunzip(first.toByteArray()));
+        assertArrayEquals(first.toByteArray(), second.toByteArray());
+    }
+
+    @Test
+    public void testNewVersionReplacesDiskEntry(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("page.txt");
+        Files.write(file, "version one".getBytes(StandardCharsets.UTF_8));
+        Path diskDir = tempDir.resolve("cache");
+        GzipVariantCache cache = new GzipVariantCache(1024, diskDir);
+        cache.get(file, attributes(file), null);
+
+        Files.write(file, "version two".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+        ResponseBody body = cache.get(file, attributes(file), null);
+
+        assertEquals("version two", HandlersTest.gunzip(body.toByteArray()));
+        assertEquals(2, cache.getCompressions());
+        try (Stream<Path> entries = Files.list(diskDir)) {
+            assertEquals(1, entries.count(), "Older variants are removed");
+        }
+    }
+
+    @Test
+    public void testTooLargeWithoutDiskReturnsNull(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("big.txt");
+        Files.write(file, new byte[4096]);
+        GzipVariantCache cache = new GzipVariantCache(64, null);
+
+        assertNull(cache.get(file, attributes(file), null));
+    }
+
+    private static BasicFileAttributes attributes(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class);
+    }
+}
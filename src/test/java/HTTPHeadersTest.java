@@ -0,0 +1,76 @@
+import org.junit.jupiter.api.Test;
+
+import http.BufferBody;
+import http.HTTPHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HTTPHeadersTest {
+
+    @Test
+    public void testLookupIgnoresCase() {
+        HTTPHeaders headers = new HTTPHeaders();
+        headers.add("content-length", "12");
+        headers.add("X-Trace-Id", "abc");
+
+        assertEquals("12", headers.get("Content-Length"));
+        assertEquals("12", headers.get("CONTENT-LENGTH"));
+        assertEquals("abc", headers.get("x-trace-id"));
+        assertNull(headers.get("Content-Type"));
+    }
+
+    @Test
+    public void testWellKnownNamesAreInterned() {
+        HTTPHeaders headers = new HTTPHeaders();
+        headers.add(new String("accept-encoding"), "gzip");
+
+        assertSame(HTTPHeaders.ACCEPT_ENCODING, headers.name(0));
+    }
+
+    @Test
+    public void testRepeatedHeaders() {
+        HTTPHeaders headers = new HTTPHeaders(1);
+        headers.add("Set-Cookie", "a=1");
+        headers.add("Vary", "Accept-Encoding");
+        headers.add("set-cookie", "b=2");
+
+        assertEquals("a=1", headers.get("Set-Cookie"));
+        assertEquals(List.of("a=1", "b=2"), headers.getAll("Set-Cookie"));
+        assertEquals(3, headers.size());
+
+        headers.set("Set-Cookie", "c=3");
+        assertEquals(List.of("c=3"), headers.getAll("Set-Cookie"));
+        assertEquals("Vary", headers.name(1));
+
+        headers.remove("SET-COOKIE");
+        assertEquals(1, headers.size());
+        assertTrue(headers.getAll("Set-Cookie").isEmpty());
+    }
+
+    @Test
+    public void testViewsAreDecodedLazily() {
+        byte[] head = "X-Trace-Id: abc\r\nUser-Agent: curl/8\r\n".getBytes(StandardCharsets.US_ASCII);
+        HTTPHeaders headers = new HTTPHeaders();
+        headers.addView(null, head, 0, 10, 12, 15);
+        headers.addView("User-Agent", head, 17, 27, 29, 35);
+        Arrays.fill(head, (byte) '?');
+
+        assertEquals("abc", headers.get("x-trace-id"));
+        assertEquals("X-Trace-Id", headers.name(0));
+        assertTrue(headers.valueEqualsIgnoreCase("User-Agent", "CURL/8"));
+        BufferBody body = new BufferBody();
+        assertTrue(headers.appendValueTo("user-agent", body));
+        assertEquals("curl/8", new String(body.toByteArray(), StandardCharsets.US_ASCII));
+
+        headers.set("User-Agent", "other");
+        assertEquals("other", headers.get("User-Agent"));
+
+        headers.clear();
+        assertEquals(0, headers.size());
+        assertNull(headers.get("X-Trace-Id"));
+    }
+}
@@ -2,11 +2,17 @@ import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
 
 import exceptions.HTTPParseException;
 import http.HTTPRequest;
 import http.HTTPRequestParser;
+import http.HTTPResponse;
 
 public class HTTPRequestParserTest {
 
@@ -45,6 +51,43 @@ public class HTTPRequestParserTest {
         assertEquals("abcde", new String(request.getBody(), StandardCharsets.UTF_8));
     }
 
+    @Test
+    void testParseInMemoryRequest() throws Exception {
+        byte[] input = ("POST /submit HTTP/1.1\r\n" +
+            "Host: example.com\r\n" +
+            "Transfer-Encoding: chunked\r\n" +
+            "\r\n" +
+            "3\r\nabc\r\n2\r\nde\r\n0\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+        HTTPRequestParser parser = new HTTPRequestParser(input);
+        HTTPRequest request = parser.nextRequest();
+
+        assertEquals("/submit", request.getPath());
+        assertEquals("example.com", request.getHeader("Host"));
+        assertEquals("abcde", new String(request.getBody(), StandardCharsets.US_ASCII));
+        assertNull(parser.nextRequest());
+    }
+
+    @Test
+    void testParseRequestsInPlace() throws Exception {
+        byte[] input = ("xxxx" +
+            "PUT /a HTTP/1.1\r\nContent-Length: 3\r\n\r\nabc" +
+            "GET /b HTTP/1.1\r\n\r\n" +
+            "GET /partial").getBytes(StandardCharsets.US_ASCII);
+        byte[] original = input.clone();
+        int length = input.length - "GET /partial".length() - 4;
+
+        HTTPRequestParser parser = new HTTPRequestParser(input, 4, length);
+        HTTPRequest first = parser.nextRequest();
+        assertEquals("/a", first.getPath());
+        assertEquals("abc", new String(first.getBody(), StandardCharsets.US_ASCII));
+        assertEquals("/b", parser.nextRequest().getPath());
+        assertNull(parser.nextRequest());
+
+        // The bytes around the range, and the range itself, are left alone.
+        assertArrayEquals(original, input);
+    }
+
     @Test
     void testNoHeadersNoBody() throws Exception {
         String input = 
@@ -81,6 +124,297 @@ public class HTTPRequestParserTest {
         assertNull(request);
     }
 
+    @Test
+    void testLoneLineFeedTerminators() throws Exception {
+        String input =
+            "GET /lf HTTP/1.1\n" +
+            "Host: example.com\n" +
+            "\n";
+
+        HTTPRequest request = parse(input);
+
+        assertEquals("/lf", request.getPath());
+        assertEquals("example.com", request.getHeader("Host"));
+    }
+
+    @Test
+    void testTerminatorsSplitAcrossReads() throws Exception {
+        String input =
+            "POST /split HTTP/1.1\r\n" +
+            "Host: example.com\r\n" +
+            "Content-Length: 3\r\n" +
+            "\r\n" +
+            "xyz";
+
+        HTTPRequestParser parser = new HTTPRequestParser(new OneByteInputStream(input));
+        HTTPRequest request = parser.nextRequest();
+
+        assertEquals("/split", request.getPath());
+        assertEquals("example.com", request.getHeader("Host"));
+        assertEquals("xyz", new String(request.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testConsecutiveRequestsShareBuffer() throws Exception {
+        String input =
+            "POST /first HTTP/1.1\r\n" +
+            "Content-Length: 2\r\n" +
+            "\r\n" +
+            "ab" +
+            "GET /second HTTP/1.0\r\n" +
+            "\r\n";
+
+        HTTPRequestParser parser = new HTTPRequestParser(toInputStream(input));
+        HTTPRequest first = parser.nextRequest();
+        assertEquals("ab", new String(first.getBody(), StandardCharsets.UTF_8));
+        HTTPRequest second = parser.nextRequest();
+
+        assertEquals("/second", second.getPath());
+        assertEquals("HTTP/1.0", second.getVersion());
+        assertNull(parser.nextRequest());
+    }
+
+    @Test
+    void testHeaderValuesAreTrimmed() throws Exception {
+        String input =
+            "GET / HTTP/1.1\r\n" +
+            "X-Custom:   spaced value \t\r\n" +
+            "\r\n";
+
+        HTTPRequest request = parse(input);
+
+        assertEquals("spaced value", request.getHeader("X-Custom"));
+    }
+
+    @Test
+    void testLineLengthLimit() {
+        String input = "GET /" + "a".repeat(200) + " HTTP/1.1\r\n\r\n";
+
+        assertThrows(HTTPParseException.class, () -> {
+            HTTPRequestParser parser = new HTTPRequestParser(toInputStream(input), 256, 100, 1024);
+            parser.nextRequest();
+        });
+    }
+
+    @Test
+    void testHeaderBlockLimit() {
+        StringBuilder input = new StringBuilder("GET / HTTP/1.1\r\n");
+        for (int i = 0; i < 50; i++) {
+            input.append("X-Header-").append(i).append(": value\r\n");
+        }
+        input.append("\r\n");
+
+        assertThrows(HTTPParseException.class, () -> {
+            HTTPRequestParser parser = new HTTPRequestParser(toInputStream(input.toString()), 256, 100, 512);
+            parser.nextRequest();
+        });
+    }
+
+    @Test
+    void testUnreadBodyIsSkipped() throws Exception {
+        String input =
+            "POST /ignored HTTP/1.1\r\n" +
+            "Content-Length: 5\r\n" +
+            "\r\n" +
+            "hello" +
+            "GET /next HTTP/1.1\r\n" +
+            "\r\n";
+
+        HTTPRequestParser parser = new HTTPRequestParser(toInputStream(input));
+        parser.nextRequest();
+        HTTPRequest next = parser.nextRequest();
+
+        assertEquals("/next", next.getPath());
+    }
+
+    @Test
+    void testChunkedBody() throws Exception {
+        String input =
+            "POST /upload HTTP/1.1\r\n" +
+            "Transfer-Encoding: chunked\r\n" +
+            "\r\n" +
+            "5\r\nhello\r\n" +
+            "1;ext=value\r\n \r\n" +
+            "5\r\nworld\r\n" +
+            "0\r\n" +
+            "X-Trailer: ignored\r\n" +
+            "\r\n" +
+            "GET /after HTTP/1.1\r\n" +
+            "\r\n";
+
+        HTTPRequestParser parser = new HTTPRequestParser(new OneByteInputStream(input));
+        HTTPRequest request = parser.nextRequest();
+
+        assertEquals("hello world", new String(request.getBody(), StandardCharsets.UTF_8));
+        assertEquals("/after", parser.nextRequest().getPath());
+    }
+
+    @Test
+    void testMalformedChunkSize() throws Exception {
+        String input =
+            "POST /upload HTTP/1.1\r\n" +
+            "Transfer-Encoding: chunked\r\n" +
+            "\r\n" +
+            "zz\r\nhello\r\n";
+
+        HTTPRequest request = parse(input);
+
+        assertThrows(UncheckedIOException.class, request::getBody);
+    }
+
+    @Test
+    void testBodyStreamIsIncremental() throws Exception {
+        byte[] payload = new byte[100000];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) (i * 31);
+        }
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        input.write(("PUT /big HTTP/1.1\r\nContent-Length: " + payload.length + "\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        input.write(payload);
+
+        HTTPRequestParser parser = new HTTPRequestParser(new ByteArrayInputStream(input.toByteArray()));
+        HTTPRequest request = parser.nextRequest();
+
+        InputStream body = request.getBodyStream();
+        byte[] first = body.readNBytes(10);
+        assertArrayEquals(Arrays.copyOf(payload, 10), first);
+        assertArrayEquals(Arrays.copyOfRange(payload, 10, payload.length), body.readAllBytes());
+        assertEquals(-1, body.read());
+    }
+
+    @Test
+    void testSingleByteBodyReads() throws Exception {
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        input.write("PUT /a HTTP/1.1\r\nContent-Length: 3\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        input.write(new byte[] { 'a', (byte) 0xFF, 'b' });
+        input.write("PUT /b HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n2\r\n".getBytes(StandardCharsets.US_ASCII));
+        input.write(new byte[] { (byte) 0x80, 'c' });
+        input.write("\r\n0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+
+        HTTPRequestParser parser = new HTTPRequestParser(new ByteArrayInputStream(input.toByteArray()));
+        InputStream body = parser.nextRequest().getBodyStream();
+        assertEquals('a', body.read());
+        assertEquals(0xFF, body.read());
+        assertEquals('b', body.read());
+        assertEquals(-1, body.read());
+
+        InputStream chunked = parser.nextRequest().getBodyStream();
+        assertEquals(0x80, chunked.read());
+        assertEquals('c', chunked.read());
+        assertEquals(-1, chunked.read());
+    }
+
+    @Test
+    void testBufferedBodyLimit() throws Exception {
+        String input =
+            "POST /big HTTP/1.1\r\n" +
+            "Content-Length: 100\r\n" +
+            "\r\n" +
+            "x".repeat(100);
+
+        HTTPRequestParser parser = new HTTPRequestParser(toInputStream(input));
+        parser.setMaxBufferedBodySize(50);
+        HTTPRequest request = parser.nextRequest();
+
+        assertThrows(UncheckedIOException.class, request::getBody);
+    }
+
+    @Test
+    public void testHasBufferedRequestLooksPastUnreadBody() throws Exception {
+        String input = "POST /a HTTP/1.1\r\nContent-Length: 4\r\n\r\nbody"
+                + "GET /b HTTP/1.1\r\nHost: x\r\n\r\n"
+                + "GET /c HTTP/1.1\r\n";
+        HTTPRequestParser parser = new HTTPRequestParser(
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII)));
+
+        assertNotNull(parser.nextRequest());
+        assertTrue(parser.hasBufferedRequest(), "Second request is complete behind the unread body");
+        assertEquals("/b", parser.nextRequest().getPath());
+        assertFalse(parser.hasBufferedRequest(), "Third request head is incomplete");
+    }
+
+    @Test
+    public void testHeaderNamesAreCaseInsensitive() throws Exception {
+        String input = "POST /upload HTTP/1.1\r\ncontent-length: 3\r\nACCEPT-ENCODING: gzip\r\n"
+                + "X-Tag: one\r\nx-tag: two\r\n\r\nabc";
+        HTTPRequest request = new HTTPRequestParser(
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII))).nextRequest();
+
+        assertEquals("3", request.getHeader("Content-Length"));
+        assertEquals("gzip", request.getHeader("Accept-Encoding"));
+        assertEquals(List.of("one", "two"), request.getHeaders().getAll("X-Tag"));
+        assertEquals("abc", new String(request.getBody(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testConflictingContentLengthIsRejected() {
+        String input = "POST /upload HTTP/1.1\r\nContent-Length: 3\r\nContent-Length: 4\r\n\r\nabcd";
+        HTTPRequestParser parser = new HTTPRequestParser(
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII)));
+
+        assertThrows(HTTPParseException.class, parser::nextRequest);
+    }
+
+    @Test
+    public void testRecyclingReusesRequestAndResponse() throws Exception {
+        String input = "POST /a HTTP/1.1\r\nX-Tag: one\r\nContent-Length: 4\r\n\r\nbody"
+                + "GET /b HTTP/1.1\r\nUser-Agent: curl\r\nConnection: Close\r\n\r\n";
+        HTTPRequestParser parser = new HTTPRequestParser(
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII)));
+        parser.setRecycling(true);
+
+        HTTPRequest first = parser.nextRequest();
+        assertEquals("one", first.getHeader("x-tag"));
+        HTTPResponse firstResponse = first.newResponse(200, "OK");
+        firstResponse.getHeaders().set("X-Reply", "1");
+        firstResponse.bodyBuffer().append("hello");
+
+        HTTPRequest second = parser.nextRequest();
+        assertSame(first, second);
+        assertEquals("GET", second.getMethod());
+        assertEquals("/b", second.getPath());
+        assertNull(second.getHeader("X-Tag"));
+        assertEquals("curl", second.getHeader("User-Agent"));
+        assertTrue(second.getHeaders().valueEqualsIgnoreCase("Connection", "close"));
+        assertEquals(0, second.getBody().length);
+
+        HTTPResponse secondResponse = second.newResponse(404, "Not Found");
+        assertSame(firstResponse, secondResponse);
+        assertEquals(404, secondResponse.getStatusCode());
+        assertEquals(0, secondResponse.getHeaders().size());
+        assertEquals(0, secondResponse.getResponseBody().length());
+        assertNull(parser.nextRequest());
+    }
+
+    @Test
+    public void testRequestsAreIndependentWithoutRecycling() throws Exception {
+        String input = "GET /same HTTP/1.1\r\nX-Tag: one\r\n\r\n"
+                + "GET /same HTTP/1.1\r\nX-Tag: two\r\n\r\n";
+        HTTPRequestParser parser = new HTTPRequestParser(
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII)));
+
+        HTTPRequest first = parser.nextRequest();
+        HTTPRequest second = parser.nextRequest();
+        assertNotSame(first, second);
+        assertSame(first.getPath(), second.getPath(), "An identical target is shared");
+        assertEquals("one", first.getHeader("X-Tag"));
+        assertEquals("two", second.getHeader("X-Tag"));
+    }
+
+    @Test
+    void testTruncatedBody() throws Exception {
+        String input =
+            "POST /short HTTP/1.1\r\n" +
+            "Content-Length: 10\r\n" +
+            "\r\n" +
+            "abc";
+
+        HTTPRequest request = parse(input);
+
+        assertThrows(UncheckedIOException.class, request::getBody);
+    }
+
     private static HTTPRequest parse(String input) throws HTTPParseException {
         HTTPRequestParser parser = new HTTPRequestParser(toInputStream(input));
         HTTPRequest request = parser.nextRequest();
@@ -91,4 +425,26 @@ public class HTTPRequestParserTest {
     private static ByteArrayInputStream toInputStream(String input) {
         return new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8));
     }
+
+    /**
+     * Returns at most one byte per read call, so every line terminator is
+     * split across buffer refills.
+     */
+    private static class OneByteInputStream extends InputStream {
+        private final ByteArrayInputStream delegate;
+
+        OneByteInputStream(String input) {
+            this.delegate = toInputStream(input);
+        }
+
+        @Override
+        public int read() {
+            return delegate.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return delegate.read(b, off, Math.min(len, 1));
+        }
+    }
 }
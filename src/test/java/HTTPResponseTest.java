@@ -1,5 +1,227 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import http.ChunkedChannel;
+import http.ChunkedOutputStream;
+import http.HTTPResponse;
+import http.HTTPResponseWriter;
+import http.ResponseBody;
+import http.ResponseEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 public class HTTPResponseTest {
-    
+
+    @Test
+    public void testByteArrayBodyWithContentLength() throws IOException {
+        HTTPResponse response = new HTTPResponse("HTTP/1.1", 200, "OK", new HashMap<>(),
+                "hello".getBytes(StandardCharsets.UTF_8));
+
+        String written = write(response, "GET");
+
+        assertTrue(written.startsWith("HTTP/1.1 200 OK\r\n"));
+        assertTrue(written.contains("Connection: keep-alive\r\n"));
+        assertTrue(written.contains("Content-Length: 5\r\n"));
+        assertTrue(written.endsWith("\r\n\r\nhello"));
+    }
+
+    @Test
+    public void testFileRegionBody(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("region.txt");
+        Files.writeString(file, "0123456789");
+
+        HTTPResponse response = new HTTPResponse("HTTP/1.1", 200, "OK", new HashMap<>(),
+                ResponseBody.ofFile(file, 2, 5));
+
+        String written = write(response, "GET");
+
+        assertTrue(written.contains("Content-Length: 5\r\n"));
+        assertTrue(written.endsWith("\r\n\r\n23456"));
+    }
+
+    @Test
+    public void testFileRegionBodyTransferredToChannel(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("source.bin");
+        Files.writeString(file, "zero-copy payload");
+        Path target = tempDir.resolve("target.bin");
+
+        HTTPResponse response = new HTTPResponse("HTTP/1.1", 200, "OK", new HashMap<>(),
+                ResponseBody.ofFile(file));
+
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            HTTPResponseWriter.write(head, channel, response, "GET");
+        }
+
+        assertTrue(head.toString(StandardCharsets.UTF_8).endsWith("Content-Length: 17\r\n\r\n"));
+        assertEquals("zero-copy payload", Files.readString(target));
+    }
+
+    @Test
+    public void testStreamBodyOfUnknownLengthIsChunked() throws IOException {
+        byte[] data = "streamed".getBytes(StandardCharsets.UTF_8);
+        HTTPResponse response = new HTTPResponse("HTTP/1.1", 200, "OK", new HashMap<>(),
+                ResponseBody.ofStream(new ByteArrayInputStream(data), -1));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean keepAlive = HTTPResponseWriter.write(out, response, "GET");
+        String written = out.toString(StandardCharsets.UTF_8);
+
+        assertTrue(keepAlive);
+        assertTrue(written.contains("Connection: keep-alive\r\n"));
+        assertTrue(written.contains("Transfer-Encoding: chunked\r\n"));
+        assertFalse(written.contains("Content-Length"));
+        assertTrue(written.endsWith("\r\n\r\n8\r\nstreamed\r\n0\r\n\r\n"));
+    }
+
+    @Test
+    public void testChunkedChannelMatchesChunkedOutputStream() throws IOException {
+        byte[] data = new byte[40000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (ChunkedOutputStream chunked = new ChunkedOutputStream(expected, 16 * 1024)) {
+            chunked.write(data);
+        }
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (ChunkedChannel channel = new ChunkedChannel(
+                Channels.newChannel(new ByteArrayInputStream(data)), 16 * 1024)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1000);
+            while (channel.read(buffer) != -1) {
+                actual.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        }
+
+        assertArrayEquals(decodeChunked(expected.toByteArray()), data);
+        assertArrayEquals(decodeChunked(actual.toByteArray()), data);
+    }
+
+    @Test
+    public void testStreamBodyOfUnknownLengthClosesHttp10Connection() throws IOException {
+        byte[] data = "streamed".getBytes(StandardCharsets.UTF_8);
+        HTTPResponse response = new HTTPResponse("HTTP/1.0", 200, "OK", new HashMap<>(),
+                ResponseBody.ofStream(new ByteArrayInputStream(data), -1));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean keepAlive = HTTPResponseWriter.write(out, response, "GET");
+        String written = out.toString(StandardCharsets.UTF_8);
+
+        assertFalse(keepAlive);
+        assertTrue(written.contains("Connection: close\r\n"));
+        assertFalse(written.contains("Content-Length"));
+        assertTrue(written.endsWith("\r\n\r\nstreamed"));
+    }
+
+    @Test
+    public void testWriterBody() throws IOException {
+        HTTPResponse response = new HTTPResponse("HTTP/1.1", 200, "OK", new HashMap<>(),
+                ResponseBody.ofWriter(out -> out.write("abc".getBytes(StandardCharsets.UTF_8)), 3));
+
+        String written = write(response, "GET");
+
+        assertTrue(written.endsWith("Content-Length: 3\r\n\r\nabc"));
+    }
+
+    @Test
+    public void testHeadOmitsBodyButKeepsLength() throws IOException {
+        HTTPResponse response = new HTTPResponse("HTTP/1.1", 200, "OK", new HashMap<>(),
+                "hello".getBytes(StandardCharsets.UTF_8));
+
+        String written = write(response, "HEAD");
+
+        assertTrue(written.contains("Content-Length: 5\r\n"));
+        assertTrue(written.endsWith("\r\n\r\n"));
+    }
+
+    @Test
+    public void testGetBodyMaterializesStreamingBody() {
+        HTTPResponse response = new HTTPResponse("HTTP/1.1", 200, "OK", new HashMap<>(),
+                ResponseBody.ofStream(new ByteArrayInputStream("lazy".getBytes(StandardCharsets.UTF_8)), 4));
+
+        assertEquals("lazy", new String(response.getBody(), StandardCharsets.UTF_8));
+        assertEquals("lazy", new String(response.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testEncoderMatchesStatusTablesAndCustomText() {
+        ResponseEncoder encoder = new ResponseEncoder();
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("X-Custom", "caf\u00e9");
+        HTTPResponse custom = new HTTPResponse("HTTP/1.1", 299, "Odd", headers, new byte[1234]);
+
+        String head = new String(encoder.encodeHeadBytes(custom, false), StandardCharsets.UTF_8);
+        assertEquals("HTTP/1.1 299 Odd\r\nConnection: close\r\nContent-Length: 1234\r\n"
+                + "X-Custom: caf\u00e9\r\n\r\n", head);
+
+        HTTPResponse ok = new HTTPResponse("HTTP/1.0", 200, "OK", new HashMap<>(), new byte[0]);
+        assertEquals("HTTP/1.0 200 OK\r\nConnection: keep-alive\r\nContent-Length: 0\r\n\r\n",
+                new String(encoder.encodeHeadBytes(ok, true), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testEncoderGrowsForLargeHeads() {
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("X-Large", "v".repeat(5000));
+        HTTPResponse response = new HTTPResponse("HTTP/1.1", 200, "OK", headers, new byte[0]);
+
+        String head = new String(new ResponseEncoder().encodeHeadBytes(response, true), StandardCharsets.US_ASCII);
+        assertTrue(head.endsWith("X-Large: " + "v".repeat(5000) + "\r\n\r\n"));
+    }
+
+    @Test
+    public void testSmallBodyIsGatheredWithHead(@TempDir Path tempDir) throws IOException {
+        Path target = tempDir.resolve("gathered.bin");
+        HTTPResponse response = new HTTPResponse("HTTP/1.1", 200, "OK", new HashMap<>(),
+                "small".getBytes(StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            HTTPResponseWriter.write(stream, channel, response, "GET", new ResponseEncoder());
+        }
+
+        assertEquals(0, stream.size(), "Head and body go to the channel in one gathering write");
+        assertEquals("HTTP/1.1 200 OK\r\nConnection: keep-alive\r\nContent-Length: 5\r\n\r\nsmall",
+                Files.readString(target));
+    }
+
+    static byte[] decodeChunked(byte[] encoded) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int pos = 0;
+        while (true) {
+            int lineEnd = pos;
+            while (encoded[lineEnd] != '\r') {
+                lineEnd++;
+            }
+            int size = Integer.parseInt(new String(encoded, pos, lineEnd - pos, StandardCharsets.US_ASCII), 16);
+            pos = lineEnd + 2;
+            if (size == 0) {
+                assertEquals(encoded.length, pos + 2, "Expected CRLF after last chunk");
+                return out.toByteArray();
+            }
+            out.write(encoded, pos, size);
+            pos += size + 2;
+        }
+    }
+
+    private static String write(HTTPResponse response, String method) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HTTPResponseWriter.write(out, response, method);
+        return out.toString(StandardCharsets.UTF_8);
+    }
 }
@@ -1,4 +1,5 @@
 import http.ContentType;
+import http.HTTPHeaders;
 import http.HTTPRequest;
 import http.HTTPResponse;
 import org.junit.jupiter.api.Test;
@@ -8,14 +9,25 @@ import handlers.EchoHandler;
 import handlers.FileHandler;
 import handlers.NotFoundHandler;
 import handlers.UserAgentHandler;
+import util.FileContentCache;
+import util.GzipVariantCache;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
 import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 public class HandlersTest {
 
@@ -63,21 +75,56 @@ public class HandlersTest {
     }
 
     @Test
-    public void testEchoHandlerWithCompression() {
+    public void testEchoHandlerWithCompression() throws IOException {
         EchoHandler handler = new EchoHandler();
+        String echo = "hello-world-".repeat(30);
 
         HashMap<String, String> headers = new HashMap<>();
         headers.put("Accept-Encoding", "gzip");
 
-        HTTPRequest request = new HTTPRequest("GET", "/echo/hello-world", "HTTP/1.1", new byte[0], headers);
+        HTTPRequest request = new HTTPRequest("GET", "/echo/" + echo, "HTTP/1.1", new byte[0], headers);
         HTTPResponse response = handler.handle(request);
 
         assertEquals(200, response.getStatusCode());
         assertEquals("OK", response.getReasonPhrase());
         assertEquals(ContentType.TEXT_PLAIN.getType(), response.getHeader("Content-Type"));
         assertEquals("gzip", response.getHeader("Content-Encoding"));
-        assertNotNull(response.getBody());
-        assertTrue(response.getBody().length > 0);
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        assertEquals(echo, gunzip(response.getBody()));
+    }
+
+    @Test
+    public void testEchoHandlerSkipsTinyBodies() {
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("Accept-Encoding", "gzip, deflate");
+
+        HTTPResponse response = new EchoHandler().handle(
+                new HTTPRequest("GET", "/echo/hello-world", "HTTP/1.1", new byte[0], headers));
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertNull(response.getHeader("Vary"));
+        assertEquals("hello-world", new String(response.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testEchoHandlerNegotiatesDeflate() throws IOException {
+        String echo = "deflated-".repeat(40);
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("Accept-Encoding", "gzip;q=0.5, deflate");
+
+        HTTPResponse response = new EchoHandler().handle(
+                new HTTPRequest("GET", "/echo/" + echo, "HTTP/1.1", new byte[0], headers));
+
+        assertEquals("deflate", response.getHeader("Content-Encoding"));
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(response.getBody()))) {
+            assertEquals(echo, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        headers.put("Accept-Encoding", "gzip;q=0, identity");
+        response = new EchoHandler().handle(
+                new HTTPRequest("GET", "/echo/" + echo, "HTTP/1.1", new byte[0], headers));
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
     }
 
     @Test
@@ -119,4 +166,288 @@ public class HandlersTest {
             fail("Failed to read written file: " + e.getMessage());
         }
     }
+
+    @Test
+    public void testFileHandlerPUTReplacesAtomically(@TempDir Path tempDir) throws IOException {
+        Path target = tempDir.resolve("existing.txt");
+        Files.write(target, "old".getBytes(StandardCharsets.UTF_8));
+
+        FileHandler handler = new FileHandler(tempDir.toString());
+
+        HTTPRequest request = new HTTPRequest("PUT", "/existing.txt", "HTTP/1.1",
+                "new content".getBytes(StandardCharsets.UTF_8), new HashMap<>());
+        HTTPResponse response = handler.handle(request);
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals("new content", Files.readString(target));
+        try (var files = Files.list(tempDir)) {
+            assertEquals(1, files.count(), "Temporary upload file should not be left behind");
+        }
+    }
+
+    @Test
+    public void testUploadedFilePermissions(@TempDir Path tempDir) throws IOException {
+        assumeTrue(Files.getFileAttributeView(tempDir, PosixFileAttributeView.class) != null);
+        FileHandler handler = new FileHandler(tempDir.toString());
+
+        // A new file gets the same permissions as any file created here.
+        Path reference = Files.createFile(tempDir.resolve("reference.txt"));
+        handler.handle(new HTTPRequest("POST", "/new.txt", "HTTP/1.1",
+                "new".getBytes(StandardCharsets.UTF_8), new HashMap<>()));
+        assertEquals(Files.getPosixFilePermissions(reference),
+                Files.getPosixFilePermissions(tempDir.resolve("new.txt")));
+
+        // A replaced file keeps its own.
+        Path existing = tempDir.resolve("shared.txt");
+        Files.write(existing, "old".getBytes(StandardCharsets.UTF_8));
+        Files.setPosixFilePermissions(existing, PosixFilePermissions.fromString("rw-r-----"));
+        handler.handle(new HTTPRequest("PUT", "/shared.txt", "HTTP/1.1",
+                "replaced".getBytes(StandardCharsets.UTF_8), new HashMap<>()));
+        assertEquals("replaced", Files.readString(existing));
+        assertEquals("rw-r-----", PosixFilePermissions.toString(Files.getPosixFilePermissions(existing)));
+    }
+
+    @Test
+    public void testFileHandlerHidesUploadsInProgress(@TempDir Path tempDir) throws IOException {
+        Files.write(tempDir.resolve(".report.txt.k3x9.upload"), "partial".getBytes(StandardCharsets.UTF_8));
+        FileHandler handler = new FileHandler(tempDir.toString());
+
+        HTTPResponse response = handler.handle(new HTTPRequest("GET", "/.report.txt.k3x9.upload", "HTTP/1.1",
+                new byte[0], new HashMap<>()));
+        assertEquals(404, response.getStatusCode());
+    }
+
+    @Test
+    public void testFileHandlerFailedUploadKeepsOriginal(@TempDir Path tempDir) throws IOException {
+        Path target = tempDir.resolve("keep.txt");
+        Files.write(target, "original".getBytes(StandardCharsets.UTF_8));
+
+        InputStream failing = new InputStream() {
+            private int sent = 0;
+
+            @Override
+            public int read() throws IOException {
+                if (sent++ < 100) {
+                    return 'x';
+                }
+                throw new IOException("Connection reset");
+            }
+        };
+
+        FileHandler handler = new FileHandler(tempDir.toString());
+        HTTPRequest request = new HTTPRequest("PUT", "/keep.txt", "HTTP/1.1", failing, new HTTPHeaders(),
+                1024);
+        HTTPResponse response = handler.handle(request);
+
+        assertEquals(500, response.getStatusCode());
+        assertEquals("original", Files.readString(target));
+        try (var files = Files.list(tempDir)) {
+            assertEquals(1, files.count(), "Temporary upload file should be removed");
+        }
+    }
+
+    @Test
+    public void testFileHandlerPOSTConflict(@TempDir Path tempDir) throws IOException {
+        Files.write(tempDir.resolve("taken.txt"), "first".getBytes(StandardCharsets.UTF_8));
+
+        FileHandler handler = new FileHandler(tempDir.toString());
+
+        HTTPRequest request = new HTTPRequest("POST", "/taken.txt", "HTTP/1.1",
+                "second".getBytes(StandardCharsets.UTF_8), new HashMap<>());
+        HTTPResponse response = handler.handle(request);
+
+        assertEquals(409, response.getStatusCode());
+        assertEquals("first", Files.readString(tempDir.resolve("taken.txt")));
+    }
+
+    @Test
+    public void testFileHandlerCacheHitAndInvalidation(@TempDir Path tempDir) throws IOException {
+        Files.write(tempDir.resolve("hot.txt"), "v1".getBytes(StandardCharsets.UTF_8));
+        FileContentCache cache = new FileContentCache(1024);
+        FileHandler handler = new FileHandler(tempDir.toString(), cache);
+
+        assertEquals("v1", get(handler, "/hot.txt"));
+        assertEquals("v1", get(handler, "/hot.txt"));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+
+        handler.handle(new HTTPRequest("PUT", "/hot.txt", "HTTP/1.1",
+                "version two".getBytes(StandardCharsets.UTF_8), new HashMap<>()));
+        assertEquals("version two", get(handler, "/hot.txt"));
+
+        handler.handle(new HTTPRequest("DELETE", "/hot.txt", "HTTP/1.1", new byte[0], new HashMap<>()));
+        HTTPResponse missing = handler.handle(
+                new HTTPRequest("GET", "/hot.txt", "HTTP/1.1", new byte[0], new HashMap<>()));
+        assertEquals(404, missing.getStatusCode());
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void testFileHandlerCacheSeesExternalChanges(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("external.txt");
+        Files.write(file, "before".getBytes(StandardCharsets.UTF_8));
+        FileHandler handler = new FileHandler(tempDir.toString(), new FileContentCache(1024));
+
+        assertEquals("before", get(handler, "/external.txt"));
+
+        Files.write(file, "after, and longer".getBytes(StandardCharsets.UTF_8));
+        assertEquals("after, and longer", get(handler, "/external.txt"));
+    }
+
+    @Test
+    public void testFileHandlerServesFreshGzipSidecar(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("app.js");
+        String original = "var original = true;\n".repeat(20);
+        Files.write(file, original.getBytes(StandardCharsets.UTF_8));
+        Path sidecar = tempDir.resolve("app.js.gz");
+        Files.write(sidecar, "precompressed".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(sidecar, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+        FileHandler handler = new FileHandler(tempDir.toString());
+
+        HTTPResponse response = handler.handle(gzipRequest("/app.js"));
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals("13", response.getHeader("Content-Length"));
+        assertEquals("precompressed", new String(response.getBody(), StandardCharsets.UTF_8));
+
+        // A sidecar older than the file is stale and ignored.
+        Files.setLastModifiedTime(sidecar, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() - 1000));
+        response = handler.handle(gzipRequest("/app.js"));
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals(original, gunzip(response.getBody()));
+    }
+
+    @Test
+    public void testFileHandlerGzipVariantCache(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("page.html");
+        String cached = "<p>cached</p>".repeat(30);
+        String updated = "<p>new</p>".repeat(30);
+        Files.write(file, cached.getBytes(StandardCharsets.UTF_8));
+        GzipVariantCache gzipCache = new GzipVariantCache(64 * 1024, null);
+        FileHandler handler = new FileHandler(tempDir.toString(), null, gzipCache);
+
+        HTTPResponse first = handler.handle(gzipRequest("/page.html"));
+        HTTPResponse second = handler.handle(gzipRequest("/page.html"));
+
+        assertEquals(cached, gunzip(first.getBody()));
+        assertEquals(String.valueOf(second.getBody().length), second.getHeader("Content-Length"));
+        assertEquals(1, gzipCache.getCompressions());
+        assertEquals(1, gzipCache.getMemoryCache().getHits());
+
+        handler.handle(new HTTPRequest("PUT", "/page.html", "HTTP/1.1",
+                updated.getBytes(StandardCharsets.UTF_8), new HashMap<>()));
+        assertEquals(updated, gunzip(handler.handle(gzipRequest("/page.html")).getBody()));
+        assertEquals(2, gzipCache.getCompressions());
+    }
+
+    @Test
+    public void testFileHandlerConditionalGET(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("doc.txt");
+        Files.write(file, "validated".getBytes(StandardCharsets.UTF_8));
+        FileHandler handler = new FileHandler(tempDir.toString());
+
+        HTTPResponse full = handler.handle(new HTTPRequest("GET", "/doc.txt", "HTTP/1.1", new byte[0], new HashMap<>()));
+        String etag = full.getHeader("ETag");
+        String lastModified = full.getHeader("Last-Modified");
+        assertNotNull(etag);
+        assertNotNull(lastModified);
+
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("If-None-Match", "\"other\", " + etag);
+        HTTPResponse notModified = handler.handle(new HTTPRequest("GET", "/doc.txt", "HTTP/1.1", new byte[0], headers));
+        assertEquals(304, notModified.getStatusCode());
+        assertEquals(etag, notModified.getHeader("ETag"));
+        assertEquals(0, notModified.getResponseBody().length());
+
+        headers.clear();
+        headers.put("If-Modified-Since", lastModified);
+        assertEquals(304, handler.handle(new HTTPRequest("GET", "/doc.txt", "HTTP/1.1", new byte[0], headers)).getStatusCode());
+
+        Files.write(file, "changed!!".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 5000));
+        headers.clear();
+        headers.put("If-None-Match", etag);
+        HTTPResponse changed = handler.handle(new HTTPRequest("GET", "/doc.txt", "HTTP/1.1", new byte[0], headers));
+        assertEquals(200, changed.getStatusCode());
+        assertNotEquals(etag, changed.getHeader("ETag"));
+    }
+
+    @Test
+    public void testLastModifiedPadsSingleDigitDay(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("early.txt");
+        Files.write(file, "early in the month".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.from(Instant.parse("2026-10-05T08:49:37Z")));
+        FileHandler handler = new FileHandler(tempDir.toString());
+
+        HTTPResponse full = handler.handle(new HTTPRequest("GET", "/early.txt", "HTTP/1.1", new byte[0], new HashMap<>()));
+        assertEquals("Mon, 05 Oct 2026 08:49:37 GMT", full.getHeader("Last-Modified"));
+
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("If-Modified-Since", full.getHeader("Last-Modified"));
+        assertEquals(304, handler.handle(new HTTPRequest("GET", "/early.txt", "HTTP/1.1", new byte[0], headers)).getStatusCode());
+    }
+
+    @Test
+    public void testFileHandlerHEADUsesMetadataOnly(@TempDir Path tempDir) throws IOException {
+        Files.write(tempDir.resolve("head.txt"), "twelve bytes".repeat(30).getBytes(StandardCharsets.UTF_8));
+        FileContentCache cache = new FileContentCache(1024);
+        FileHandler handler = new FileHandler(tempDir.toString(), cache);
+
+        HTTPResponse response = handler.handle(new HTTPRequest("HEAD", "/head.txt", "HTTP/1.1", new byte[0], new HashMap<>()));
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals("360", response.getHeader("Content-Length"));
+        assertNotNull(response.getHeader("ETag"));
+        assertEquals(0, cache.getMisses(), "HEAD must not read the file into the cache");
+
+        response = handler.handle(gzipHeadRequest("/head.txt"));
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertNull(response.getHeader("Content-Length"));
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void testFileHandlerSkipsCompressedFormats(@TempDir Path tempDir) throws IOException {
+        byte[] image = new byte[4096];
+        Files.write(tempDir.resolve("photo.PNG"), image);
+        Files.write(tempDir.resolve("notes.txt"), image);
+        FileHandler handler = new FileHandler(tempDir.toString());
+
+        HTTPResponse png = handler.handle(gzipRequest("/photo.PNG"));
+        assertNull(png.getHeader("Content-Encoding"));
+        assertNull(png.getHeader("Vary"));
+        assertEquals(4096, png.getBody().length);
+
+        HTTPResponse text = handler.handle(gzipRequest("/notes.txt"));
+        assertEquals("gzip", text.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", text.getHeader("Vary"));
+
+        HTTPResponse identity = handler.handle(new HTTPRequest("GET", "/notes.txt", "HTTP/1.1", new byte[0],
+                new HashMap<>()));
+        assertNull(identity.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", identity.getHeader("Vary"));
+    }
+
+    private static HTTPRequest gzipHeadRequest(String path) {
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("Accept-Encoding", "gzip");
+        return new HTTPRequest("HEAD", path, "HTTP/1.1", new byte[0], headers);
+    }
+
+    private static HTTPRequest gzipRequest(String path) {
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("Accept-Encoding", "gzip");
+        return new HTTPRequest("GET", path, "HTTP/1.1", new byte[0], headers);
+    }
+
+    static String gunzip(byte[] data) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String get(FileHandler handler, String path) {
+        HTTPResponse response = handler.handle(new HTTPRequest("GET", path, "HTTP/1.1", new byte[0], new HashMap<>()));
+        assertEquals(200, response.getStatusCode());
+        return new String(response.getBody(), StandardCharsets.UTF_8);
+    }
 }
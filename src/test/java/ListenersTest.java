@@ -0,0 +1,87 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import http.ConnectionLimits;
+import main.Main;
+import server.Listeners;
+import server.NIOServer;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ListenersTest {
+
+    @Test
+    public void testListenersShareOnePort() throws IOException {
+        List<ServerSocketChannel> channels = Listeners.open(0, 3);
+        try {
+            assertEquals(3, channels.size());
+            int port = channels.get(0).socket().getLocalPort();
+            assertNotEquals(0, port);
+            for (ServerSocketChannel channel : channels) {
+                assertEquals(port, channel.socket().getLocalPort());
+            }
+        } finally {
+            Listeners.close(channels);
+        }
+    }
+
+    @Test
+    public void testNIOServerWithSeveralListeners(@TempDir Path tempDir) throws Exception {
+        NIOServer server = new NIOServer(0, Main.createRouter(tempDir.toString()), 1, ConnectionLimits.defaults(),
+                4);
+        server.start();
+        Thread acceptor = new Thread(() -> {
+            try {
+                server.acceptLoop();
+            } catch (IOException ignored) {
+            }
+        });
+        acceptor.start();
+        try {
+            for (int i = 0; i < 20; i++) {
+                assertEquals("msg" + i, fetchEcho(server.getPort(), "msg" + i));
+            }
+        } finally {
+            server.stop();
+            acceptor.join(1000);
+        }
+        assertFalse(acceptor.isAlive());
+    }
+
+    @Test
+    public void testBlockingServerWithSeveralListeners(@TempDir Path tempDir) throws Exception {
+        ExecutorService serverExecutor = Executors.newSingleThreadExecutor();
+        serverExecutor.submit(() -> Main.main(new String[] { tempDir.toString(), "1214", "--listeners=4" }));
+        try {
+            Thread.sleep(500);
+            for (int i = 0; i < 20; i++) {
+                assertEquals("msg" + i, fetchEcho(1214, "msg" + i));
+            }
+        } finally {
+            Main.stopServer();
+            serverExecutor.shutdownNow();
+        }
+    }
+
+    private static String fetchEcho(int port, String message) throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /echo/" + message + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+            assertTrue(response.startsWith("HTTP/1.1 200"), response);
+            return response.substring(response.indexOf("\r\n\r\n") + 4);
+        }
+    }
+}
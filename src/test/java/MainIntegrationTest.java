@@ -114,8 +114,8 @@ public class MainIntegrationTest {
             OutputStream out = socket.getOutputStream();
             InputStream in = socket.getInputStream();
 
-            out.write("GET /echo/test-compressed HTTP/1.1\r\nHost: localhost\r\nAccept-Encoding: gzip\r\n\r\n"
-                    .getBytes());
+            out.write(("GET /echo/" + "test-compressed-".repeat(20)
+                    + " HTTP/1.1\r\nHost: localhost\r\nAccept-Encoding: gzip\r\n\r\n").getBytes());
             out.flush();
 
             ByteArrayOutputStream responseBuffer = new ByteArrayOutputStream();
@@ -416,4 +416,52 @@ public class MainIntegrationTest {
         System.out.println("OPTIONS test done");
     }
 
+    @Test
+    @Order(10)
+    public void testDeeplyPipelinedRequests() throws Exception {
+        int count = 500;
+        StringBuilder requests = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            requests.append("GET /echo/p").append(i).append(" HTTP/1.1\r\nHost: localhost\r\n");
+            if (i == count - 1) {
+                requests.append("Connection: close\r\n");
+            }
+            requests.append("\r\n");
+        }
+
+        try (Socket socket = new Socket("localhost", 1212)) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            Thread writer = new Thread(() -> {
+                try {
+                    out.write(requests.toString().getBytes(StandardCharsets.US_ASCII));
+                    out.flush();
+                } catch (IOException ignored) {
+                }
+            });
+            writer.start();
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.US_ASCII));
+            for (int i = 0; i < count; i++) {
+                assertTrue(reader.readLine().contains("200"));
+                int contentLength = 0;
+                String line;
+                while (!(line = reader.readLine()).isEmpty()) {
+                    if (line.toLowerCase().startsWith("content-length:")) {
+                        contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+                    }
+                }
+                char[] body = new char[contentLength];
+                int read = 0;
+                while (read < contentLength) {
+                    read += reader.read(body, read, contentLength - read);
+                }
+                assertEquals("p" + i, new String(body));
+            }
+            assertEquals(-1, reader.read(), "Connection closes after the Connection: close request");
+            writer.join();
+        }
+    }
+
 }
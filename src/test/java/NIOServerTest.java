@@ -0,0 +1,377 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import main.Main;
+import server.NIOServer;
+import util.CompressionPolicy;
+import util.ParallelGzip;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NIOServerTest {
+
+    private static NIOServer server;
+    private static Thread acceptor;
+    private static Path baseDir;
+
+    @BeforeAll
+    public static void startServer(@TempDir Path tempDir) throws IOException {
+        baseDir = tempDir;
+        server = new NIOServer(0, Main.createRouter(tempDir.toString()), 1);
+        server.start();
+        acceptor = new Thread(() -> {
+            try {
+                server.acceptLoop();
+            } catch (IOException ignored) {
+            }
+        });
+        acceptor.start();
+    }
+
+    @AfterAll
+    public static void stopServer() throws InterruptedException {
+        server.stop();
+        acceptor.join(1000);
+    }
+
+    @Test
+    public void testKeepAliveRequestsOnOneConnection() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            for (int i = 0; i < 3; i++) {
+                out.write(("GET /echo/msg" + i + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes());
+                out.flush();
+                assertEquals("msg" + i, readBody(in));
+            }
+        }
+    }
+
+    @Test
+    public void testIdleConnectionsDoNotBlockNewClients() throws IOException {
+        List<Socket> idle = new ArrayList<>();
+        try {
+            for (int i = 0; i < 100; i++) {
+                idle.add(new Socket("localhost", server.getPort()));
+            }
+
+            try (Socket socket = new Socket("localhost", server.getPort())) {
+                socket.setSoTimeout(2000);
+                OutputStream out = socket.getOutputStream();
+                out.write("GET /echo/still-alive HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes());
+                out.flush();
+                assertEquals("still-alive", readBody(socket.getInputStream()));
+            }
+        } finally {
+            for (Socket socket : idle) {
+                socket.close();
+            }
+        }
+    }
+
+    @Test
+    public void testRequestSplitAcrossWrites() throws Exception {
+        String body = "uploaded over several packets";
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            String head = "POST /files/split.txt HTTP/1.1\r\nHost: localhost\r\nContent-Length: "
+                    + body.length() + "\r\n\r\n";
+            String request = head + body;
+            for (int i = 0; i < request.length(); i += 7) {
+                out.write(request.substring(i, Math.min(request.length(), i + 7)).getBytes());
+                out.flush();
+                Thread.sleep(2);
+            }
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            String statusLine = reader.readLine();
+            assertNotNull(statusLine);
+            assertTrue(statusLine.contains("201"));
+        }
+    }
+
+    @Test
+    public void testLargeFileIsStreamed() throws IOException {
+        byte[] content = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(content);
+        Files.write(baseDir.resolve("large.bin"), content);
+
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            out.write("GET /files/large.bin HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes());
+            out.flush();
+
+            assertTrue(readLine(in).contains("200"));
+            int contentLength = 0;
+            String line;
+            while (!(line = readLine(in)).isEmpty()) {
+                if (line.toLowerCase().startsWith("content-length:")) {
+                    contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+                }
+            }
+            assertEquals(content.length, contentLength);
+            assertArrayEquals(content, in.readNBytes(contentLength));
+        }
+    }
+
+    @Test
+    public void testGzipFileIsChunkedAndKeepsConnection() throws IOException {
+        String content = "compress me ".repeat(5000);
+        Files.writeString(baseDir.resolve("chunked.txt"), content);
+
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            out.write("GET /files/chunked.txt HTTP/1.1\r\nHost: localhost\r\nAccept-Encoding: gzip\r\n\r\n"
+                    .getBytes());
+            out.flush();
+
+            assertTrue(readLine(in).contains("200"));
+            boolean chunked = false;
+            String line;
+            while (!(line = readLine(in)).isEmpty()) {
+                if (line.equalsIgnoreCase("Transfer-Encoding: chunked")) {
+                    chunked = true;
+                }
+            }
+            assertTrue(chunked);
+
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            int size;
+            while ((size = Integer.parseInt(readLine(in), 16)) > 0) {
+                compressed.write(in.readNBytes(size));
+                assertEquals("", readLine(in));
+            }
+            assertEquals("", readLine(in));
+            byte[] decompressed = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))
+                    .readAllBytes();
+            assertEquals(content, new String(decompressed, StandardCharsets.UTF_8));
+
+            out.write("GET /echo/after-chunked HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes());
+            out.flush();
+            assertEquals("after-chunked", readBody(in));
+        }
+    }
+
+    @Test
+    public void testParallelGzipDoesNotStallEventLoop(@TempDir Path tempDir) throws Exception {
+        StringBuilder text = new StringBuilder();
+        Random random = new Random(7);
+        while (text.length() < 600_000) {
+            text.append("block ").append(random.nextInt(10_000)).append(random.nextInt(8) == 0 ? '\n' : ' ');
+        }
+        String content = text.toString();
+        Files.writeString(tempDir.resolve("parallel.txt"), content);
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        CompressionPolicy compression = new CompressionPolicy(6, 0, new ParallelGzip(pool, 6), 1);
+        NIOServer parallelServer = new NIOServer(0,
+                Main.createRouter(tempDir.toString(), null, null, compression), 1);
+        parallelServer.start();
+        Thread parallelAcceptor = new Thread(() -> {
+            try {
+                parallelServer.acceptLoop();
+            } catch (IOException ignored) {
+            }
+        });
+        parallelAcceptor.start();
+        try (Socket socket = new Socket("localhost", parallelServer.getPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            out.write(("GET /files/parallel.txt HTTP/1.1\r\nHost: localhost\r\nAccept-Encoding: gzip\r\n\r\n"
+                    + "GET /echo/after-parallel HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes());
+            out.flush();
+
+            assertTrue(readLine(in).contains("200"));
+            while (!readLine(in).isEmpty()) {
+            }
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            int size;
+            while ((size = Integer.parseInt(readLine(in), 16)) > 0) {
+                compressed.write(in.readNBytes(size));
+                assertEquals("", readLine(in));
+            }
+            assertEquals("", readLine(in));
+            byte[] decompressed = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))
+                    .readAllBytes();
+            assertEquals(content, new String(decompressed, StandardCharsets.UTF_8));
+            assertEquals("after-parallel", readBody(in));
+        } finally {
+            parallelServer.stop();
+            parallelAcceptor.join(1000);
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testChunkedUpload() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            out.write(("POST /files/chunked-upload.txt HTTP/1.1\r\nHost: localhost\r\n"
+                    + "Transfer-Encoding: chunked\r\n\r\n").getBytes());
+            out.flush();
+            out.write("6\r\nchunk-\r\n".getBytes());
+            out.flush();
+            out.write("7\r\nupload!\r\n0\r\n\r\n".getBytes());
+            out.flush();
+
+            assertTrue(readLine(in).contains("201"));
+            readBody(in);
+            assertEquals("chunk-upload!", Files.readString(baseDir.resolve("chunked-upload.txt")));
+
+            out.write("GET /echo/next HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes());
+            out.flush();
+            assertTrue(readLine(in).contains("200"));
+            assertEquals("next", readBody(in));
+        }
+    }
+
+    @Test
+    public void testPipelinedUploadsAreParsedInPlace() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            out.write(("PUT /files/in-place-a.txt HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n\r\nfirst"
+                    + "POST /files/in-place-b.txt HTTP/1.1\r\nHost: localhost\r\n"
+                    + "Transfer-Encoding: chunked\r\n\r\n3\r\nsec\r\n3\r\nond\r\n0\r\n\r\n"
+                    + "GET /echo/third HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /echo/fourth HTTP/1.1\r\nHo").getBytes());
+            out.flush();
+
+            assertTrue(readLine(in).contains("201"));
+            readBody(in);
+            assertTrue(readLine(in).contains("201"));
+            readBody(in);
+            assertTrue(readLine(in).contains("200"));
+            assertEquals("third", readBody(in));
+
+            // The partial request was kept when the handled ones were dropped.
+            out.write("st: localhost\r\n\r\n".getBytes());
+            out.flush();
+            assertTrue(readLine(in).contains("200"));
+            assertEquals("fourth", readBody(in));
+        }
+        assertEquals("first", Files.readString(baseDir.resolve("in-place-a.txt")));
+        assertEquals("second", Files.readString(baseDir.resolve("in-place-b.txt")));
+    }
+
+    @Test
+    public void testMultipartRangeOfLargeFile() throws IOException {
+        byte[] content = new byte[1024 * 1024];
+        new Random(7).nextBytes(content);
+        Files.write(baseDir.resolve("ranges.bin"), content);
+
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            out.write("GET /files/ranges.bin HTTP/1.1\r\nHost: localhost\r\nRange: bytes=10-19,-300000\r\n\r\n"
+                    .getBytes());
+            out.flush();
+
+            assertTrue(readLine(in).contains("206"));
+            String boundary = null;
+            int contentLength = 0;
+            String line;
+            while (!(line = readLine(in)).isEmpty()) {
+                if (line.startsWith("Content-Type: multipart/byteranges; boundary=")) {
+                    boundary = line.substring(line.indexOf('=') + 1);
+                } else if (line.toLowerCase().startsWith("content-length:")) {
+                    contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+                }
+            }
+            assertNotNull(boundary);
+            InputStream body = new ByteArrayInputStream(in.readNBytes(contentLength));
+
+            assertEquals("", readLine(body));
+            assertEquals("--" + boundary, readLine(body));
+            readLine(body);
+            assertEquals("Content-Range: bytes 10-19/1048576", readLine(body));
+            assertEquals("", readLine(body));
+            assertArrayEquals(Arrays.copyOfRange(content, 10, 20), body.readNBytes(10));
+            assertEquals("", readLine(body));
+            assertEquals("--" + boundary, readLine(body));
+            readLine(body);
+            assertEquals("Content-Range: bytes 748576-1048575/1048576", readLine(body));
+            assertEquals("", readLine(body));
+            assertArrayEquals(Arrays.copyOfRange(content, 748576, content.length), body.readNBytes(300000));
+            assertEquals("", readLine(body));
+            assertEquals("--" + boundary + "--", readLine(body));
+        }
+    }
+
+    @Test
+    public void testDeeplyPipelinedRequests() throws Exception {
+        int count = 500;
+        StringBuilder requests = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            requests.append("GET /echo/p").append(i).append(" HTTP/1.1\r\nHost: localhost\r\n");
+            if (i == count - 1) {
+                requests.append("Connection: close\r\n");
+            }
+            requests.append("\r\n");
+        }
+        // Requests after the one that closes the connection are never answered.
+        requests.append("GET /echo/too-late HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            Thread writer = new Thread(() -> {
+                try {
+                    out.write(requests.toString().getBytes(StandardCharsets.US_ASCII));
+                    out.flush();
+                } catch (IOException ignored) {
+                }
+            });
+            writer.start();
+
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            for (int i = 0; i < count; i++) {
+                assertEquals("p" + i, readBody(in));
+            }
+            assertEquals(-1, in.read(), "Connection closes after the Connection: close request");
+            writer.join();
+        }
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        int contentLength = 0;
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+            }
+        }
+        byte[] body = in.readNBytes(contentLength);
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            if (c != '\r') {
+                sb.append((char) c);
+            }
+        }
+        return sb.toString();
+    }
+}
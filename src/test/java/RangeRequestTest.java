@@ -0,0 +1,119 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import handlers.FileHandler;
+import http.ByteRange;
+import http.HTTPRequest;
+import http.HTTPResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RangeRequestTest {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+
+    @Test
+    public void testParseRangeForms() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=0-4, 10-, -3, 18-100", 20);
+
+        assertEquals(4, ranges.size());
+        assertEquals("bytes 0-4/20", ranges.get(0).contentRange(20));
+        assertEquals("bytes 10-19/20", ranges.get(1).contentRange(20));
+        assertEquals("bytes 17-19/20", ranges.get(2).contentRange(20));
+        assertEquals("bytes 18-19/20", ranges.get(3).contentRange(20));
+    }
+
+    @Test
+    public void testParseRejectsOrIgnores() {
+        assertNull(ByteRange.parse("items=0-4", 20), "Other units are ignored");
+        assertNull(ByteRange.parse("bytes=5-2", 20), "Inverted range is malformed");
+        assertNull(ByteRange.parse("bytes=abc", 20));
+        assertTrue(ByteRange.parse("bytes=20-30", 20).isEmpty(), "Past the end is unsatisfiable");
+        assertTrue(ByteRange.parse("bytes=-0", 20).isEmpty());
+    }
+
+    @Test
+    public void testManySmallRangesAreCoalesced() {
+        StringBuilder header = new StringBuilder("bytes=");
+        for (int i = 0; i < 100; i++) {
+            header.append(i).append('-').append(i).append(',');
+        }
+        List<ByteRange> ranges = ByteRange.parse(header.toString(), 1000);
+
+        assertEquals(1, ranges.size());
+        assertEquals(100, ranges.get(0).length());
+    }
+
+    @Test
+    public void testSingleRange(@TempDir Path tempDir) throws IOException {
+        FileHandler handler = handler(tempDir);
+
+        HTTPResponse response = handler.handle(rangeRequest("bytes=5-9", null));
+
+        assertEquals(206, response.getStatusCode());
+        assertEquals("bytes 5-9/20", response.getHeader("Content-Range"));
+        assertEquals("5", response.getHeader("Content-Length"));
+        assertEquals("56789", new String(response.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testMultipleRanges(@TempDir Path tempDir) throws IOException {
+        FileHandler handler = handler(tempDir);
+
+        HTTPResponse response = handler.handle(rangeRequest("bytes=0-1,-2", null));
+
+        assertEquals(206, response.getStatusCode());
+        String contentType = response.getHeader("Content-Type");
+        assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+        String boundary = contentType.substring(contentType.indexOf('=') + 1);
+        String body = new String(response.getBody(), StandardCharsets.UTF_8);
+        assertEquals(String.valueOf(body.length()), response.getHeader("Content-Length"));
+        assertEquals("\r\n--" + boundary + "\r\nContent-Type: application/octet-stream\r\n"
+                + "Content-Range: bytes 0-1/20\r\n\r\n01"
+                + "\r\n--" + boundary + "\r\nContent-Type: application/octet-stream\r\n"
+                + "Content-Range: bytes 18-19/20\r\n\r\nij"
+                + "\r\n--" + boundary + "--\r\n", body);
+    }
+
+    @Test
+    public void testUnsatisfiableRange(@TempDir Path tempDir) throws IOException {
+        HTTPResponse response = handler(tempDir).handle(rangeRequest("bytes=50-60", null));
+
+        assertEquals(416, response.getStatusCode());
+        assertEquals("bytes */20", response.getHeader("Content-Range"));
+    }
+
+    @Test
+    public void testIfRange(@TempDir Path tempDir) throws IOException {
+        FileHandler handler = handler(tempDir);
+        String etag = handler.handle(new HTTPRequest("GET", "/data.txt", "HTTP/1.1", new byte[0], new HashMap<>()))
+                .getHeader("ETag");
+
+        assertEquals(206, handler.handle(rangeRequest("bytes=0-0", etag)).getStatusCode());
+        HTTPResponse stale = handler.handle(rangeRequest("bytes=0-0", "\"stale\""));
+        assertEquals(200, stale.getStatusCode());
+        assertEquals(CONTENT, new String(stale.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private static FileHandler handler(Path tempDir) throws IOException {
+        Files.write(tempDir.resolve("data.txt"), CONTENT.getBytes(StandardCharsets.UTF_8));
+        return new FileHandler(tempDir.toString());
+    }
+
+    private static HTTPRequest rangeRequest(String range, String ifRange) {
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("Range", range);
+        headers.put("Accept-Encoding", "gzip");
+        if (ifRange != null) {
+            headers.put("If-Range", ifRange);
+        }
+        return new HTTPRequest("GET", "/data.txt", "HTTP/1.1", new byte[0], headers);
+    }
+}
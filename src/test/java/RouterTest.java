@@ -1,5 +1,119 @@
+import org.junit.jupiter.api.Test;
 
+import handlers.HTTPHandler;
+import handlers.OptionsHandler;
+import http.HTTPRequest;
+import http.HTTPResponse;
+import http.Router;
+
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 public class RouterTest {
-    
+
+    private static final HTTPHandler ROOT = request -> null;
+    private static final HTTPHandler FILES = request -> null;
+    private static final HTTPHandler PRIVATE_FILES = request -> null;
+    private static final HTTPHandler USER = request -> null;
+    private static final HTTPHandler USER_POSTS = request -> null;
+    private static final HTTPHandler ME = request -> null;
+
+    @Test
+    public void testLongestPrefixWinsRegardlessOfOrder() {
+        Router forward = new Router();
+        forward.addRoute("GET", "/", ROOT);
+        forward.addRoute("GET", "/files/", FILES);
+        forward.addRoute("GET", "/files/private/", PRIVATE_FILES);
+
+        Router reverse = new Router();
+        reverse.addRoute("GET", "/files/private/", PRIVATE_FILES);
+        reverse.addRoute("GET", "/files/", FILES);
+        reverse.addRoute("GET", "/", ROOT);
+
+        for (Router router : new Router[] { forward, reverse }) {
+            assertSame(PRIVATE_FILES, router.route(request("GET", "/files/private/key")));
+            assertSame(FILES, router.route(request("GET", "/files/public")));
+            assertSame(ROOT, router.route(request("GET", "/other")));
+        }
+    }
+
+    @Test
+    public void testMethodSpecificMatchFallsBackToShorterPrefix() {
+        Router router = new Router();
+        router.addRoute("GET", "/files/", FILES);
+        router.addRoute("POST", "/files/private/", PRIVATE_FILES);
+
+        assertSame(FILES, router.route(request("GET", "/files/private/key")));
+        assertSame(PRIVATE_FILES, router.route(request("POST", "/files/private/key")));
+    }
+
+    @Test
+    public void testPathParameters() {
+        Router router = new Router();
+        router.addRoute("GET", "/users/{id}", USER);
+        router.addRoute("GET", "/users/{id}/posts/{post}", USER_POSTS);
+        router.addRoute("GET", "/users/me", ME);
+
+        HTTPRequest posts = request("GET", "/users/42/posts/7?draft=1");
+        assertSame(USER_POSTS, router.route(posts));
+        assertEquals("42", posts.getPathParameter("id"));
+        assertEquals("7", posts.getPathParameter("post"));
+
+        HTTPRequest user = request("GET", "/users/42");
+        assertSame(USER, router.route(user));
+        assertEquals("42", user.getPathParameter("id"));
+
+        assertSame(ME, router.route(request("GET", "/users/me")), "Static segments win over parameters");
+        assertSame(USER, router.route(request("GET", "/users/you")));
+    }
+
+    @Test
+    public void testConflictingParameterNamesAreRejected() {
+        Router router = new Router();
+        router.addRoute("GET", "/users/{id}", USER);
+        router.addRoute("GET", "/users/{name}/posts", USER_POSTS);
+
+        assertThrows(IllegalArgumentException.class, () -> router.route(request("GET", "/users/1")));
+    }
+
+    @Test
+    public void testMissesShareNotFoundHandler() {
+        Router router = new Router();
+        router.addRoute("GET", "/files/", FILES);
+
+        HTTPHandler miss = router.route(request("GET", "/nothing"));
+        assertSame(miss, router.route(request("DELETE", "/files/x")));
+        assertEquals(404, miss.handle(request("GET", "/nothing")).getStatusCode());
+    }
+
+    @Test
+    public void testOptionsAllowIsPrecomputedPerRoute() {
+        Router router = new Router();
+        router.addRoute("GET", "/files/", FILES);
+        router.addRoute("PUT", "/files/", FILES);
+        router.addRoute("DELETE", "/files/private/", PRIVATE_FILES);
+
+        HTTPHandler options = router.route(request("OPTIONS", "/files/private/key"));
+        assertSame(options, router.route(request("OPTIONS", "/files/private/other")));
+        assertEquals("GET, PUT, DELETE, OPTIONS", ((OptionsHandler) options).getAllow());
+
+        HTTPResponse response = router.route(request("OPTIONS", "/files/a")).handle(request("OPTIONS", "/files/a"));
+        assertEquals(204, response.getStatusCode());
+        assertEquals("GET, PUT, OPTIONS", response.getHeader("Allow"));
+    }
+
+    @Test
+    public void testRoutesAddedAfterLookupAreSeen() {
+        Router router = new Router();
+        router.addRoute("GET", "/files/", FILES);
+        router.route(request("GET", "/files/x"));
+        router.addRoute("GET", "/files/private/", PRIVATE_FILES);
+
+        assertSame(PRIVATE_FILES, router.route(request("GET", "/files/private/x")));
+    }
+
+    private static HTTPRequest request(String method, String path) {
+        return new HTTPRequest(method, path, "HTTP/1.1", new byte[0], new HashMap<>());
+    }
 }
@@ -0,0 +1,29 @@
+import org.junit.jupiter.api.Test;
+
+import main.ServerConfig;
+import util.VirtualThreads;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+public class ServerConfigTest {
+
+    @Test
+    public void testVirtualThreadsNeedJava21() {
+        assumeFalse(VirtualThreads.isSupported(), "Virtual threads are available on this JVM");
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> ServerConfig.parse(new String[] { "--threads=virtual" }));
+        assertTrue(e.getMessage().contains("Java 21"), e.getMessage());
+        assertEquals("platform", ServerConfig.parse(new String[] { "--threads=platform" }).getThreads());
+    }
+
+    @Test
+    public void testUnknownModeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ServerConfig.parse(new String[] { "--mode=NIO" }));
+        assertThrows(IllegalArgumentException.class, () -> ServerConfig.parse(new String[] { "--mode=epoll" }));
+        assertEquals("nio", ServerConfig.parse(new String[] { "--mode=nio" }).getMode());
+        assertEquals("blocking", ServerConfig.parse(new String[] { "--mode=blocking" }).getMode());
+    }
+
+}
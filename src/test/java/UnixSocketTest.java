@@ -0,0 +1,158 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import http.ConnectionLimits;
+import main.Main;
+import server.NIOServer;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(value = 20, unit = TimeUnit.SECONDS)
+public class UnixSocketTest {
+
+    @Test
+    public void testBlockingServerOnUnixSocketOnly(@TempDir Path tempDir) throws Exception {
+        Path socketFile = tempDir.resolve("http.sock");
+        ExecutorService serverExecutor = Executors.newSingleThreadExecutor();
+        serverExecutor.submit(() -> Main.main(new String[] { tempDir.toString(), "--listeners=0",
+                "--unix-socket=" + socketFile, "--idle-timeout-ms=300", "--header-timeout-ms=300" }));
+        try {
+            awaitFile(socketFile);
+            SocketAddress address = UnixDomainSocketAddress.of(socketFile);
+
+            try (SocketChannel channel = SocketChannel.open(address)) {
+                OutputStream out = Channels.newOutputStream(channel);
+                InputStream in = Channels.newInputStream(channel);
+                for (String message : new String[] { "one", "two" }) {
+                    out.write(("GET /echo/" + message + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes());
+                    String head = readHead(in);
+                    assertTrue(head.startsWith("HTTP/1.1 200 OK\r\n"), head);
+                    assertTrue(head.contains("Keep-Alive: timeout=1"), head);
+                    assertEquals(message, new String(in.readNBytes(3), StandardCharsets.US_ASCII));
+                }
+
+                // The idle timeout is kept by the watchdog, which ends the
+                // connection although the socket has no SO_TIMEOUT.
+                assertEquals(-1, in.read());
+            }
+
+            try (SocketChannel channel = SocketChannel.open(address)) {
+                Channels.newOutputStream(channel).write("GET /echo/slow HTTP/1.1\r\nHo".getBytes());
+                InputStream in = Channels.newInputStream(channel);
+                String head = readHead(in);
+                assertTrue(head.startsWith("HTTP/1.1 408 Request Timeout\r\n"), head);
+                assertEquals(-1, in.read());
+            }
+        } finally {
+            Main.stopServer();
+            serverExecutor.shutdownNow();
+            serverExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        assertFalse(Files.exists(socketFile));
+    }
+
+    @Test
+    public void testStoppingMainShutsDownParallelGzipPool(@TempDir Path tempDir) throws Exception {
+        Path socketFile = tempDir.resolve("http.sock");
+        Files.writeString(tempDir.resolve("big.txt"), "parallel ".repeat(50_000));
+        ExecutorService serverExecutor = Executors.newSingleThreadExecutor();
+        Future<?> server = serverExecutor.submit(() -> Main.main(new String[] { tempDir.toString(),
+                "--listeners=0", "--unix-socket=" + socketFile, "--mode=nio", "--parallel-gzip-min-bytes=1",
+                "--parallel-gzip-threads=2" }));
+        try {
+            awaitFile(socketFile);
+            try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketFile))) {
+                Channels.newOutputStream(channel).write(("GET /files/big.txt HTTP/1.1\r\nHost: localhost\r\n"
+                        + "Accept-Encoding: gzip\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                String response = new String(Channels.newInputStream(channel).readAllBytes(),
+                        StandardCharsets.ISO_8859_1);
+                assertTrue(response.startsWith("HTTP/1.1 200 OK\r\n"), response);
+                assertTrue(response.contains("Content-Encoding: gzip"), response);
+            }
+            assertTrue(gzipWorkersRunning(), "The request should have started the gzip workers");
+        } finally {
+            Main.stopServer();
+            server.get(5, TimeUnit.SECONDS);
+            serverExecutor.shutdownNow();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (gzipWorkersRunning()) {
+            assertTrue(System.nanoTime() < deadline, "Gzip workers still running after the server stopped");
+            Thread.sleep(20);
+        }
+    }
+
+    private static boolean gzipWorkersRunning() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(thread -> thread.getName().matches("ForkJoinPool-\\d+-worker-\\d+"));
+    }
+
+    @Test
+    public void testNIOServerOnTcpAndUnixSocket(@TempDir Path tempDir) throws Exception {
+        Path socketFile = tempDir.resolve("http.sock");
+        NIOServer server = new NIOServer(0, Main.createRouter(tempDir.toString()), 2, ConnectionLimits.defaults(),
+                1, socketFile);
+        server.start();
+        Thread acceptor = new Thread(() -> {
+            try {
+                server.acceptLoop();
+            } catch (IOException ignored) {
+            }
+        });
+        acceptor.start();
+        try {
+            for (int i = 0; i < 10; i++) {
+                assertEquals("unix" + i, fetchEcho(UnixDomainSocketAddress.of(socketFile), "unix" + i));
+                assertEquals("tcp" + i, fetchEcho(new InetSocketAddress("localhost", server.getPort()), "tcp" + i));
+            }
+        } finally {
+            server.stop();
+            acceptor.join(1000);
+        }
+        assertFalse(Files.exists(socketFile));
+    }
+
+    private static String fetchEcho(SocketAddress address, String message) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            Channels.newOutputStream(channel).write(("GET /echo/" + message
+                    + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            String response = new String(Channels.newInputStream(channel).readAllBytes(), StandardCharsets.US_ASCII);
+            assertTrue(response.startsWith("HTTP/1.1 200 OK\r\n"), response);
+            return response.substring(response.indexOf("\r\n\r\n") + 4);
+        }
+    }
+
+    private static void awaitFile(Path file) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!Files.exists(file)) {
+            assertTrue(System.nanoTime() < deadline, "Server did not create " + file);
+            Thread.sleep(20);
+        }
+    }
+
+    private static String readHead(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+        while (!head.toString().endsWith("\r\n\r\n")) {
+            int b = in.read();
+            if (b == -1) {
+                fail("Connection closed in response head: " + head);
+            }
+            head.append((char) b);
+        }
+        return head.toString();
+    }
+}